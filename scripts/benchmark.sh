@@ -0,0 +1,28 @@
+#!/bin/bash
+
+# Run the JMH benchmarks at several thread counts.
+# Usage: scripts/benchmark.sh [benchmark regex] [thread counts...]
+#   scripts/benchmark.sh                          # everything at 1, 4 and 16 threads
+#   scripts/benchmark.sh RateLimitKeyResolver 1 8
+#   JMH_OPTS="-PjmhKeyCounts=10000000 -PjmhHeap=8g" scripts/benchmark.sh RateLimitService 1   # 10M keys
+# Results: build/reports/jmh/results-<threads>t.json (JMH JSON, with gc.alloc.rate.norm per op)
+
+set -e
+
+JMH_OPTS=${JMH_OPTS:-}
+
+INCLUDES=${1:-}
+shift || true
+THREADS=${@:-1 4 16}
+
+for t in $THREADS; do
+    echo "⏱️  Running benchmarks with $t thread(s)..."
+    if [ -n "$INCLUDES" ]; then
+        ./gradlew jmh -PjmhThreads="$t" -PjmhIncludes="$INCLUDES" $JMH_OPTS
+    else
+        ./gradlew jmh -PjmhThreads="$t" $JMH_OPTS
+    fi
+done
+
+echo "✅ Results written to build/reports/jmh/"
+ls build/reports/jmh/results-*t.json
@@ -0,0 +1,73 @@
+package com.example.grpc;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Context switches of the whole benchmark process per operation, voluntary and
+ * involuntary, summed over /proc/self/task/{@literal *}/status. Linux only; reports
+ * nothing elsewhere. Threads that exit during an iteration drop out of the count.
+ * Enable with {@code -prof com.example.grpc.ContextSwitchProfiler}.
+ */
+public class ContextSwitchProfiler implements InternalProfiler {
+
+    private long before;
+
+    @Override
+    public String getDescription() {
+        return "Process context switches per operation, from /proc/self/task";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        before = contextSwitches();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams,
+                                                       IterationResult result) {
+        long after = contextSwitches();
+        long ops = result.getMetadata().getAllOps();
+        if (before < 0 || after < 0 || ops == 0) {
+            return List.of();
+        }
+        return List.of(new ScalarResult("ctx-switches.norm", (double) (after - before) / ops, "#/op",
+            AggregationPolicy.AVG));
+    }
+
+    private static long contextSwitches() {
+        Path tasks = Path.of("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return -1;
+        }
+        long total = 0;
+        try (Stream<Path> threads = Files.list(tasks)) {
+            for (Path thread : threads.toList()) {
+                try {
+                    for (String line : Files.readAllLines(thread.resolve("status"))) {
+                        if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                            total += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) {
+                    // Thread exited while listing
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return total;
+    }
+}
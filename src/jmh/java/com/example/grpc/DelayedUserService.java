@@ -0,0 +1,61 @@
+package com.example.grpc;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The mock user service answering every call, single or batched, after a fixed
+ * delay, like a backend doing one round trip to its store per call, for the gRPC
+ * client benchmarks
+ */
+public final class DelayedUserService extends MockUserServiceImpl {
+
+    private final ScheduledExecutorService delays = Executors.newScheduledThreadPool(4);
+    private final LongAdder calls = new LongAdder();
+    private final long latencyMillis;
+
+    public DelayedUserService(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Serve on a free local port, allowing {@code maxStreams} concurrent calls per connection
+     */
+    public Server start(int maxStreams) throws IOException {
+        return NettyServerBuilder.forPort(0)
+            .maxConcurrentCallsPerConnection(maxStreams)
+            .addService(this)
+            .build()
+            .start();
+    }
+
+    public void shutdown() {
+        delays.shutdownNow();
+    }
+
+    /**
+     * Calls received so far, each batch counting once
+     */
+    public long calls() {
+        return calls.sum();
+    }
+
+    @Override
+    public void getUser(GetUserRequest request, StreamObserver<GetUserResponse> responseObserver) {
+        calls.increment();
+        delays.schedule(() -> super.getUser(request, responseObserver), latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void batchGetUsers(BatchGetUsersRequest request, StreamObserver<BatchGetUsersResponse> responseObserver) {
+        calls.increment();
+        delays.schedule(() -> super.batchGetUsers(request, responseObserver), latencyMillis, TimeUnit.MILLISECONDS);
+    }
+}
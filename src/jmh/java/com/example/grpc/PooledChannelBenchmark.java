@@ -0,0 +1,65 @@
+package com.example.grpc;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One connection against pools of 2, 4 and 8 to the mock user service. The server
+ * allows 100 concurrent streams per connection and answers after 5 ms, so one
+ * connection tops out near 20k calls per second. Every benchmark thread keeps one
+ * call in flight, so run at the concurrency to compare
+ * ({@code scripts/benchmark.sh PooledChannel 64 256 1024}); sample time gives the
+ * p50 and p99 latency.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class PooledChannelBenchmark {
+
+    private static final int MAX_STREAMS = 100;
+    private static final long LATENCY_MILLIS = 5;
+
+    @Param({ "1", "2", "4", "8" })
+    int connections;
+
+    private final GetUserRequest request = GetUserRequest.newBuilder().setUserId("1").build();
+    private DelayedUserService service;
+    private Server server;
+    private PooledChannel pool;
+    private ReactorUserServiceGrpc.ReactorUserServiceStub stub;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = new DelayedUserService(LATENCY_MILLIS);
+        server = service.start(MAX_STREAMS);
+        pool = new PooledChannel(connections,
+            i -> NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build(),
+            MAX_STREAMS);
+        stub = ReactorUserServiceGrpc.newReactorStub(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        service.shutdown();
+    }
+
+    @Benchmark
+    public GetUserResponse getUser() {
+        return stub.getUser(request).block();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.grpc;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP requests through a Reactor Netty server whose handler calls the mock user
+ * service, with the shaded client (its own event loops, 4 connections) or with
+ * {@link SharedLoopChannels} on the server's loops. Every benchmark thread keeps
+ * one request in flight, so run at the concurrency to compare, with the context
+ * switch profiler:
+ * {@code ./gradlew jmh -PjmhIncludes=SharedEventLoop -PjmhThreads=64 -PjmhProfilers=com.example.grpc.ContextSwitchProfiler}.
+ * The load generator's share of the context switches is the same for both transports.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SharedEventLoopBenchmark {
+
+    @Param({ "shaded", "shared-event-loops" })
+    String transport;
+
+    private LoopResources serverLoops;
+    private LoopResources clientLoops;
+    private Server backend;
+    private PooledChannel pool;
+    private DisposableServer server;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        serverLoops = LoopResources.create("bench-server", 4, true);
+        clientLoops = LoopResources.create("bench-client", 2, true);
+        backend = NettyServerBuilder.forPort(0).addService(new MockUserServiceImpl()).build().start();
+        pool = transport.equals("shaded")
+            ? new PooledChannel(4,
+                i -> NettyChannelBuilder.forAddress("localhost", backend.getPort()).usePlaintext().build(), 0)
+            : SharedLoopChannels.create(serverLoops, "localhost", backend.getPort(), 0);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+        GetUserRequest request = GetUserRequest.newBuilder().setUserId("1").build();
+        server = HttpServer.create()
+            .port(0)
+            .runOn(serverLoops)
+            .handle((req, res) -> res.sendString(stub.getUser(request).map(r -> r.getUser().getName())))
+            .bindNow();
+        client = HttpClient.create(ConnectionProvider.create("bench", 1024))
+            .runOn(clientLoops)
+            .baseUrl("http://localhost:" + server.port());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        server.disposeNow();
+        pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        backend.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        serverLoops.disposeLater().block();
+        clientLoops.disposeLater().block();
+    }
+
+    @Benchmark
+    public String request() {
+        return client.get().uri("/").responseContent().aggregate().asString().block();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * Shared setup for the rate limiting benchmarks
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * In-memory config whose store holds every benchmark key, so large cardinalities
+     * measure lookups in a full store rather than eviction churn
+     */
+    static RateLimitConfig config(RateLimitConfig.Strategy strategy, int keyCount) {
+        RateLimitConfig config = new RateLimitConfig();
+        config.setEnabled(true);
+        config.setUseRedis(false);
+        config.setStrategy(strategy);
+        // Generous limit so most checks take the allow path, as in normal traffic
+        config.setGetUserById(new RateLimitConfig.EndpointConfig(1_000_000, 1_000_000, Duration.ofSeconds(1)));
+        config.getLocalStore().setMaxEntries(Math.max(keyCount, 100_000));
+        return config;
+    }
+
+    /**
+     * Distinct IPv4 client address for each index, starting at 10.0.0.1
+     */
+    static int address(int index) {
+        return 0x0A000001 + index;
+    }
+
+    static String dotted(int address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "."
+            + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link RateLimitFilter#filter} for a GET /api/users/{id}: route lookup, key
+ * resolution from X-Forwarded-For, the check, hot key tracking and headers.
+ *
+ * Exchanges are mutable, so each invocation builds one; {@link #exchangeOnly} measures
+ * that cost alone so it can be subtracted.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RateLimitFilterBenchmark {
+
+    private static final WebFilterChain CHAIN = exchange -> Mono.empty();
+
+    // 10M keys need a larger heap: -PjmhKeyCounts=10000000 -PjmhHeap=8g
+    @Param({ "1", "1000", "100000" })
+    int keyCount;
+
+    @Param({ "TOKEN_BUCKET", "GCRA", "FIXED_WINDOW", "SLIDING_WINDOW" })
+    RateLimitConfig.Strategy strategy;
+
+    private RateLimitFilter filter;
+    private HeavyHitterTracker hotKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RateLimitConfig config = BenchmarkSupport.config(strategy, keyCount);
+        CustomMetrics customMetrics = new CustomMetrics(new SimpleMeterRegistry());
+        RateLimitService service = new RateLimitService(config, null, customMetrics);
+        hotKeys = new HeavyHitterTracker(config, customMetrics);
+        filter = new RateLimitFilter(service, new RateLimitKeyResolver(config), new RouteTable(), hotKeys,
+            customMetrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        hotKeys.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public ServerWebExchange exchangeOnly(ThreadState thread) {
+        return exchange(thread);
+    }
+
+    @Benchmark
+    public ServerWebExchange filter(ThreadState thread) {
+        ServerWebExchange exchange = exchange(thread);
+        filter.filter(exchange, CHAIN).block();
+        return exchange;
+    }
+
+    private ServerWebExchange exchange(ThreadState thread) {
+        int address = BenchmarkSupport.address(thread.random.nextInt(keyCount));
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/users/42")
+            .header("X-Forwarded-For", BenchmarkSupport.dotted(address)));
+    }
+}
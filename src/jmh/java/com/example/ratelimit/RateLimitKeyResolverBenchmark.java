@@ -0,0 +1,78 @@
+package com.example.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitKeyResolver#resolve} for the common header layouts. Resolution only
+ * reads the request, so a fixed pool of exchanges is reused.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RateLimitKeyResolverBenchmark {
+
+    private static final int EXCHANGES = 1024;
+
+    /**
+     * remote: peer address only; forwarded: one X-Forwarded-For entry, no trusted proxies;
+     * trustedChain: two trusted hops behind the client; ipv6: IPv6 X-Forwarded-For entry
+     */
+    @Param({ "remote", "forwarded", "trustedChain", "ipv6" })
+    String headers;
+
+    private RateLimitKeyResolver resolver;
+    private ServerWebExchange[] exchanges;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnknownHostException {
+        RateLimitConfig config = new RateLimitConfig();
+        if (headers.equals("trustedChain")) {
+            config.setTrustedProxies(List.of("10.0.0.0/8"));
+        }
+        resolver = new RateLimitKeyResolver(config);
+
+        InetSocketAddress proxy = new InetSocketAddress(InetAddress.getByName("10.3.3.3"), 443);
+        exchanges = new ServerWebExchange[EXCHANGES];
+        for (int i = 0; i < EXCHANGES; i++) {
+            String client = BenchmarkSupport.dotted(0xC6336400 + i); // 198.51.100.0 and up
+            MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/users/42");
+            switch (headers) {
+                case "remote" -> request.remoteAddress(new InetSocketAddress(InetAddress.getByName(client), 443));
+                case "forwarded" -> request.remoteAddress(proxy).header("X-Forwarded-For", client);
+                case "trustedChain" -> request.remoteAddress(proxy)
+                    .header("X-Forwarded-For", client + ", 10.1.1.1, 10.2.2.2");
+                case "ipv6" -> request.remoteAddress(proxy)
+                    .header("X-Forwarded-For", "2001:db8::" + Integer.toHexString(i + 1));
+                default -> throw new IllegalArgumentException("Unknown header layout: " + headers);
+            }
+            exchanges[i] = MockServerWebExchange.from(request);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Benchmark
+    public ClientKey resolve(ThreadState thread) {
+        return resolver.resolve(exchanges[thread.next++ & (EXCHANGES - 1)], RouteTable.GET_USER_BY_ID);
+    }
+}
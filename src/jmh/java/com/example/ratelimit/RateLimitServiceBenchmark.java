@@ -0,0 +1,61 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Mono;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitService#isAllowed(ClientKey)} on the in-memory backend, per strategy
+ * and key cardinality. Keys are drawn uniformly, so large cardinalities also measure
+ * cache misses in the bucket store.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RateLimitServiceBenchmark {
+
+    // 10M keys need a larger heap: -PjmhKeyCounts=10000000 -PjmhHeap=8g
+    @Param({ "1", "1000", "100000" })
+    int keyCount;
+
+    @Param({ "TOKEN_BUCKET", "GCRA", "FIXED_WINDOW", "SLIDING_WINDOW" })
+    RateLimitConfig.Strategy strategy;
+
+    private RateLimitService service;
+    private ClientKey[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new RateLimitService(BenchmarkSupport.config(strategy, keyCount), null,
+            new CustomMetrics(new SimpleMeterRegistry()));
+        keys = new ClientKey[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, BenchmarkSupport.address(i));
+            // Populate the store so every measured check finds its bucket
+            service.isAllowed(keys[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public Mono<RateLimitService.RateLimitResult> isAllowed(ThreadState thread) {
+        // Local checks complete inside isAllowed; the returned Mono already holds the result
+        return service.isAllowed(keys[thread.random.nextInt(keyCount)]);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.lettuce.core.RedisClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitService#isAllowed(String, String)} against a real Redis, per Redis mode
+ * and number of concurrent clients sharing one hot key. Each invocation runs
+ * {@value #CHECKS} checks with {@code clients} of them in flight at a time, so the
+ * score is checks per millisecond; by Little's law a check takes clients / score
+ * milliseconds on average.
+ *
+ * Needs a local Redis, e.g. {@code docker compose -f docker-compose.redis.yml up -d redis},
+ * and REDIS_BENCHMARK_URL (e.g. redis://localhost:6379); without it the trial fails.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class RedisRateLimitBenchmark {
+
+    private static final int CHECKS = 1000;
+
+    @Param({ "CAS", "SCRIPT", "HYBRID" })
+    RateLimitConfig.RedisMode mode;
+
+    @Param({ "1", "10", "100" })
+    int clients;
+
+    private RedisClient redisClient;
+    private RateLimitService service;
+    private String key;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getenv("REDIS_BENCHMARK_URL");
+        if (url == null || url.isBlank()) {
+            throw new IllegalStateException("Set REDIS_BENCHMARK_URL to run the Redis benchmarks");
+        }
+        redisClient = RedisClient.create(url);
+        RateLimitConfig config = new RateLimitConfig();
+        config.setUseRedis(true);
+        config.setRedisMode(mode);
+        config.setKeyPrefix("benchmark_rate_limit:");
+        // Large enough that every check is allowed and writes state
+        config.setGetUserById(new RateLimitConfig.EndpointConfig(
+            Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2, Duration.ofMinutes(1)));
+        service = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+        key = "hot-key-" + mode + "-" + clients;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        redisClient.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHECKS)
+    public RateLimitService.RateLimitResult isAllowed() {
+        return Flux.range(0, CHECKS)
+            .flatMap(i -> service.isAllowed(key, "getUserById"), clients)
+            .blockLast();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on one shared limit, such as a gateway tier: every benchmark thread
+ * takes permits from the same {@link ShardedBucket}. Run at several thread counts
+ * ({@code scripts/benchmark.sh ShardedBucket 1 2 4 8 16}); the sharded bucket
+ * should scale with the thread count up to the core count, the shared one not.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ShardedBucketBenchmark {
+
+    /**
+     * shared: one GCRA state, as below min-rate; sharded: per-core stripes from the start
+     */
+    @Param({ "shared", "sharded" })
+    String mode;
+
+    private ShardedBucket bucket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RateLimitConfig.ShardingConfig shardingConfig = new RateLimitConfig.ShardingConfig();
+        shardingConfig.setEnabled(mode.equals("sharded"));
+        shardingConfig.setMinRate(0);
+        // Refills faster than any thread count can take, so every check is allowed
+        bucket = new ShardedBucket(new GcraRateLimiter(new RateLimitConfig.EndpointConfig(
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ofSeconds(1))), shardingConfig);
+    }
+
+    @Benchmark
+    public long acquire() {
+        return bucket.acquire(AtomicRateLimiter.monotonicNanos());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.service;
+
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.concurrency.ConcurrencyLimitConfig;
+import com.example.grpc.DelayedUserService;
+import com.example.grpc.GetUserRequest;
+import com.example.grpc.GetUserResponse;
+import com.example.grpc.ReactorUserServiceGrpc;
+import com.example.metrics.CustomMetrics;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * One GetUser call per lookup against lookups batched into BatchGetUsers, over
+ * 1000 distinct users. The server allows 100 concurrent calls per connection and
+ * answers every call, single or batched, after 5 ms. Every benchmark thread keeps
+ * one lookup in flight, so run at the concurrency to compare
+ * ({@code scripts/benchmark.sh UserBatch 64 256 1024}); backend calls per lookup
+ * are printed at the end of each trial.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class UserBatchBenchmark {
+
+    private static final int USERS = 1000;
+    private static final int MAX_STREAMS = 100;
+    private static final long LATENCY_MILLIS = 5;
+
+    @Param({ "single", "batched" })
+    String mode;
+
+    private final LongAdder lookups = new LongAdder();
+    private DelayedUserService service;
+    private Server server;
+    private ManagedChannel channel;
+    private Function<String, Mono<GetUserResponse>> lookUp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = new DelayedUserService(LATENCY_MILLIS);
+        server = service.start(MAX_STREAMS);
+        channel = NettyChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(channel);
+        ConcurrencyLimitConfig limitConfig = new ConcurrencyLimitConfig();
+        limitConfig.setEnabled(false);
+        CustomMetrics customMetrics = new CustomMetrics(new SimpleMeterRegistry());
+        UserBatchDispatcher dispatcher = new UserBatchDispatcher(stub,
+            new AdaptiveConcurrencyLimiter(limitConfig, customMetrics), new UserBatchConfig(), customMetrics);
+        lookUp = mode.equals("single")
+            ? userId -> stub.getUser(GetUserRequest.newBuilder().setUserId(userId).build())
+            : dispatcher::submit;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        System.out.printf("%n%s: %.3f backend calls per lookup%n", mode, (double) service.calls() / lookups.sum());
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        service.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+
+    @Benchmark
+    public GetUserResponse lookUp(ThreadState thread) {
+        lookups.increment();
+        return lookUp.apply(String.valueOf(thread.next++ % USERS)).block();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.concurrency;
+
+import com.example.exception.ConcurrencyLimitExceededException;
+import com.example.metrics.CustomMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Adaptive limit on in-flight calls to the user service, in the style of TCP Vegas
+ * and gradient concurrency limiters.
+ *
+ * Call latencies are averaged over short sample windows. The baseline is the
+ * lowest window average of the current and previous baseline period: what the
+ * backend delivers without queueing. At the end of each window the limit is
+ * scaled by the gradient tolerance * baseline / latency, capped to [0.5, 1], and
+ * given a queue allowance of sqrt(limit), so it shrinks once latency climbs past
+ * the tolerance and grows back while latency stays near the baseline. Calls over
+ * the limit fail at once instead of queueing behind a slow backend.
+ *
+ * Completions only add to striped counters on the event loops; the caller that
+ * finds the window over takes a lock to close it, and the others move on.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final String BACKEND = "user-service";
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minWindowSamples;
+    private final long baselinePeriodNanos;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedCalls = new LongAdder();
+    private volatile int limit;
+
+    // Current sample window
+    private final LongAdder windowLatencySum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private volatile long windowStart;
+
+    // Limit estimate and baseline, guarded by windowLock
+    private final ReentrantLock windowLock = new ReentrantLock();
+    private double estimatedLimit;
+    private long baselinePeriodStart;
+    private long baseline = Long.MAX_VALUE;
+    private long previousBaseline = Long.MAX_VALUE;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig config, CustomMetrics customMetrics) {
+        this(config, System::nanoTime);
+        customMetrics.bindConcurrencyLimiter(this);
+    }
+
+    AdaptiveConcurrencyLimiter(ConcurrencyLimitConfig config, LongSupplier clock) {
+        if (config.getMinLimit() < 1 || config.getMaxLimit() < config.getMinLimit()) {
+            throw new IllegalArgumentException("Concurrency limit bounds must satisfy 1 <= min-limit <= max-limit");
+        }
+        this.enabled = config.isEnabled();
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.tolerance = config.getTolerance();
+        this.smoothing = config.getSmoothing();
+        this.windowNanos = config.getWindow().toNanos();
+        this.minWindowSamples = config.getMinWindowSamples();
+        this.baselinePeriodNanos = config.getBaselinePeriod().toNanos();
+        this.clock = clock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, config.getInitialLimit()));
+        this.estimatedLimit = limit;
+        long now = clock.getAsLong();
+        this.windowStart = now;
+        this.baselinePeriodStart = now;
+    }
+
+    public int currentLimit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Run the call if a permit is free, otherwise fail with
+     * {@link ConcurrencyLimitExceededException} without subscribing to it
+     */
+    public <T> Mono<T> limit(Mono<T> call) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(new ConcurrencyLimitExceededException(BACKEND, limit));
+            }
+            long start = clock.getAsLong();
+            return call.doFinally(signal -> release(signal, start));
+        });
+    }
+
+    /**
+     * Flux variant of {@link #limit(Mono)}; the permit is held until the stream terminates
+     */
+    public <T> Flux<T> limit(Flux<T> call) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(new ConcurrencyLimitExceededException(BACKEND, limit));
+            }
+            long start = clock.getAsLong();
+            return call.doFinally(signal -> release(signal, start));
+        });
+    }
+
+    boolean tryAcquire() {
+        if (!enabled) {
+            inFlight.incrementAndGet();
+            return true;
+        }
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejectedCalls.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Return a permit. Cancelled calls say nothing about the backend and are not sampled;
+     * failed calls are, since timeouts are exactly the latency the limit must react to.
+     */
+    void release(SignalType signal, long start) {
+        int concurrent = inFlight.getAndDecrement();
+        if (enabled && signal != SignalType.CANCEL) {
+            sample(clock.getAsLong() - start, concurrent);
+        }
+    }
+
+    private void sample(long latencyNanos, int concurrent) {
+        windowLatencySum.add(latencyNanos);
+        windowSamples.increment();
+        if (concurrent > windowMaxInFlight.get()) {
+            windowMaxInFlight.accumulateAndGet(concurrent, Math::max);
+        }
+        long now = clock.getAsLong();
+        if (now - windowStart < windowNanos || windowSamples.sum() < minWindowSamples) {
+            return;
+        }
+        if (!windowLock.tryLock()) {
+            // Another caller is closing the window
+            return;
+        }
+        try {
+            if (now - windowStart >= windowNanos) {
+                closeWindow(now);
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    /**
+     * Adjust the limit to the window that just ended. Samples landing while it is read
+     * and reset count toward this window or the next one.
+     */
+    private void closeWindow(long now) {
+        long samples = windowSamples.sumThenReset();
+        long latencySum = windowLatencySum.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(0);
+        windowStart = now;
+        if (samples == 0) {
+            return;
+        }
+
+        long latency = Math.max(1, latencySum / samples);
+        if (now - baselinePeriodStart >= baselinePeriodNanos) {
+            // Forget lows from two periods ago, so the baseline follows a backend that got slower for good
+            previousBaseline = baseline;
+            baseline = Long.MAX_VALUE;
+            baselinePeriodStart = now;
+        }
+        baseline = Math.min(baseline, latency);
+        long lowest = Math.min(baseline, previousBaseline);
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * lowest / latency));
+        double newLimit;
+        if (gradient == 1.0 && maxInFlight * 2 < estimatedLimit) {
+            // Latency is fine but callers barely use the limit; growing it would prove nothing
+            newLimit = estimatedLimit;
+        } else {
+            newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit,
+            estimatedLimit * (1 - smoothing) + newLimit * smoothing));
+        limit = (int) estimatedLimit;
+    }
+}
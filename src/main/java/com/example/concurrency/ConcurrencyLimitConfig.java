@@ -0,0 +1,52 @@
+package com.example.concurrency;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the adaptive concurrency limit on user service calls
+ */
+@Configuration
+@ConfigurationProperties(prefix = "grpc.client.user-service.concurrency-limit")
+public class ConcurrencyLimitConfig {
+    
+    private boolean enabled = false; // Off until max-limit is sized to the backend
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 200;
+    private double tolerance = 1.5; // Latency over the baseline tolerated before the limit shrinks
+    private double smoothing = 0.2; // Weight of each window's new limit
+    private Duration window = Duration.ofMillis(100);
+    private int minWindowSamples = 10;
+    private Duration baselinePeriod = Duration.ofMinutes(1); // The baseline forgets lows older than two periods
+    
+    // Getters and setters
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    
+    public int getInitialLimit() { return initialLimit; }
+    public void setInitialLimit(int initialLimit) { this.initialLimit = initialLimit; }
+    
+    public int getMinLimit() { return minLimit; }
+    public void setMinLimit(int minLimit) { this.minLimit = minLimit; }
+    
+    public int getMaxLimit() { return maxLimit; }
+    public void setMaxLimit(int maxLimit) { this.maxLimit = maxLimit; }
+    
+    public double getTolerance() { return tolerance; }
+    public void setTolerance(double tolerance) { this.tolerance = tolerance; }
+    
+    public double getSmoothing() { return smoothing; }
+    public void setSmoothing(double smoothing) { this.smoothing = smoothing; }
+    
+    public Duration getWindow() { return window; }
+    public void setWindow(Duration window) { this.window = window; }
+    
+    public int getMinWindowSamples() { return minWindowSamples; }
+    public void setMinWindowSamples(int minWindowSamples) { this.minWindowSamples = minWindowSamples; }
+    
+    public Duration getBaselinePeriod() { return baselinePeriod; }
+    public void setBaselinePeriod(Duration baselinePeriod) { this.baselinePeriod = baselinePeriod; }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.concurrency;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one.
+ *
+ * The first caller for a key starts the call; callers that subscribe while it is
+ * in flight share its result or error instead of starting their own. A caller that
+ * cancels only leaves the flight: the call itself is cancelled once every caller
+ * has left. A finished or abandoned flight is forgotten, so the next caller starts
+ * a new call. Shared callers see the Reactor context of the first one.
+ *
+ * {@link #invalidate} makes later callers start a new call rather than join one
+ * that may have read older state; writers call it before and after a write.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight> flights = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    /**
+     * Join the call in flight for {@code key}, or start {@code call} if there is none
+     */
+    public Mono<V> execute(K key, Supplier<? extends Mono<V>> call) {
+        return Mono.defer(() -> {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight started = new Flight(key, call);
+                flight = flights.putIfAbsent(key, started);
+                if (flight == null) {
+                    return started.shared;
+                }
+            }
+            coalescedCalls.increment();
+            return flight.shared;
+        });
+    }
+
+    /**
+     * Detach the call in flight for {@code key}; its callers still get its result,
+     * later callers start a new call
+     */
+    public void invalidate(K key) {
+        flights.remove(key);
+    }
+
+    /**
+     * Callers that joined a call in flight instead of starting one
+     */
+    public long coalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    /**
+     * Calls currently in flight
+     */
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private final class Flight {
+
+        final Mono<V> shared;
+
+        Flight(K key, Supplier<? extends Mono<V>> call) {
+            // The call starts with the first subscriber and is cancelled when the last one leaves.
+            // singleOrEmpty rather than next, which would cancel the call as soon as it answered.
+            this.shared = Mono.defer(call)
+                    .doFinally(signal -> flights.remove(key, this))
+                    .flux()
+                    .publish()
+                    .refCount(1)
+                    .singleOrEmpty();
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.example.config;
 
+import com.example.grpc.PooledChannel;
 import com.example.grpc.ReactorUserServiceGrpc;
+import com.example.grpc.SharedLoopChannels;
+import com.example.metrics.CustomMetrics;
 import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
 
 /**
  * Configuration for gRPC clients
@@ -19,11 +26,46 @@ public class GrpcClientConfig {
     @Value("${grpc.client.user-service.port:9090}")
     private int userServicePort;
     
+    @Value("${grpc.client.user-service.connections:4}")
+    private int userServiceConnections;
+    
+    @Value("${grpc.client.user-service.max-streams-per-connection:100}")
+    private int userServiceMaxStreams;
+    
+    @Value("${grpc.client.user-service.transport:shaded}")
+    private Transport userServiceTransport;
+    
+    /**
+     * How the user service client does its I/O
+     */
+    public enum Transport {
+        /** grpc-netty-shaded with its own event loops and {@code connections} connections */
+        SHADED,
+        /** Unshaded Netty on the WebFlux server's event loops, one connection per loop */
+        SHARED_EVENT_LOOPS
+    }
+    
+    /**
+     * Pool of connections to the user service; calls go to the least loaded one
+     */
     @Bean
-    public ManagedChannel userServiceChannel() {
-        return ManagedChannelBuilder.forAddress(userServiceHost, userServicePort)
-                .usePlaintext()
-                .build();
+    public ManagedChannel userServiceChannel(CustomMetrics customMetrics,
+                                             ObjectProvider<ReactorResourceFactory> resourceFactory) {
+        PooledChannel pool;
+        if (userServiceTransport == Transport.SHARED_EVENT_LOOPS) {
+            ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+            LoopResources loops = factory != null ? factory.getLoopResources() : HttpResources.get();
+            pool = SharedLoopChannels.create(loops, userServiceHost, userServicePort, userServiceMaxStreams);
+        } else {
+            pool = new PooledChannel(userServiceConnections,
+                    // Named explicitly: with grpc-netty also present, ManagedChannelBuilder could pick either
+                    i -> NettyChannelBuilder.forAddress(userServiceHost, userServicePort)
+                            .usePlaintext()
+                            .build(),
+                    userServiceMaxStreams);
+        }
+        customMetrics.bindChannelPool(pool);
+        return pool;
     }
     
     @Bean
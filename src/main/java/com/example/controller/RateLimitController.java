@@ -1,11 +1,26 @@
 package com.example.controller;
 
+import com.example.dto.RateLimitUpdateRequest;
+import com.example.ratelimit.HeavyHitterTracker;
 import com.example.ratelimit.RateLimitConfig;
+import com.example.ratelimit.RateLimitService;
+import com.example.ratelimit.RouteTable;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,51 +30,80 @@ import java.util.Map;
 @RequestMapping("/api/rate-limit")
 public class RateLimitController {
     
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitController.class);
+    
     private final RateLimitConfig rateLimitConfig;
+    private final RateLimitService rateLimitService;
+    private final HeavyHitterTracker hotKeys;
     
-    public RateLimitController(RateLimitConfig rateLimitConfig) {
+    public RateLimitController(RateLimitConfig rateLimitConfig, RateLimitService rateLimitService,
+                               HeavyHitterTracker hotKeys) {
         this.rateLimitConfig = rateLimitConfig;
+        this.rateLimitService = rateLimitService;
+        this.hotKeys = hotKeys;
     }
     
     /**
-     * Get current rate limit configuration
+     * Get current rate limit configuration, including limits changed at runtime
      */
     @GetMapping("/config")
     public Mono<Map<String, Object>> getRateLimitConfig() {
+        RateLimitConfig.EndpointConfig defaults = rateLimitService.endpointConfig(RouteTable.DEFAULT_ENDPOINT);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (int id = 1; id < RouteTable.ENDPOINT_COUNT; id++) {
+            endpoints.put(RouteTable.endpointName(id), endpointLimits(id));
+        }
         return Mono.just(Map.of(
             "enabled", rateLimitConfig.isEnabled(),
             "strategy", rateLimitConfig.getStrategy(),
             "useRedis", rateLimitConfig.isUseRedis(),
-            "defaultCapacity", rateLimitConfig.getCapacity(),
-            "defaultRefillTokens", rateLimitConfig.getRefillTokens(),
-            "defaultRefillPeriod", rateLimitConfig.getRefillPeriod().toString(),
-            "endpoints", Map.of(
-                "getUserById", Map.of(
-                    "capacity", rateLimitConfig.getGetUserById().getCapacity(),
-                    "refillTokens", rateLimitConfig.getGetUserById().getRefillTokens(),
-                    "refillPeriod", rateLimitConfig.getGetUserById().getRefillPeriod().toString()
-                ),
-                "createUser", Map.of(
-                    "capacity", rateLimitConfig.getCreateUser().getCapacity(),
-                    "refillTokens", rateLimitConfig.getCreateUser().getRefillTokens(),
-                    "refillPeriod", rateLimitConfig.getCreateUser().getRefillPeriod().toString()
-                ),
-                "updateUser", Map.of(
-                    "capacity", rateLimitConfig.getUpdateUser().getCapacity(),
-                    "refillTokens", rateLimitConfig.getUpdateUser().getRefillTokens(),
-                    "refillPeriod", rateLimitConfig.getUpdateUser().getRefillPeriod().toString()
-                ),
-                "deleteUser", Map.of(
-                    "capacity", rateLimitConfig.getDeleteUser().getCapacity(),
-                    "refillTokens", rateLimitConfig.getDeleteUser().getRefillTokens(),
-                    "refillPeriod", rateLimitConfig.getDeleteUser().getRefillPeriod().toString()
-                ),
-                "listUsers", Map.of(
-                    "capacity", rateLimitConfig.getListUsers().getCapacity(),
-                    "refillTokens", rateLimitConfig.getListUsers().getRefillTokens(),
-                    "refillPeriod", rateLimitConfig.getListUsers().getRefillPeriod().toString()
-                )
-            )
+            "defaultCapacity", defaults.getCapacity(),
+            "defaultRefillTokens", defaults.getRefillTokens(),
+            "defaultRefillPeriod", defaults.getRefillPeriod().toString(),
+            "endpoints", endpoints
+        ));
+    }
+    
+    /**
+     * Change the limits of one endpoint on this node without rebuilding its buckets.
+     * Disabled unless rate-limit.reload.admin-api-enabled is set.
+     */
+    @PutMapping("/config/endpoints/{endpoint}")
+    public Mono<ResponseEntity<Map<String, Object>>> updateEndpointLimits(
+            @PathVariable String endpoint, @Valid @RequestBody RateLimitUpdateRequest request) {
+        if (!rateLimitConfig.getReload().isAdminApiEnabled()) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+        }
+        int id = RouteTable.endpointId(endpoint);
+        if (!RouteTable.endpointName(id).equalsIgnoreCase(endpoint)) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        
+        logger.info("Admin API: changing rate limits of {}", RouteTable.endpointName(id));
+        try {
+            rateLimitService.updateLimits(id, request.capacity(), request.refillTokens(), request.refillPeriod());
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of("message", e.getMessage())));
+        }
+        return Mono.just(ResponseEntity.ok(endpointLimits(id)));
+    }
+    
+    /**
+     * Busiest rate limit keys on this node, with the share of their checks that were denied
+     */
+    @GetMapping("/hot-keys")
+    public Mono<Map<String, Object>> getHotKeys(@RequestParam(defaultValue = "20") int limit) {
+        List<HeavyHitterTracker.HotKey> top = hotKeys.topKeys(Math.max(limit, 0));
+        return Mono.just(Map.of(
+            "enabled", rateLimitConfig.getHotKeys().isEnabled(),
+            "keys", top.stream()
+                .map(hotKey -> Map.of(
+                    "client", hotKey.client(),
+                    "endpoint", hotKey.endpoint(),
+                    "requests", hotKey.requests(),
+                    "denialRatio", hotKey.denialRatio()
+                ))
+                .toList()
         ));
     }
     
@@ -74,4 +118,14 @@ public class RateLimitController {
             "backend", rateLimitConfig.isUseRedis() ? "Redis" : "In-Memory"
         ));
     }
+    
+    private Map<String, Object> endpointLimits(int endpointId) {
+        RateLimitConfig.EndpointConfig limits = rateLimitService.endpointConfig(endpointId);
+        return Map.of(
+            "capacity", limits.getCapacity(),
+            "refillTokens", limits.getRefillTokens(),
+            "refillPeriod", limits.getRefillPeriod().toString(),
+            "generation", rateLimitService.limitsGeneration(endpointId)
+        );
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.example.controller;
 import com.example.dto.CreateUserRequest;
 import com.example.dto.UpdateUserRequest;
 import com.example.dto.UserDto;
+import com.example.exception.ConcurrencyLimitExceededException;
 import com.example.metrics.CustomMetrics;
 import com.example.service.UserGatewayService;
 import io.micrometer.core.annotation.Timed;
@@ -49,8 +50,8 @@ public class UserController {
         return userGatewayService.getUserById(id)
                 .map(user -> ResponseEntity.ok(user))
                 .defaultIfEmpty(ResponseEntity.notFound().build())
-                .doOnError(error -> logger.error("REST: Error getting user by ID: {}", id, error))
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build())
+                .doOnError(UserController::isBackendError, error -> logger.error("REST: Error getting user by ID: {}", id, error))
+                .onErrorReturn(UserController::isBackendError, ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build())
                 .doFinally(signalType -> {
                     customMetrics.stopHttpTimer(sample);
                     customMetrics.decrementActiveConnections();
@@ -66,8 +67,8 @@ public class UserController {
         
         return userGatewayService.createUser(request)
                 .map(user -> ResponseEntity.status(HttpStatus.CREATED).body(user))
-                .doOnError(error -> logger.error("REST: Error creating user: {}", request.name(), error))
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                .doOnError(UserController::isBackendError, error -> logger.error("REST: Error creating user: {}", request.name(), error))
+                .onErrorReturn(UserController::isBackendError, ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
     }
     
     /**
@@ -81,8 +82,8 @@ public class UserController {
         return userGatewayService.updateUser(id, request)
                 .map(user -> ResponseEntity.ok(user))
                 .defaultIfEmpty(ResponseEntity.notFound().build())
-                .doOnError(error -> logger.error("REST: Error updating user: {}", id, error))
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                .doOnError(UserController::isBackendError, error -> logger.error("REST: Error updating user: {}", id, error))
+                .onErrorReturn(UserController::isBackendError, ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
     }
     
     /**
@@ -96,8 +97,8 @@ public class UserController {
                 .map(success -> success ? 
                     ResponseEntity.noContent().<Void>build() : 
                     ResponseEntity.notFound().<Void>build())
-                .doOnError(error -> logger.error("REST: Error deleting user: {}", id, error))
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+                .doOnError(UserController::isBackendError, error -> logger.error("REST: Error deleting user: {}", id, error))
+                .onErrorReturn(UserController::isBackendError, ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
     }
     
     /**
@@ -109,7 +110,7 @@ public class UserController {
         logger.info("REST: Listing users - page: {}, size: {}", page, size);
         
         return userGatewayService.listUsers(page, size)
-                .doOnError(error -> logger.error("REST: Error listing users", error));
+                .doOnError(UserController::isBackendError, error -> logger.error("REST: Error listing users", error));
     }
     
     /**
@@ -119,4 +120,11 @@ public class UserController {
     public Mono<ResponseEntity<String>> healthCheck() {
         return Mono.just(ResponseEntity.ok("User Gateway is healthy"));
     }
+    
+    /**
+     * Shed calls are left to the global exception handler, which answers 503
+     */
+    private static boolean isBackendError(Throwable error) {
+        return !(error instanceof ConcurrencyLimitExceededException);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Request DTO for changing the limits of a rate limited endpoint
+ */
+public record RateLimitUpdateRequest(
+        @NotNull(message = "Capacity is required")
+        @Min(value = 1, message = "Capacity must be positive")
+        @JsonProperty("capacity")
+        Integer capacity,
+        
+        @NotNull(message = "Refill tokens is required")
+        @Min(value = 1, message = "Refill tokens must be positive")
+        @JsonProperty("refillTokens")
+        Integer refillTokens,
+        
+        @NotNull(message = "Refill period is required")
+        @JsonProperty("refillPeriod")
+        Duration refillPeriod
+) {
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.example.exception;
+
+/**
+ * Thrown when a backend call is shed because the adaptive concurrency limit is reached
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+    
+    private final int limit;
+    
+    public ConcurrencyLimitExceededException(String backend, int limit) {
+        super("Concurrency limit of " + limit + " in-flight calls to " + backend + " reached", null, false, false);
+        this.limit = limit;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+}
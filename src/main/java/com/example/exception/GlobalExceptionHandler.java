@@ -2,6 +2,7 @@ package com.example.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -61,6 +62,25 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response));
     }
     
+    /**
+     * Handle calls shed by the adaptive concurrency limit; these are expected under
+     * overload, so they are answered quickly and not logged as errors
+     */
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public Mono<ResponseEntity<Map<String, Object>>> handleConcurrencyLimitExceeded(ConcurrencyLimitExceededException ex) {
+        logger.debug("Request shed: {}", ex.getMessage());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("timestamp", Instant.now());
+        response.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.put("error", "Service Unavailable");
+        response.put("message", "Backend service is overloaded, please retry");
+        
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(response));
+    }
+    
     /**
      * Handle general exceptions
      */
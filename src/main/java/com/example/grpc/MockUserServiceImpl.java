@@ -60,6 +60,22 @@ public class MockUserServiceImpl extends UserServiceGrpc.UserServiceImplBase {
         responseObserver.onCompleted();
     }
     
+    @Override
+    public void batchGetUsers(BatchGetUsersRequest request, StreamObserver<BatchGetUsersResponse> responseObserver) {
+        logger.info("Mock gRPC: Getting {} users by ID", request.getUserIdsCount());
+        
+        BatchGetUsersResponse.Builder responseBuilder = BatchGetUsersResponse.newBuilder();
+        for (String userId : request.getUserIdsList()) {
+            User user = users.get(userId);
+            responseBuilder.addResults(GetUserResponse.newBuilder()
+                    .setUser(user != null ? user : User.getDefaultInstance())
+                    .setFound(user != null));
+        }
+        
+        responseObserver.onNext(responseBuilder.build());
+        responseObserver.onCompleted();
+    }
+    
     @Override
     public void createUser(CreateUserRequest request, StreamObserver<CreateUserResponse> responseObserver) {
         logger.info("Mock gRPC: Creating user: {}", request.getName());
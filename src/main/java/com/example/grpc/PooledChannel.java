@@ -0,0 +1,213 @@
+package com.example.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+
+/**
+ * A fixed pool of channels to one backend, each with its own HTTP/2 connection,
+ * used as a single channel.
+ *
+ * One connection caps in-flight calls at the server's max-concurrent-streams and
+ * puts all traffic on one TCP flow and one Netty event loop. The pool opens
+ * {@code connections} channels and starts every call on the one with the fewest
+ * outstanding calls, so a saturated or slow connection stops getting new streams
+ * until its calls drain. Ties are broken at random, and channels in transient
+ * failure are skipped while any other is usable.
+ *
+ * An optional affinity names the connection the calling thread should use, such
+ * as the one on its own event loop (see {@link SharedLoopChannels}); it wins while
+ * that connection is usable and below its stream limit.
+ */
+public class PooledChannel extends ManagedChannel {
+
+    private static final int STRIDE = 16; // Ints per counter: 64 bytes, so counters never share a cache line
+
+    private final ManagedChannel[] channels;
+    private final AtomicIntegerArray outstanding;
+    private final int maxStreamsPerConnection; // 0 when the server sets no limit
+    private final IntSupplier affinity; // Preferred connection of the calling thread, -1 for none
+    private final LongAdder saturatedCalls = new LongAdder();
+
+    /**
+     * @param channelFactory builds the channel of each connection, by index
+     * @param maxStreamsPerConnection the server's max-concurrent-streams, 0 for none;
+     *                                calls beyond it on every connection are counted as saturated
+     */
+    public PooledChannel(int connections, IntFunction<ManagedChannel> channelFactory, int maxStreamsPerConnection) {
+        this(connections, channelFactory, maxStreamsPerConnection, () -> -1);
+    }
+
+    /**
+     * @param affinity index of the connection the calling thread prefers, -1 for none
+     */
+    public PooledChannel(int connections, IntFunction<ManagedChannel> channelFactory, int maxStreamsPerConnection,
+                         IntSupplier affinity) {
+        if (connections < 1 || maxStreamsPerConnection < 0) {
+            throw new IllegalArgumentException("Channel pool needs connections >= 1 and max-streams-per-connection >= 0");
+        }
+        this.channels = new ManagedChannel[connections];
+        for (int i = 0; i < connections; i++) {
+            channels[i] = channelFactory.apply(i);
+            channels[i].getState(true); // Connect now rather than on the first call
+        }
+        this.outstanding = new AtomicIntegerArray(connections * STRIDE);
+        this.maxStreamsPerConnection = maxStreamsPerConnection;
+        this.affinity = affinity;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions) {
+        int index = leastOutstanding();
+        return new CountedCall<>(channels[index].newCall(method, callOptions), index * STRIDE);
+    }
+
+    /**
+     * Index of the usable channel with the fewest outstanding calls, scanning from a
+     * random start so ties are spread
+     */
+    private int leastOutstanding() {
+        int preferred = affinity.getAsInt();
+        if (preferred >= 0 && isUsable(preferred)
+                && (maxStreamsPerConnection == 0 || outstanding(preferred) < maxStreamsPerConnection)) {
+            return preferred;
+        }
+        int start = ThreadLocalRandom.current().nextInt(channels.length);
+        int best = -1;
+        int bestOutstanding = Integer.MAX_VALUE;
+        boolean bestUsable = false;
+        for (int i = 0; i < channels.length; i++) {
+            int index = (start + i) % channels.length;
+            int calls = outstanding.get(index * STRIDE);
+            boolean usable = isUsable(index);
+            if ((usable && !bestUsable) || (usable == bestUsable && calls < bestOutstanding)) {
+                best = index;
+                bestOutstanding = calls;
+                bestUsable = usable;
+            }
+        }
+        if (maxStreamsPerConnection > 0 && bestOutstanding >= maxStreamsPerConnection) {
+            // Every connection is full; the call waits in its transport for a free stream
+            saturatedCalls.increment();
+        }
+        return best;
+    }
+
+    private boolean isUsable(int index) {
+        ConnectivityState state = channels[index].getState(false);
+        return state != ConnectivityState.TRANSIENT_FAILURE && state != ConnectivityState.SHUTDOWN;
+    }
+
+    public int connections() {
+        return channels.length;
+    }
+
+    /**
+     * Calls started and not yet closed on the connection at {@code index}
+     */
+    public int outstanding(int index) {
+        return outstanding.get(index * STRIDE);
+    }
+
+    /**
+     * Calls started while every connection was at max-streams-per-connection
+     */
+    public long saturatedCalls() {
+        return saturatedCalls.sum();
+    }
+
+    @Override
+    public String authority() {
+        return channels[0].authority();
+    }
+
+    @Override
+    public PooledChannel shutdown() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public PooledChannel shutdownNow() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the call against its connection from start until it closes
+     */
+    private final class CountedCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+        private final int counter;
+
+        CountedCall(ClientCall<ReqT, RespT> delegate, int counter) {
+            super(delegate);
+            this.counter = counter;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+            outstanding.incrementAndGet(counter);
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        outstanding.decrementAndGet(counter);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                outstanding.decrementAndGet(counter);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.grpc;
+
+import io.grpc.netty.NettyChannelBuilder;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import reactor.netty.resources.LoopResources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the user service client on the WebFlux server's own event loops.
+ *
+ * grpc-netty-shaded brings its own event loops, so a call started while handling
+ * an HTTP request is written on a gRPC loop and its response is delivered on a
+ * gRPC executor before the reply goes back to the HTTP loop. Here the client uses
+ * unshaded Netty with the server's {@link LoopResources}: there is one connection
+ * per server event loop, a call started on a loop goes out on that loop's
+ * connection, and with a direct executor its response is handled on the loop that
+ * received the request. The loops use epoll when the native transport is on the
+ * classpath, as for the server.
+ *
+ * Response callbacks run on the event loop, so nothing downstream of a call may
+ * block.
+ */
+public final class SharedLoopChannels {
+
+    private SharedLoopChannels() {
+    }
+
+    /**
+     * @param loops the loop resources of the HTTP server
+     * @param maxStreamsPerConnection the server's max-concurrent-streams, 0 for none;
+     *                                a call finding its own loop's connection full
+     *                                goes to the least loaded one instead
+     */
+    public static PooledChannel create(LoopResources loops, String host, int port, int maxStreamsPerConnection) {
+        EventLoopGroup group = loops.onServer(true);
+        Class<? extends Channel> channelType = loops.onChannelClass(SocketChannel.class, group);
+        List<EventLoop> eventLoops = new ArrayList<>();
+        for (EventExecutor executor : group) {
+            eventLoops.add((EventLoop) executor);
+        }
+        EventLoop[] byConnection = eventLoops.toArray(new EventLoop[0]);
+
+        return new PooledChannel(byConnection.length,
+                i -> NettyChannelBuilder.forAddress(host, port)
+                        .eventLoopGroup(byConnection[i])
+                        .channelType(channelType)
+                        .directExecutor()
+                        .usePlaintext()
+                        .build(),
+                maxStreamsPerConnection,
+                () -> currentLoop(byConnection));
+    }
+
+    private static int currentLoop(EventLoop[] byConnection) {
+        for (int i = 0; i < byConnection.length; i++) {
+            if (byConnection[i].inEventLoop()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,11 +1,26 @@
 package com.example.metrics;
 
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.concurrency.SingleFlight;
+import com.example.grpc.PooledChannel;
+import com.example.ratelimit.GossipRateLimiter;
+import com.example.ratelimit.HeavyHitterTracker;
+import com.example.ratelimit.LocalBucketStore;
+import com.example.ratelimit.RedisCircuitBreaker;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -18,11 +33,19 @@ public class CustomMetrics {
     private final Counter userDeletedCounter;
     private final Counter grpcErrorCounter;
     private final Counter rateLimitExceededCounter;
+    private final Counter rateLimitDenialCacheHitCounter;
     private final Timer grpcRequestTimer;
     private final Timer httpRequestTimer;
+    private final DistributionSummary rateLimitBatchSize;
+    private final DistributionSummary userBatchSize;
+    private final MultiGauge hotKeyRequests;
+    private final MultiGauge hotKeyDenialRatio;
     private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final MeterRegistry meterRegistry;
     
     public CustomMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        
         // Counters
         this.userCreatedCounter = Counter.builder("users.created.total")
                 .description("Total number of users created")
@@ -41,6 +64,10 @@ public class CustomMetrics {
                 .description("Total number of rate limit exceeded events")
                 .register(meterRegistry);
         
+        this.rateLimitDenialCacheHitCounter = Counter.builder("rate.limit.denial.cache.hits.total")
+                .description("Rate limit checks rejected from the local denial cache without asking Redis")
+                .register(meterRegistry);
+        
         // Timers
         this.grpcRequestTimer = Timer.builder("grpc.request.duration")
                 .description("gRPC request duration")
@@ -51,10 +78,28 @@ public class CustomMetrics {
                 .description("HTTP gateway request duration")
                 .register(meterRegistry);
         
+        // Distribution summaries
+        this.rateLimitBatchSize = DistributionSummary.builder("rate.limit.redis.batch.size")
+                .description("Number of rate limit checks sent to Redis in one script call")
+                .register(meterRegistry);
+        
+        this.userBatchSize = DistributionSummary.builder("grpc.client.batch.size")
+                .description("Number of user lookups sent in one BatchGetUsers call")
+                .tag("service", "user-service")
+                .register(meterRegistry);
+        
         // Gauges
         Gauge.builder("gateway.active.connections", this, metrics -> metrics.activeConnections.doubleValue())
                 .description("Number of active connections")
                 .register(meterRegistry);
+        
+        this.hotKeyRequests = MultiGauge.builder("rate.limit.hot.key.requests")
+                .description("Estimated recent rate limit checks of the hottest keys")
+                .register(meterRegistry);
+        
+        this.hotKeyDenialRatio = MultiGauge.builder("rate.limit.hot.key.denial.ratio")
+                .description("Share of the hottest keys' checks that were denied")
+                .register(meterRegistry);
     }
     
     public void incrementUserCreated() {
@@ -96,4 +141,160 @@ public class CustomMetrics {
     public void incrementRateLimitExceeded() {
         rateLimitExceededCounter.increment();
     }
+    
+    public void incrementRateLimitDenialCacheHit() {
+        rateLimitDenialCacheHitCounter.increment();
+    }
+    
+    public void recordRateLimitBatch(int size) {
+        rateLimitBatchSize.record(size);
+    }
+    
+    public void recordUserBatch(int size) {
+        userBatchSize.record(size);
+    }
+    
+    /**
+     * Register size and eviction metrics for a local rate limit store
+     */
+    public void bindRateLimitStore(String name, LocalBucketStore<?, ?> store) {
+        Gauge.builder("rate.limit.store.size", store, LocalBucketStore::size)
+                .description("Number of keys held in the local rate limit store")
+                .tag("store", name)
+                .register(meterRegistry);
+        
+        Gauge.builder("rate.limit.store.capacity", store, LocalBucketStore::maxEntries)
+                .description("Maximum number of keys the local rate limit store may hold")
+                .tag("store", name)
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.store.evictions.total", store, LocalBucketStore::idleEvictions)
+                .description("Local rate limit store evictions")
+                .tag("store", name)
+                .tag("cause", "idle")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.store.evictions.total", store, LocalBucketStore::capacityEvictions)
+                .description("Local rate limit store evictions")
+                .tag("store", name)
+                .tag("cause", "capacity")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Replace the exported hot keys; keys that left the top list are removed
+     */
+    public void updateHotKeys(List<HeavyHitterTracker.HotKey> hotKeys) {
+        List<MultiGauge.Row<?>> requests = new ArrayList<>(hotKeys.size());
+        List<MultiGauge.Row<?>> denialRatios = new ArrayList<>(hotKeys.size());
+        for (HeavyHitterTracker.HotKey hotKey : hotKeys) {
+            Tags tags = Tags.of("client", hotKey.client(), "endpoint", hotKey.endpoint());
+            requests.add(MultiGauge.Row.of(tags, hotKey.requests()));
+            denialRatios.add(MultiGauge.Row.of(tags, hotKey.denialRatio()));
+        }
+        hotKeyRequests.register(requests, true);
+        hotKeyDenialRatio.register(denialRatios, true);
+    }
+    
+    /**
+     * Register state and failure metrics for the Redis rate limit circuit breaker
+     */
+    public void bindRedisCircuitBreaker(RedisCircuitBreaker breaker) {
+        Gauge.builder("rate.limit.redis.circuit.open", breaker, b -> b.isOpen() ? 1 : 0)
+                .description("1 while rate limiting uses local fallback buckets instead of Redis")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.redis.calls.failed.total", breaker, RedisCircuitBreaker::failedCalls)
+                .description("Redis rate limit calls that failed, timed out or were slow")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.redis.circuit.trips.total", breaker, RedisCircuitBreaker::trips)
+                .description("Times the Redis rate limit circuit breaker opened")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Register packet and peer metrics for gossiped rate limits
+     */
+    public void bindGossip(GossipRateLimiter gossip) {
+        FunctionCounter.builder("rate.limit.gossip.packets.total", gossip, GossipRateLimiter::packetsSent)
+                .description("Rate limit gossip packets exchanged with peers")
+                .tag("direction", "sent")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.gossip.packets.total", gossip, GossipRateLimiter::packetsReceived)
+                .description("Rate limit gossip packets exchanged with peers")
+                .tag("direction", "received")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("rate.limit.gossip.packets.rejected.total", gossip, GossipRateLimiter::packetsRejected)
+                .description("Rate limit gossip packets dropped for an unknown sender or a bad HMAC")
+                .register(meterRegistry);
+        
+        Gauge.builder("rate.limit.gossip.peers", gossip, GossipRateLimiter::activePeers)
+                .description("Peers heard from within the gossip peer timeout")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Register limit, in-flight and shed call metrics for the adaptive gRPC concurrency limit
+     */
+    public void bindConcurrencyLimiter(AdaptiveConcurrencyLimiter limiter) {
+        Gauge.builder("grpc.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::currentLimit)
+                .description("Current adaptive limit on in-flight gRPC calls")
+                .tag("service", "user-service")
+                .register(meterRegistry);
+        
+        Gauge.builder("grpc.concurrency.in.flight", limiter, AdaptiveConcurrencyLimiter::inFlight)
+                .description("gRPC calls currently in flight")
+                .tag("service", "user-service")
+                .register(meterRegistry);
+        
+        FunctionCounter.builder("grpc.concurrency.rejected.total", limiter, AdaptiveConcurrencyLimiter::rejectedCalls)
+                .description("gRPC calls shed because the concurrency limit was reached")
+                .tag("service", "user-service")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Register the coalesced call counter of a single-flight layer in front of the user service
+     */
+    public void bindSingleFlight(String operation, SingleFlight<?, ?> singleFlight) {
+        FunctionCounter.builder("grpc.client.coalesced.total", singleFlight, SingleFlight::coalescedCalls)
+                .description("gRPC calls answered by joining an identical call already in flight")
+                .tag("service", "user-service")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Register hit, miss, eviction and load time metrics for the user cache, plus its hit ratio
+     */
+    public void bindUserCache(AsyncCache<?, ?> cache) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "users");
+        
+        Gauge.builder("cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+                .description("Share of cache lookups answered without a load")
+                .tag("cache", "users")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Register per-connection in-flight and saturation metrics for a pooled gRPC channel
+     */
+    public void bindChannelPool(PooledChannel pool) {
+        for (int i = 0; i < pool.connections(); i++) {
+            int connection = i;
+            Gauge.builder("grpc.client.pool.outstanding", pool, p -> p.outstanding(connection))
+                    .description("gRPC calls in flight on one pooled connection")
+                    .tag("service", "user-service")
+                    .tag("connection", String.valueOf(connection))
+                    .register(meterRegistry);
+        }
+        
+        FunctionCounter.builder("grpc.client.pool.saturated.total", pool, PooledChannel::saturatedCalls)
+                .description("gRPC calls started while every pooled connection was at its stream limit")
+                .tag("service", "user-service")
+                .register(meterRegistry);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for in-memory rate limiters whose per-key state fits in a single
+ * {@code long}. Each decision is one compare-and-set loop on that state, and
+ * allowed results are pre-built per remaining count so the allowed path does
+ * not allocate.
+ *
+ * A zero state always means "key never used", which lets the store create
+ * states without knowing the limiter.
+ */
+public abstract class AtomicRateLimiter {
+
+    private static final int MAX_CACHED_RESULTS = 4096;
+
+    // Shifts nanoTime onto the wall clock at startup: values are always positive, and
+    // states saved by an earlier process (see BucketSnapshot) keep their meaning
+    private static final long CLOCK_ORIGIN =
+        System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+    private final Mono<RateLimitService.RateLimitResult>[] allowedResults;
+
+    @SuppressWarnings("unchecked")
+    protected AtomicRateLimiter(int capacity) {
+        int cached = Math.min(capacity, MAX_CACHED_RESULTS);
+        this.allowedResults = new Mono[cached + 1];
+        for (int remaining = 0; remaining <= cached; remaining++) {
+            allowedResults[remaining] = Mono.just(
+                new RateLimitService.RateLimitResult(true, remaining, remaining, Duration.ZERO));
+        }
+    }
+
+    /**
+     * Monotonic clock for limiter states: nanoseconds since the epoch as of process
+     * start, then advancing with {@link System#nanoTime()}. Always positive.
+     */
+    public static long monotonicNanos() {
+        return System.nanoTime() - CLOCK_ORIGIN;
+    }
+
+    /**
+     * Try to take one permit from the given state.
+     *
+     * @param nowNanos current time from {@link #monotonicNanos()}
+     */
+    public abstract Mono<RateLimitService.RateLimitResult> tryAcquire(AtomicLong state, long nowNanos);
+
+    /**
+     * Time after which an untouched state is equivalent to a fresh one.
+     */
+    public abstract long idleNanos();
+
+    protected Mono<RateLimitService.RateLimitResult> allowed(long remaining) {
+        if (remaining < allowedResults.length) {
+            return allowedResults[(int) remaining];
+        }
+        return Mono.just(new RateLimitService.RateLimitResult(true, remaining, remaining, Duration.ZERO));
+    }
+
+    protected static Mono<RateLimitService.RateLimitResult> denied(long retryAfterNanos) {
+        return Mono.just(new RateLimitService.RateLimitResult(
+            false, 0, 0, Duration.ofNanos(Math.max(retryAfterNanos, 1))));
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.ratelimit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Compact binary snapshot of local rate limit states, memory-mapped and read
+ * lazily by the next process.
+ *
+ * The file is an open-addressing hash table of fixed-size slots keyed by
+ * {@link ClientKey}, followed by the client names. Opening a snapshot only maps
+ * the file and checks its header, so startup cost does not grow with the number
+ * of keys; a key's state is looked up the first time the key is used again, and
+ * only the pages touched are read. Limiter states are times on the
+ * {@link AtomicRateLimiter#monotonicNanos()} clock, which is anchored to the wall
+ * clock, so they keep their meaning across processes. Each slot carries the time
+ * at which its state is back to a fresh one and is ignored from then on.
+ *
+ * Layout, big-endian. Header: magic, version (ints), written-at, last expiry
+ * (longs), slot count, entry count, names length, reserved (ints). Slot: kind
+ * (byte, 0 when empty), strategy ordinal (byte), endpoint id (short), name offset
+ * (int, -1 for addresses), address high, address low, state, expires-at (longs).
+ * Names: unsigned short length, then UTF-8 bytes.
+ */
+public final class BucketSnapshot {
+
+    static final byte TOKEN_BUCKET = 1; // State: available tokens at write time
+    static final byte ATOMIC = 2; // State: AtomicRateLimiter state
+    static final long NOT_FOUND = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x524C534E; // "RLSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int SLOT_BYTES = 40;
+    private static final int MAX_SLOTS = 1 << 25; // Keeps the whole file within one mapping
+
+    private final ByteBuffer buffer;
+    private final long writtenAt;
+    private final long lastExpiry;
+    private final int mask;
+    private final int entryCount;
+    private final int namesStart;
+    private final int namesLength;
+    private volatile boolean valid = true; // Cleared when a lookup finds no empty slot or a corrupt one
+
+    private BucketSnapshot(ByteBuffer buffer, long writtenAt, long lastExpiry, int slotCount, int entryCount,
+                           int namesLength) {
+        this.buffer = buffer;
+        this.writtenAt = writtenAt;
+        this.lastExpiry = lastExpiry;
+        this.mask = slotCount - 1;
+        this.entryCount = entryCount;
+        this.namesStart = HEADER_BYTES + slotCount * SLOT_BYTES;
+        this.namesLength = namesLength;
+    }
+
+    /**
+     * Map the snapshot at {@code path}. Returns null when there is none or none of its
+     * states is still live; throws when the file is not a valid snapshot.
+     */
+    static BucketSnapshot open(Path path, long nowNanos) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected snapshot size " + size);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a version " + VERSION + " rate limit snapshot");
+            }
+            long writtenAt = buffer.getLong(8);
+            long lastExpiry = buffer.getLong(16);
+            int slotCount = buffer.getInt(24);
+            int entryCount = buffer.getInt(28);
+            int namesLength = buffer.getInt(32);
+            if (Integer.bitCount(slotCount) != 1 || slotCount > MAX_SLOTS || entryCount >= slotCount
+                    || size != HEADER_BYTES + (long) slotCount * SLOT_BYTES + namesLength) {
+                throw new IOException("Corrupt snapshot header");
+            }
+            if (writtenAt > nowNanos) {
+                // States from the future would deny keys for too long
+                throw new IOException("Snapshot written after the current time; the clock moved back");
+            }
+            if (lastExpiry <= nowNanos) {
+                return null;
+            }
+            return new BucketSnapshot(buffer, writtenAt, lastExpiry, slotCount, entryCount, namesLength);
+        }
+    }
+
+    long writtenAt() {
+        return writtenAt;
+    }
+
+    int entryCount() {
+        return entryCount;
+    }
+
+    boolean isExpired(long nowNanos) {
+        return lastExpiry <= nowNanos;
+    }
+
+    /**
+     * False once a lookup has probed every slot without reaching an empty one, or has
+     * met a slot whose fields are out of range. The writer always leaves one slot empty
+     * and writes only valid fields, so the file is corrupt and nothing in it is found.
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * The saved state of the key, or {@link #NOT_FOUND} when there is none, it was
+     * saved for another strategy, it has expired, or the snapshot is not valid
+     */
+    long find(ClientKey key, byte kind, RateLimitConfig.Strategy strategy, long nowNanos) {
+        if (lastExpiry <= nowNanos || !valid) {
+            return NOT_FOUND;
+        }
+        int slot = index(key, mask);
+        for (int probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            byte slotKind = buffer.get(base);
+            if (slotKind == 0) {
+                return NOT_FOUND;
+            }
+            if (!intact(base)) {
+                valid = false;
+                return NOT_FOUND;
+            }
+            if (slotKind == kind && matches(base, key)) {
+                if (buffer.get(base + 1) != strategy.ordinal() || buffer.getLong(base + 32) <= nowNanos) {
+                    return NOT_FOUND;
+                }
+                return buffer.getLong(base + 24);
+            }
+        }
+        valid = false;
+        return NOT_FOUND;
+    }
+
+    /**
+     * Visit every state that has not expired yet. Stops at the first corrupt slot,
+     * leaving the snapshot not valid; the states visited until then are sound.
+     */
+    void forEach(long nowNanos, SlotVisitor visitor) {
+        for (int slot = 0; slot <= mask && valid; slot++) {
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            byte kind = buffer.get(base);
+            long expiresAt = buffer.getLong(base + 32);
+            if (kind == 0 || expiresAt <= nowNanos) {
+                continue;
+            }
+            if (!intact(base)) {
+                valid = false;
+                return;
+            }
+            int endpointId = buffer.getShort(base + 2);
+            int nameOffset = buffer.getInt(base + 4);
+            ClientKey key = nameOffset < 0
+                ? ClientKey.ofAddress(endpointId, buffer.getLong(base + 8), buffer.getLong(base + 16))
+                : ClientKey.ofName(endpointId, readName(nameOffset));
+            visitor.visit(key, kind, RateLimitConfig.Strategy.values()[buffer.get(base + 1)],
+                buffer.getLong(base + 24), expiresAt);
+        }
+    }
+
+    /**
+     * Whether the kind, strategy, endpoint id and name of a used slot are in range, so
+     * reading the slot cannot fail
+     */
+    private boolean intact(int base) {
+        byte kind = buffer.get(base);
+        int strategy = buffer.get(base + 1);
+        int endpointId = buffer.getShort(base + 2);
+        int nameOffset = buffer.getInt(base + 4);
+        if ((kind != TOKEN_BUCKET && kind != ATOMIC)
+                || strategy < 0 || strategy >= RateLimitConfig.Strategy.values().length
+                || endpointId < 0 || endpointId >= RouteTable.ENDPOINT_COUNT) {
+            return false;
+        }
+        if (nameOffset == -1) {
+            return true;
+        }
+        if (nameOffset < 0 || nameOffset > namesLength - 2) {
+            return false;
+        }
+        int length = buffer.getShort(namesStart + nameOffset) & 0xFFFF;
+        return length <= namesLength - 2 - nameOffset;
+    }
+
+    private boolean matches(int base, ClientKey key) {
+        if (buffer.getShort(base + 2) != key.endpointId()) {
+            return false;
+        }
+        int nameOffset = buffer.getInt(base + 4);
+        if (key.isAddress()) {
+            return nameOffset < 0 && buffer.getLong(base + 8) == key.high() && buffer.getLong(base + 16) == key.low();
+        }
+        return nameOffset >= 0 && readName(nameOffset).equals(key.name());
+    }
+
+    private String readName(int offset) {
+        int position = namesStart + offset;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int index(ClientKey key, int mask) {
+        // Only stable hashes here: String.hashCode is specified, so both processes agree
+        return (int) (((key.hashCode() & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    @FunctionalInterface
+    interface SlotVisitor {
+        void visit(ClientKey key, byte kind, RateLimitConfig.Strategy strategy, long state, long expiresAt);
+    }
+
+    /**
+     * Writes a snapshot to a temporary file next to the target and moves it into place
+     * on {@link #commit}, so readers never see a partial file. Not thread-safe.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final FileChannel channel;
+        private final MappedByteBuffer table;
+        private final int slotCount;
+        private final int maxEntries;
+        private byte[] names = new byte[4096];
+        private int namesLength;
+        private int entries;
+        private long lastExpiry = Long.MIN_VALUE;
+        private boolean committed;
+
+        /**
+         * @param expectedEntries sizes the table; entries beyond its load limit are dropped
+         */
+        Writer(Path target, int expectedEntries) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // Room for keys created while the stores are walked
+            long wanted = Math.max(16, expectedEntries + (long) expectedEntries / 2);
+            this.slotCount = (int) Math.min(MAX_SLOTS, Long.highestOneBit(wanted - 1) << 1);
+            this.maxEntries = slotCount - slotCount / 8;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCount * SLOT_BYTES);
+        }
+
+        /**
+         * Add a state; returns false when the table is full or the name is too long
+         */
+        boolean add(ClientKey key, byte kind, RateLimitConfig.Strategy strategy, long state, long expiresAt) {
+            if (entries >= maxEntries) {
+                return false;
+            }
+            int nameOffset = -1;
+            if (!key.isAddress()) {
+                nameOffset = appendName(key.name());
+                if (nameOffset < 0) {
+                    return false;
+                }
+            }
+            int mask = slotCount - 1;
+            int slot = index(key, mask);
+            while (table.get(HEADER_BYTES + slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            int base = HEADER_BYTES + slot * SLOT_BYTES;
+            table.put(base, kind);
+            table.put(base + 1, (byte) strategy.ordinal());
+            table.putShort(base + 2, (short) key.endpointId());
+            table.putInt(base + 4, nameOffset);
+            table.putLong(base + 8, key.high());
+            table.putLong(base + 16, key.low());
+            table.putLong(base + 24, state);
+            table.putLong(base + 32, expiresAt);
+            entries++;
+            lastExpiry = Math.max(lastExpiry, expiresAt);
+            return true;
+        }
+
+        int entries() {
+            return entries;
+        }
+
+        void commit(long writtenAt) throws IOException {
+            table.putInt(0, MAGIC);
+            table.putInt(4, VERSION);
+            table.putLong(8, writtenAt);
+            table.putLong(16, entries == 0 ? writtenAt : lastExpiry);
+            table.putInt(24, slotCount);
+            table.putInt(28, entries);
+            table.putInt(32, namesLength);
+            table.force();
+            ByteBuffer namesBuffer = ByteBuffer.wrap(names, 0, namesLength);
+            long position = HEADER_BYTES + (long) slotCount * SLOT_BYTES;
+            while (namesBuffer.hasRemaining()) {
+                position += channel.write(namesBuffer, position);
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private int appendName(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF || namesLength + 2L + bytes.length
+                    > Integer.MAX_VALUE - HEADER_BYTES - (long) slotCount * SLOT_BYTES) {
+                return -1;
+            }
+            if (namesLength + 2 + bytes.length > names.length) {
+                names = Arrays.copyOf(names, (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(2L * names.length, namesLength + 2L + bytes.length)));
+            }
+            int offset = namesLength;
+            names[offset] = (byte) (bytes.length >>> 8);
+            names[offset + 1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, names, offset + 2, bytes.length);
+            namesLength += 2 + bytes.length;
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.ratelimit;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Rate limit bucket key: an endpoint id plus the client identity.
+ *
+ * Client addresses are held as a 128-bit IPv6 value in two longs, with IPv4
+ * addresses in their IPv4-mapped form ({@code ::ffff:a.b.c.d}), so the key is
+ * compared and hashed without strings. Clients that are not an address, such
+ * as user ids, fall back to a name.
+ */
+public final class ClientKey {
+
+    private static final long IPV4_MAPPED_PREFIX = 0xFFFFL << 32;
+
+    private final int endpointId;
+    private final long high;
+    private final long low;
+    private final String name; // Null for addresses
+
+    private ClientKey(int endpointId, long high, long low, String name) {
+        this.endpointId = endpointId;
+        this.high = high;
+        this.low = low;
+        this.name = name;
+    }
+
+    public static ClientKey ofAddress(int endpointId, long high, long low) {
+        return new ClientKey(endpointId, high, low, null);
+    }
+
+    public static ClientKey ofIpv4(int endpointId, int address) {
+        return new ClientKey(endpointId, 0, IPV4_MAPPED_PREFIX | (address & 0xFFFFFFFFL), null);
+    }
+
+    public static ClientKey ofName(int endpointId, String name) {
+        return new ClientKey(endpointId, 0, 0, name);
+    }
+
+    public static ClientKey of(int endpointId, InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // Inet4Address hashes to its address, which avoids copying the bytes
+            return ofIpv4(endpointId, address.hashCode());
+        }
+        byte[] bytes = address.getAddress();
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return ofAddress(endpointId, high, low);
+    }
+
+    /**
+     * Key for a client string: an address when it parses as one, otherwise a name
+     */
+    public static ClientKey of(int endpointId, String client) {
+        ClientKey key = parse(endpointId, client, 0, client.length());
+        return key != null ? key : ofName(endpointId, client);
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 address from {@code text[start, end)} without allocating
+     * anything but the key. Accepts a bracketed IPv6 address, a trailing port and an
+     * IPv6 zone, which are ignored. Returns null if the text is not an address.
+     */
+    public static ClientKey parse(int endpointId, CharSequence text, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        if (text.charAt(start) == '[') {
+            int close = indexOf(text, ']', start, end);
+            if (close < 0) {
+                return null;
+            }
+            return parseIpv6(endpointId, text, start + 1, close);
+        }
+        int firstColon = indexOf(text, ':', start, end);
+        if (firstColon < 0 || indexOf(text, ':', firstColon + 1, end) < 0) {
+            // IPv4, possibly with a port
+            long address = parseIpv4(text, start, firstColon < 0 ? end : firstColon);
+            return address < 0 ? null : ofIpv4(endpointId, (int) address);
+        }
+        return parseIpv6(endpointId, text, start, end);
+    }
+
+    private static ClientKey parseIpv6(int endpointId, CharSequence text, int start, int end) {
+        int zone = indexOf(text, '%', start, end);
+        if (zone >= 0) {
+            end = zone;
+        }
+
+        // Groups before "::" go to head, groups after it to tail; each is a 128-bit shift register
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+        int pos = start;
+
+        if (end - start >= 2 && text.charAt(start) == ':' && text.charAt(start + 1) == ':') {
+            compressed = true;
+            pos += 2;
+        }
+
+        while (pos < end) {
+            int groupEnd = pos;
+            long value = 0;
+            while (groupEnd < end && groupEnd - pos < 4) {
+                int digit = Character.digit(text.charAt(groupEnd), 16);
+                if (digit < 0) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                groupEnd++;
+            }
+
+            int bits = 16;
+            if (groupEnd < end && text.charAt(groupEnd) == '.') {
+                // Embedded IPv4 in the last two groups
+                value = parseIpv4(text, pos, end);
+                if (value < 0) {
+                    return null;
+                }
+                bits = 32;
+                groupEnd = end;
+            } else if (groupEnd == pos) {
+                return null;
+            }
+
+            if (16 * (headGroups + tailGroups) + bits > 128) {
+                return null;
+            }
+            if (compressed) {
+                tailHigh = (tailHigh << bits) | (tailLow >>> (64 - bits));
+                tailLow = (tailLow << bits) | value;
+                tailGroups += bits / 16;
+            } else {
+                headHigh = (headHigh << bits) | (headLow >>> (64 - bits));
+                headLow = (headLow << bits) | value;
+                headGroups += bits / 16;
+            }
+
+            if (groupEnd == end) {
+                break;
+            }
+            if (text.charAt(groupEnd) != ':') {
+                return null;
+            }
+            pos = groupEnd + 1;
+            if (pos < end && text.charAt(pos) == ':') {
+                if (compressed) {
+                    return null; // Only one "::" is allowed
+                }
+                compressed = true;
+                pos++;
+            } else if (pos == end) {
+                return null;
+            }
+        }
+
+        if (compressed ? headGroups + tailGroups > 7 : headGroups != 8) {
+            return null;
+        }
+        // The head fills the top groups, the tail the bottom ones
+        for (int i = headGroups; i < 8; i++) {
+            headHigh = (headHigh << 16) | (headLow >>> 48);
+            headLow <<= 16;
+        }
+        return ofAddress(endpointId, headHigh | tailHigh, headLow | tailLow);
+    }
+
+    /**
+     * Parse dotted-quad IPv4 from {@code text[start, end)}, returning -1 if invalid
+     */
+    private static long parseIpv4(CharSequence text, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int pos = start;
+        while (pos < end) {
+            int value = 0;
+            int digits = 0;
+            while (pos < end && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+                value = value * 10 + (text.charAt(pos) - '0');
+                pos++;
+                if (++digits > 3) {
+                    return -1;
+                }
+            }
+            if (digits == 0 || value > 255 || ++octets > 4) {
+                return -1;
+            }
+            address = (address << 8) | value;
+            if (pos < end) {
+                if (text.charAt(pos) != '.' || pos + 1 == end) {
+                    return -1;
+                }
+                pos++;
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int endpointId() { return endpointId; }
+
+    /**
+     * The same client under another endpoint id
+     */
+    public ClientKey withEndpointId(int endpointId) {
+        return endpointId == this.endpointId ? this : new ClientKey(endpointId, high, low, name);
+    }
+
+    boolean isAddress() { return name == null; }
+
+    long high() { return high; }
+
+    long low() { return low; }
+
+    String name() { return name; }
+
+    /**
+     * Append the client part: dotted IPv4, uncompressed IPv6 as {@link InetAddress#getHostAddress()} prints it, or the name
+     */
+    public StringBuilder appendClient(StringBuilder builder) {
+        if (name != null) {
+            return builder.append(name);
+        }
+        if (high == 0 && (low >>> 32) == 0xFFFFL) {
+            return builder.append((low >>> 24) & 0xFF).append('.')
+                .append((low >>> 16) & 0xFF).append('.')
+                .append((low >>> 8) & 0xFF).append('.')
+                .append(low & 0xFF);
+        }
+        for (int i = 0; i < 8; i++) {
+            long half = i < 4 ? high : low;
+            if (i > 0) {
+                builder.append(':');
+            }
+            appendHex(builder, (int) (half >>> (48 - 16 * (i & 3))) & 0xFFFF);
+        }
+        return builder;
+    }
+
+    private static void appendHex(StringBuilder builder, int group) {
+        // Without leading zeros, like Integer.toHexString but with no intermediate string
+        int shift = 12;
+        while (shift > 0 && (group >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            builder.append(Character.forDigit((group >>> shift) & 0xF, 16));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClientKey other)) {
+            return false;
+        }
+        return endpointId == other.endpointId && high == other.high && low == other.low
+            && (name == null ? other.name == null : name.equals(other.name));
+    }
+
+    @Override
+    public int hashCode() {
+        long h = high * 0x9E3779B97F4A7C15L + low;
+        h = h * 0x9E3779B97F4A7C15L + endpointId;
+        int hash = (int) (h ^ (h >>> 32));
+        return name == null ? hash : hash ^ name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return appendClient(new StringBuilder()).toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Local cache of rate limit denials, each valid until its retry-after.
+ *
+ * A key that was just denied cannot pass before its retry-after, so retries in
+ * that window are rejected from here without asking the bucket owner again.
+ * Lookups never create entries, so allowed traffic does not grow the cache;
+ * an entry is dropped once it has been idle for its retry-after.
+ */
+public class DenialCache {
+
+    private final LocalBucketStore<ClientKey, AtomicLong> denials;
+    private final LongSupplier clock;
+
+    public DenialCache(LocalBucketStore<ClientKey, AtomicLong> denials) {
+        this(denials, AtomicRateLimiter::monotonicNanos);
+    }
+
+    DenialCache(LocalBucketStore<ClientKey, AtomicLong> denials, LongSupplier clock) {
+        this.denials = denials;
+        this.clock = clock;
+    }
+
+    /**
+     * Denial for a key still inside the retry-after of its last rejection, or null
+     */
+    public Mono<RateLimitService.RateLimitResult> get(ClientKey key) {
+        AtomicLong deniedUntil = denials.peek(key);
+        if (deniedUntil == null) {
+            return null;
+        }
+        long remaining = deniedUntil.get() - clock.getAsLong();
+        if (remaining <= 0) {
+            return null;
+        }
+        return Mono.just(new RateLimitService.RateLimitResult(false, 0, -1, Duration.ofNanos(remaining)));
+    }
+
+    public void record(ClientKey key, RateLimitService.RateLimitResult result) {
+        if (result.isAllowed() || result.getRetryAfter().isZero()) {
+            return;
+        }
+        long retryAfter = result.getRetryAfter().toNanos();
+        long until = clock.getAsLong() + retryAfter;
+        denials.get(key, retryAfter, k -> new AtomicLong()).accumulateAndGet(until, Math::max);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed window counter: at most {@code capacity} requests per
+ * {@code refillPeriod}-long window.
+ *
+ * The state packs the window index (upper 40 bits) and the count in that
+ * window (lower 24 bits) into one {@code long}.
+ */
+public class FixedWindowRateLimiter extends AtomicRateLimiter {
+
+    static final int COUNT_BITS = 24;
+    static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    static final long WINDOW_MASK = (1L << (64 - COUNT_BITS)) - 1;
+
+    private final long limit;
+    private final long windowNanos;
+
+    public FixedWindowRateLimiter(RateLimitConfig.EndpointConfig endpointConfig) {
+        super(endpointConfig.getCapacity());
+        if (endpointConfig.getCapacity() > COUNT_MASK) {
+            throw new IllegalArgumentException("Fixed window capacity must not exceed " + COUNT_MASK);
+        }
+        this.limit = endpointConfig.getCapacity();
+        this.windowNanos = endpointConfig.getRefillPeriod().toNanos();
+    }
+
+    @Override
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(AtomicLong state, long nowNanos) {
+        long window = nowNanos / windowNanos;
+        long windowBits = window & WINDOW_MASK;
+
+        for (;;) {
+            long current = state.get();
+            long count = (current >>> COUNT_BITS) == windowBits ? current & COUNT_MASK : 0;
+
+            if (count >= limit) {
+                return denied((window + 1) * windowNanos - nowNanos);
+            }
+            if (state.compareAndSet(current, (windowBits << COUNT_BITS) | (count + 1))) {
+                return allowed(limit - count - 1);
+            }
+        }
+    }
+
+    @Override
+    public long idleNanos() {
+        // A window-aligned state is stale once its window has ended
+        return windowNanos;
+    }
+}
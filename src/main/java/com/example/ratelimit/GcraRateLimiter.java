@@ -0,0 +1,98 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm (GCRA) for a single endpoint configuration.
+ *
+ * The whole per-key state is one "theoretical arrival time" (TAT), updated
+ * with a compare-and-set loop, so concurrent event-loop threads hitting the
+ * same key never block each other and never over-admit.
+ *
+ * Unlike the Bucket4j interval refill, GCRA refills continuously: one token
+ * becomes available every {@code refillPeriod / refillTokens}.
+ */
+public class GcraRateLimiter extends AtomicRateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+
+    public GcraRateLimiter(RateLimitConfig.EndpointConfig endpointConfig) {
+        super(endpointConfig.getCapacity());
+        this.emissionIntervalNanos = Math.max(
+            endpointConfig.getRefillPeriod().toNanos() / endpointConfig.getRefillTokens(), 1);
+        this.burstNanos = emissionIntervalNanos * endpointConfig.getCapacity();
+    }
+
+    @Override
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(AtomicLong state, long nowNanos) {
+        long remaining = acquire(state, nowNanos);
+        return remaining >= 0 ? allowed(remaining) : denied(-remaining);
+    }
+
+    /**
+     * Take one permit without building a result: the remaining permits, or
+     * {@code -retryAfterNanos} when denied
+     */
+    long acquire(AtomicLong state, long nowNanos) {
+        for (;;) {
+            long tat = state.get();
+            long newTat = Math.max(tat, nowNanos) + emissionIntervalNanos;
+            long backlog = newTat - nowNanos;
+
+            if (backlog > burstNanos) {
+                return -(backlog - burstNanos);
+            }
+            if (state.compareAndSet(tat, newTat)) {
+                return (burstNanos - backlog) / emissionIntervalNanos;
+            }
+        }
+    }
+
+    /**
+     * Take up to {@code permits} permits at once: the number taken, 0 when none is available
+     */
+    int acquireUpTo(AtomicLong state, long nowNanos, int permits) {
+        for (;;) {
+            long tat = state.get();
+            long start = Math.max(tat, nowNanos);
+            int taken = (int) Math.min(permits, (burstNanos - (start - nowNanos)) / emissionIntervalNanos);
+            if (taken <= 0) {
+                return 0;
+            }
+            if (state.compareAndSet(tat, start + taken * emissionIntervalNanos)) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Permits available now, without taking any
+     */
+    long remaining(AtomicLong state, long nowNanos) {
+        return Math.max((burstNanos - (Math.max(state.get(), nowNanos) - nowNanos)) / emissionIntervalNanos, 0);
+    }
+
+    long capacity() {
+        return burstNanos / emissionIntervalNanos;
+    }
+
+    /**
+     * Give back a permit taken by {@link #acquire}. If the state had drained below
+     * the current time before, it now sits at a full bucket, so nothing is lost.
+     */
+    void refund(AtomicLong state) {
+        refund(state, 1);
+    }
+
+    void refund(AtomicLong state, long permits) {
+        state.addAndGet(-permits * emissionIntervalNanos);
+    }
+
+    @Override
+    public long idleNanos() {
+        return burstNanos;
+    }
+}
@@ -0,0 +1,581 @@
+package com.example.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cluster-wide limits without Redis: gateway nodes gossip their per-key request
+ * counts over UDP, and each node enforces the limit locally against the sum.
+ *
+ * A node counts the requests it admits per key in fixed windows of the endpoint's
+ * refill period and estimates a sliding window from the current and previous ones,
+ * like {@link SlidingWindowRateLimiter}. The count of one node for one window only
+ * grows, so the cluster count is a G-counter: the sum over nodes of each node's
+ * count. Every {@code interval} a node sends its counts for the keys it changed
+ * since the last round, and again for {@code resend-rounds} more rounds against
+ * lost packets. Receivers keep the highest count seen per key, peer and window, so
+ * duplicated, reordered or repeated packets change nothing.
+ *
+ * Peers hear of requests up to one round late, so while a key crosses its limit
+ * the cluster can admit about (nodes - 1) x per-node rate x interval too many.
+ * Peers are told apart by node id, each taking one of {@code max-peers} slots.
+ *
+ * Counts from a peer can get any client denied across the cluster, so a packet is
+ * only merged when it comes from the address and port of a configured peer, as
+ * resolved in the last round, and carries a valid HMAC-SHA256 under the shared
+ * secret. Replayed packets pass both checks but, being G-counter states, add
+ * nothing a peer has not already reported.
+ *
+ * Packet layout, big-endian: magic (int), version (byte), node id (byte length,
+ * then UTF-8), entry count (short), entries, then the HMAC of everything before
+ * it (32 bytes). Entry: endpoint id (byte), kind (byte, 0 for an address, 1 for a
+ * name), address high and low (longs) or name (short length, then UTF-8), window
+ * index (long), current and previous counts (ints).
+ */
+public class GossipRateLimiter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GossipRateLimiter.class);
+
+    private static final int MAGIC = 0x524C4753; // "RLGS"
+    private static final byte VERSION = 2;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+    private static final int MAX_DATAGRAM_BYTES = 65_507;
+
+    private final String nodeId;
+    private final byte[] nodeIdBytes;
+    private final int headerBytes;
+    private final LocalBucketStore<ClientKey, Counter> counters;
+    private final IntFunction<RateLimitConfig.EndpointConfig> endpointConfigs;
+    private final int resendRounds;
+    private final int maxPacketBytes;
+    private final long peerTimeoutNanos;
+    private final DatagramChannel channel;
+    private final ConcurrentLinkedQueue<Counter> changed = new ConcurrentLinkedQueue<>();
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder packetsRejected = new LongAdder();
+    private final SecretKeySpec secret;
+    private volatile List<String> peers;
+    private volatile Set<InetSocketAddress> peerAddresses; // Resolved peers; packets from anywhere else are dropped
+    private final Disposable gossipTask;
+
+    // Peer slots by node id, guarded by slotIds
+    private final String[] slotIds;
+    private final long[] slotLastSeen;
+
+    /**
+     * @param endpointConfigs current limits by endpoint id, for keys first heard of from peers
+     */
+    public GossipRateLimiter(RateLimitConfig.GossipConfig gossipConfig, LocalBucketStore<ClientKey, Counter> counters,
+                             IntFunction<RateLimitConfig.EndpointConfig> endpointConfigs) throws IOException {
+        if (gossipConfig.getMaxPacketBytes() < 512 || gossipConfig.getMaxPacketBytes() > MAX_DATAGRAM_BYTES) {
+            throw new IllegalArgumentException("Gossip max-packet-bytes must be between 512 and " + MAX_DATAGRAM_BYTES);
+        }
+        if (gossipConfig.getMaxPeers() < 1 || gossipConfig.getResendRounds() < 0) {
+            throw new IllegalArgumentException("Gossip needs max-peers >= 1 and resend-rounds >= 0");
+        }
+        String sharedSecret = gossipConfig.getSharedSecret();
+        if (sharedSecret == null || sharedSecret.getBytes(StandardCharsets.UTF_8).length < 16) {
+            throw new IllegalArgumentException("Gossip needs a shared-secret of at least 16 bytes");
+        }
+        this.secret = new SecretKeySpec(sharedSecret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        gossipConfig.getPeers().forEach(GossipRateLimiter::parsePeer); // Fail on startup, not every round
+        this.counters = counters;
+        this.endpointConfigs = endpointConfigs;
+        this.resendRounds = gossipConfig.getResendRounds();
+        this.maxPacketBytes = gossipConfig.getMaxPacketBytes();
+        this.peerTimeoutNanos = gossipConfig.getPeerTimeout().toNanos();
+        this.peers = List.copyOf(gossipConfig.getPeers());
+        this.peerAddresses = resolve(peers);
+        this.slotIds = new String[gossipConfig.getMaxPeers()];
+        this.slotLastSeen = new long[gossipConfig.getMaxPeers()];
+
+        this.channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(gossipConfig.getBindAddress(), gossipConfig.getPort()));
+            String configuredId = gossipConfig.getNodeId();
+            this.nodeId = configuredId != null && !configuredId.isBlank()
+                ? configuredId : hostName() + ":" + localAddress().getPort();
+            this.nodeIdBytes = nodeId.getBytes(StandardCharsets.UTF_8);
+            if (nodeIdBytes.length > 255) {
+                throw new IllegalArgumentException("Gossip node id must be at most 255 bytes");
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.headerBytes = 4 + 1 + 1 + nodeIdBytes.length + 2;
+
+        Thread receiver = new Thread(this::receiveLoop, "rate-limit-gossip");
+        receiver.setDaemon(true);
+        receiver.start();
+        long interval = gossipConfig.getInterval().toNanos();
+        this.gossipTask = Schedulers.boundedElastic().schedulePeriodically(
+            this::gossip, interval, interval, TimeUnit.NANOSECONDS);
+        logger.info("Rate limit gossip node {} listening on {} with {} peers", nodeId, localAddress(), peers.size());
+    }
+
+    /**
+     * Take one request from the cluster-wide sliding window of the key
+     *
+     * @param nowNanos current time from {@link AtomicRateLimiter#monotonicNanos()}, which
+     *                 all nodes agree on as closely as their wall clocks do
+     */
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig,
+                                                             long nowNanos) {
+        long limit = endpointConfig.getCapacity();
+        long windowNanos = endpointConfig.getRefillPeriod().toNanos();
+        long window = nowNanos / windowNanos;
+        long elapsed = nowNanos - window * windowNanos;
+        Counter counter = counters.get(key, 2 * windowNanos, Counter::new);
+
+        long previous;
+        long count;
+        long estimate;
+        boolean queue = false;
+        synchronized (counter) {
+            counter.advance(window, windowNanos);
+            previous = counter.previous + counter.peersPrevious();
+            count = counter.current + counter.peersCurrent();
+            estimate = SlidingWindowRateLimiter.weighted(previous, windowNanos - elapsed, windowNanos) + count;
+            if (estimate < limit) {
+                counter.current++;
+                queue = counter.pendingRounds == 0;
+                counter.pendingRounds = 1 + resendRounds;
+            }
+        }
+        if (estimate >= limit) {
+            long retryAfter = SlidingWindowRateLimiter.retryAfter(limit, windowNanos, previous, count, elapsed);
+            return Mono.just(new RateLimitService.RateLimitResult(
+                false, 0, 0, Duration.ofNanos(Math.max(retryAfter, 1))));
+        }
+        if (queue) {
+            changed.add(counter);
+        }
+        long remaining = limit - estimate - 1;
+        return Mono.just(new RateLimitService.RateLimitResult(true, remaining, remaining, Duration.ZERO));
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    public long packetsSent() {
+        return packetsSent.sum();
+    }
+
+    public long packetsReceived() {
+        return packetsReceived.sum();
+    }
+
+    /**
+     * Packets dropped for coming from an unknown address or failing the HMAC check
+     */
+    public long packetsRejected() {
+        return packetsRejected.sum();
+    }
+
+    /**
+     * Peers heard from within the peer timeout
+     */
+    public int activePeers() {
+        long now = AtomicRateLimiter.monotonicNanos();
+        int active = 0;
+        synchronized (slotIds) {
+            for (int i = 0; i < slotIds.length; i++) {
+                if (slotIds[i] != null && now - slotLastSeen[i] <= peerTimeoutNanos) {
+                    active++;
+                }
+            }
+        }
+        return active;
+    }
+
+    InetSocketAddress localAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    void setPeers(List<String> peers) {
+        peers.forEach(GossipRateLimiter::parsePeer);
+        this.peers = List.copyOf(peers);
+        this.peerAddresses = resolve(this.peers);
+    }
+
+    /**
+     * Send the counts changed since the last round to every peer
+     */
+    void gossip() {
+        try {
+            // Resolved every round, so peers behind DNS names may move
+            Set<InetSocketAddress> targets = resolve(peers);
+            peerAddresses = targets;
+            long now = AtomicRateLimiter.monotonicNanos();
+            Mac mac = newMac();
+            ByteBuffer packet = ByteBuffer.allocate(maxPacketBytes);
+            startPacket(packet);
+            int entries = 0;
+            for (int pending = changed.size(); pending > 0; pending--) {
+                Counter counter = changed.poll();
+                if (counter == null) {
+                    break;
+                }
+                long window;
+                long current;
+                long previous;
+                boolean again;
+                synchronized (counter) {
+                    counter.advance(now / counter.windowNanos, counter.windowNanos);
+                    window = counter.window;
+                    current = counter.current;
+                    previous = counter.previous;
+                    again = --counter.pendingRounds > 0;
+                }
+                if (again) {
+                    changed.add(counter);
+                }
+
+                byte[] name = counter.key.isAddress() ? null : counter.key.name().getBytes(StandardCharsets.UTF_8);
+                int entryBytes = 2 + (name == null ? 16 : 2 + name.length) + 16;
+                if (entryBytes > maxPacketBytes - headerBytes - MAC_BYTES) {
+                    continue; // Names this long are only counted locally
+                }
+                if (packet.remaining() - MAC_BYTES < entryBytes) {
+                    send(packet, entries, targets, mac);
+                    startPacket(packet);
+                    entries = 0;
+                }
+                packet.put((byte) counter.key.endpointId());
+                if (name == null) {
+                    packet.put((byte) 0);
+                    packet.putLong(counter.key.high());
+                    packet.putLong(counter.key.low());
+                } else {
+                    packet.put((byte) 1);
+                    packet.putShort((short) name.length);
+                    packet.put(name);
+                }
+                packet.putLong(window);
+                packet.putInt((int) Math.min(current, Integer.MAX_VALUE));
+                packet.putInt((int) Math.min(previous, Integer.MAX_VALUE));
+                entries++;
+            }
+            if (entries > 0) {
+                send(packet, entries, targets, mac);
+            }
+        } catch (RuntimeException e) {
+            // Never let one bad round cancel the periodic task
+            logger.warn("Rate limit gossip round failed: {}", e.toString());
+        }
+    }
+
+    private void startPacket(ByteBuffer packet) {
+        packet.clear();
+        packet.putInt(MAGIC);
+        packet.put(VERSION);
+        packet.put((byte) nodeIdBytes.length);
+        packet.put(nodeIdBytes);
+        packet.putShort((short) 0); // Entry count, set when sent
+    }
+
+    private void send(ByteBuffer packet, int entries, Set<InetSocketAddress> targets, Mac mac) {
+        packet.putShort(headerBytes - 2, (short) entries);
+        mac.update(packet.array(), 0, packet.position());
+        packet.put(mac.doFinal());
+        packet.flip();
+        for (InetSocketAddress target : targets) {
+            try {
+                channel.send(packet.duplicate(), target);
+                packetsSent.increment();
+            } catch (IOException e) {
+                logger.debug("Failed to send rate limit gossip to {}: {}", target, e.toString());
+            }
+        }
+    }
+
+    private void receiveLoop() {
+        ByteBuffer packet = ByteBuffer.allocate(MAX_DATAGRAM_BYTES);
+        Mac mac = newMac();
+        while (channel.isOpen()) {
+            try {
+                packet.clear();
+                SocketAddress source = channel.receive(packet);
+                packet.flip();
+                if (!peerAddresses.contains(source) || !authentic(packet, mac)) {
+                    packetsRejected.increment();
+                    continue;
+                }
+                receive(packet, AtomicRateLimiter.monotonicNanos());
+                packetsReceived.increment();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Ignoring rate limit gossip packet: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Check the HMAC at the end of the packet and cut it off, leaving the payload
+     */
+    private static boolean authentic(ByteBuffer packet, Mac mac) {
+        int payload = packet.limit() - MAC_BYTES;
+        if (payload <= 0) {
+            return false;
+        }
+        mac.update(packet.array(), 0, payload);
+        byte[] expected = mac.doFinal();
+        byte[] actual = Arrays.copyOfRange(packet.array(), payload, packet.limit());
+        packet.limit(payload);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    private void receive(ByteBuffer packet, long nowNanos) {
+        if (packet.remaining() < 8 || packet.getInt() != MAGIC || packet.get() != VERSION) {
+            return;
+        }
+        byte[] id = new byte[packet.get() & 0xFF];
+        packet.get(id);
+        String peerId = new String(id, StandardCharsets.UTF_8);
+        if (peerId.equals(nodeId)) {
+            return; // This node is in its own peer list
+        }
+        int slot = slotOf(peerId, nowNanos);
+        if (slot < 0) {
+            logger.debug("No free gossip slot for rate limit peer {}", peerId);
+            return;
+        }
+
+        int entries = packet.getShort() & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int endpointId = packet.get() & 0xFF;
+            ClientKey key;
+            if (packet.get() == 0) {
+                long high = packet.getLong();
+                key = ClientKey.ofAddress(endpointId, high, packet.getLong());
+            } else {
+                byte[] name = new byte[packet.getShort() & 0xFFFF];
+                packet.get(name);
+                key = ClientKey.ofName(endpointId, new String(name, StandardCharsets.UTF_8));
+            }
+            long window = packet.getLong();
+            long current = packet.getInt() & 0xFFFFFFFFL;
+            long previous = packet.getInt() & 0xFFFFFFFFL;
+            if (endpointId >= RouteTable.ENDPOINT_COUNT) {
+                continue;
+            }
+
+            long windowNanos = endpointConfigs.apply(endpointId).getRefillPeriod().toNanos();
+            long nowWindow = nowNanos / windowNanos;
+            if (window < nowWindow - 1) {
+                continue; // Too old to count in any estimate
+            }
+            Counter counter = counters.get(key, 2 * windowNanos, Counter::new);
+            synchronized (counter) {
+                counter.advance(nowWindow, windowNanos);
+                counter.merge(slot, window, current, previous);
+            }
+        }
+    }
+
+    /**
+     * Slot of a peer, taking a free one, or that of a peer silent for longer than the
+     * peer timeout, on first contact. -1 when all slots are taken.
+     */
+    private int slotOf(String peerId, long nowNanos) {
+        synchronized (slotIds) {
+            int free = -1;
+            int expired = -1;
+            for (int i = 0; i < slotIds.length; i++) {
+                if (slotIds[i] == null) {
+                    if (free < 0) {
+                        free = i;
+                    }
+                } else if (slotIds[i].equals(peerId)) {
+                    slotLastSeen[i] = nowNanos;
+                    return i;
+                } else if (expired < 0 && nowNanos - slotLastSeen[i] > peerTimeoutNanos) {
+                    expired = i;
+                }
+            }
+            int slot = free >= 0 ? free : expired;
+            if (slot >= 0) {
+                if (slotIds[slot] != null) {
+                    logger.info("Rate limit gossip peer {} replaces silent peer {}", peerId, slotIds[slot]);
+                }
+                slotIds[slot] = peerId;
+                slotLastSeen[slot] = nowNanos;
+            }
+            return slot;
+        }
+    }
+
+    private static Set<InetSocketAddress> resolve(List<String> peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String peer : peers) {
+            InetSocketAddress address = parsePeer(peer);
+            if (!address.isUnresolved()) {
+                addresses.add(address);
+            }
+        }
+        return Set.copyOf(addresses);
+    }
+
+    private static InetSocketAddress parsePeer(String peer) {
+        int colon = peer.lastIndexOf(':');
+        if (colon <= 0 || colon == peer.length() - 1) {
+            throw new IllegalArgumentException("Gossip peer must be host:port: " + peer);
+        }
+        String host = peer.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return new InetSocketAddress(host, Integer.parseInt(peer.substring(colon + 1)));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        gossipTask.dispose();
+        channel.close();
+    }
+
+    /**
+     * Counts of one key: this node's for the current and previous window, and the
+     * highest each peer reported, by peer slot. Guarded by itself.
+     */
+    public static final class Counter {
+        final ClientKey key;
+        long windowNanos;
+        long window;
+        long current;
+        long previous;
+        long[] peerWindows; // Null until a peer reports the key
+        long[] peerCurrent;
+        long[] peerPrevious;
+        int pendingRounds; // Rounds left in which this node's counts are sent; queued while positive
+
+        Counter(ClientKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Move to the given window. Counts kept for another window length, after the
+         * limits were reloaded, do not compare and are dropped.
+         */
+        void advance(long window, long windowNanos) {
+            if (windowNanos != this.windowNanos) {
+                this.windowNanos = windowNanos;
+                this.window = window;
+                current = 0;
+                previous = 0;
+                if (peerWindows != null) {
+                    Arrays.fill(peerWindows, Long.MIN_VALUE);
+                }
+            } else if (window == this.window + 1) {
+                previous = current;
+                current = 0;
+                this.window = window;
+            } else if (window > this.window + 1) {
+                previous = 0;
+                current = 0;
+                this.window = window;
+            }
+        }
+
+        long peersCurrent() {
+            long sum = 0;
+            if (peerWindows != null) {
+                for (int i = 0; i < peerWindows.length; i++) {
+                    if (peerWindows[i] == window) {
+                        sum += peerCurrent[i];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        long peersPrevious() {
+            long sum = 0;
+            if (peerWindows != null) {
+                for (int i = 0; i < peerWindows.length; i++) {
+                    if (peerWindows[i] == window) {
+                        sum += peerPrevious[i];
+                    } else if (peerWindows[i] == window - 1) {
+                        sum += peerCurrent[i];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * G-counter merge of a peer's counts: per window, the highest count wins
+         */
+        void merge(int slot, long window, long current, long previous) {
+            if (peerWindows == null || peerWindows.length <= slot) {
+                int length = peerWindows == null ? 0 : peerWindows.length;
+                peerWindows = peerWindows == null ? new long[slot + 1] : Arrays.copyOf(peerWindows, slot + 1);
+                Arrays.fill(peerWindows, length, slot + 1, Long.MIN_VALUE);
+                peerCurrent = peerCurrent == null ? new long[slot + 1] : Arrays.copyOf(peerCurrent, slot + 1);
+                peerPrevious = peerPrevious == null ? new long[slot + 1] : Arrays.copyOf(peerPrevious, slot + 1);
+            }
+            long stored = peerWindows[slot];
+            if (window > stored) {
+                peerPrevious[slot] = window == stored + 1 ? Math.max(previous, peerCurrent[slot]) : previous;
+                peerCurrent[slot] = current;
+                peerWindows[slot] = window;
+            } else if (window == stored) {
+                peerCurrent[slot] = Math.max(peerCurrent[slot], current);
+                peerPrevious[slot] = Math.max(peerPrevious[slot], previous);
+            } else if (window == stored - 1) {
+                peerPrevious[slot] = Math.max(peerPrevious[slot], current);
+            }
+        }
+    }
+}
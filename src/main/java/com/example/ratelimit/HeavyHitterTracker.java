@@ -0,0 +1,297 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Streaming top-K of the busiest rate limit keys in fixed memory.
+ *
+ * Request counts are estimated with a Count-Min Sketch using conservative
+ * updates, and the keys with the highest estimates are kept in a small min-heap.
+ * Keys are split over lock-striped shards, each with its own sketch and heap; a
+ * key always lands in the same shard, so merging the shard heaps gives the
+ * global top-K. Counts are halved every decay interval, so the list follows
+ * current traffic rather than all-time totals. Denials are counted per heap
+ * entry from the moment the key became hot.
+ */
+@Component
+public class HeavyHitterTracker {
+
+    private final boolean enabled;
+    private final int stripeMask;
+    private final int width;
+    private final int depth;
+    private final long decayNanos;
+    private final LongSupplier clock;
+    private final Stripe[] stripes;
+    private final Disposable exportTask;
+
+    @Autowired
+    public HeavyHitterTracker(RateLimitConfig config, CustomMetrics customMetrics) {
+        this(config.getHotKeys(), AtomicRateLimiter::monotonicNanos, customMetrics);
+    }
+
+    HeavyHitterTracker(RateLimitConfig.HotKeysConfig hotKeysConfig, LongSupplier clock) {
+        this(hotKeysConfig, clock, null);
+    }
+
+    private HeavyHitterTracker(RateLimitConfig.HotKeysConfig hotKeysConfig, LongSupplier clock,
+                               CustomMetrics customMetrics) {
+        int stripeCount = hotKeysConfig.getStripes();
+        int sketchWidth = hotKeysConfig.getSketchWidth();
+        if (Integer.bitCount(stripeCount) != 1 || Integer.bitCount(sketchWidth) != 1) {
+            throw new IllegalArgumentException("Hot key stripes and sketch width must be powers of two");
+        }
+        if (hotKeysConfig.getSketchDepth() < 1) {
+            throw new IllegalArgumentException("Hot key sketch depth must be at least 1");
+        }
+        this.enabled = hotKeysConfig.isEnabled();
+        this.stripeMask = stripeCount - 1;
+        this.width = sketchWidth;
+        this.depth = hotKeysConfig.getSketchDepth();
+        this.decayNanos = hotKeysConfig.getDecayInterval().toNanos();
+        this.clock = clock;
+        this.stripes = new Stripe[enabled ? stripeCount : 0];
+        long now = clock.getAsLong();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(depth * width, hotKeysConfig.getTopK(), now + decayNanos);
+        }
+
+        if (enabled && customMetrics != null && hotKeysConfig.getExportedKeys() > 0) {
+            int exported = hotKeysConfig.getExportedKeys();
+            long interval = hotKeysConfig.getExportInterval().toNanos();
+            this.exportTask = Schedulers.parallel().schedulePeriodically(
+                () -> customMetrics.updateHotKeys(topKeys(exported)), interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            this.exportTask = null;
+        }
+    }
+
+    /**
+     * Count one rate limit check for the key
+     */
+    public void record(ClientKey key, boolean allowed) {
+        if (!enabled) {
+            return;
+        }
+        long hash = (key.hashCode() & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+        Stripe stripe = stripes[(int) (hash >>> 40) & stripeMask];
+        synchronized (stripe) {
+            decayIfDue(stripe);
+            long estimate = increment(stripe.sketch, hash);
+            stripe.offer(key, estimate, allowed);
+        }
+    }
+
+    /**
+     * The hottest keys, busiest first, at most {@code limit} of them
+     */
+    public List<HotKey> topKeys(int limit) {
+        List<Entry> candidates = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                decayIfDue(stripe);
+                for (int i = 0; i < stripe.size; i++) {
+                    candidates.add(stripe.heap[i].copy());
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong((Entry entry) -> entry.estimate).reversed());
+
+        List<HotKey> hotKeys = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            Entry entry = candidates.get(i);
+            hotKeys.add(new HotKey(
+                entry.key.appendClient(new StringBuilder()).toString(),
+                RouteTable.endpointName(entry.key.endpointId()),
+                entry.estimate,
+                entry.observed == 0 ? 0 : (double) entry.denied / entry.observed
+            ));
+        }
+        return hotKeys;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (exportTask != null) {
+            exportTask.dispose();
+        }
+    }
+
+    /**
+     * Conservative update: only the row counters at the current minimum are raised,
+     * which keeps over-estimates from collisions much lower than a plain increment
+     */
+    private long increment(int[] sketch, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1; // Odd, so every row probes a different cell
+        int mask = width - 1;
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, sketch[row * width + ((h1 + row * h2) & mask)]);
+        }
+        int updated = min + 1;
+        for (int row = 0; row < depth; row++) {
+            int cell = row * width + ((h1 + row * h2) & mask);
+            if (sketch[cell] < updated) {
+                sketch[cell] = updated;
+            }
+        }
+        return updated;
+    }
+
+    private void decayIfDue(Stripe stripe) {
+        long now = clock.getAsLong();
+        if (now - stripe.nextDecay < 0) {
+            return;
+        }
+        // Halve once per elapsed interval, so a stripe idle for long starts from near zero
+        int halvings = (int) Math.min((now - stripe.nextDecay) / decayNanos + 1, 31);
+        stripe.nextDecay = now + decayNanos;
+        int[] sketch = stripe.sketch;
+        for (int i = 0; i < sketch.length; i++) {
+            sketch[i] >>>= halvings;
+        }
+        for (int i = 0; i < stripe.size; i++) {
+            Entry entry = stripe.heap[i];
+            entry.estimate >>>= halvings;
+            entry.observed >>>= halvings;
+            entry.denied >>>= halvings;
+        }
+        // Halving keeps the heap order
+    }
+
+    /**
+     * One hot key: client, endpoint, estimated recent checks and the share of them denied
+     */
+    public record HotKey(String client, String endpoint, long requests, double denialRatio) {}
+
+    /**
+     * Shard of the tracker: a sketch and a min-heap of its hottest keys, guarded by its monitor
+     */
+    private static final class Stripe {
+        final int[] sketch;
+        final Entry[] heap;
+        final HashMap<ClientKey, Entry> index;
+        int size;
+        long nextDecay;
+
+        Stripe(int counters, int topK, long nextDecay) {
+            this.sketch = new int[counters];
+            this.heap = new Entry[topK];
+            this.index = new HashMap<>(topK * 2);
+            this.nextDecay = nextDecay;
+        }
+
+        void offer(ClientKey key, long estimate, boolean allowed) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                if (heap.length == 0) {
+                    return;
+                }
+                if (size < heap.length) {
+                    entry = new Entry(key, size);
+                    heap[size++] = entry;
+                } else if (estimate > heap[0].estimate) {
+                    // Evict the coolest key and reuse its slot at the root
+                    entry = heap[0];
+                    index.remove(entry.key);
+                    entry.reset(key);
+                } else {
+                    return;
+                }
+                index.put(key, entry);
+                entry.estimate = estimate;
+                entry.count(allowed);
+                siftUp(entry.position);
+                siftDown(entry.position);
+                return;
+            }
+            entry.estimate = estimate;
+            entry.count(allowed);
+            siftDown(entry.position); // Estimates only grow between decays
+        }
+
+        private void siftUp(int position) {
+            Entry entry = heap[position];
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (heap[parent].estimate <= entry.estimate) {
+                    break;
+                }
+                place(heap[parent], position);
+                position = parent;
+            }
+            place(entry, position);
+        }
+
+        private void siftDown(int position) {
+            Entry entry = heap[position];
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].estimate < heap[child].estimate) {
+                    child++;
+                }
+                if (entry.estimate <= heap[child].estimate) {
+                    break;
+                }
+                place(heap[child], position);
+                position = child;
+            }
+            place(entry, position);
+        }
+
+        private void place(Entry entry, int position) {
+            heap[position] = entry;
+            entry.position = position;
+        }
+    }
+
+    private static final class Entry {
+        ClientKey key;
+        int position;
+        long estimate;
+        long observed; // Checks since the key entered the heap
+        long denied;
+
+        Entry(ClientKey key, int position) {
+            this.key = key;
+            this.position = position;
+        }
+
+        void reset(ClientKey key) {
+            this.key = key;
+            this.observed = 0;
+            this.denied = 0;
+        }
+
+        void count(boolean allowed) {
+            observed++;
+            if (!allowed) {
+                denied++;
+            }
+        }
+
+        Entry copy() {
+            Entry copy = new Entry(key, position);
+            copy.estimate = estimate;
+            copy.observed = observed;
+            copy.denied = denied;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.ratelimit;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hybrid rate limiter: each gateway node leases a chunk of tokens from the
+ * shared Redis token bucket and spends it locally with lock-free decrements.
+ *
+ * Lease size follows each key's observed local rate over one lease duration,
+ * capped at a fraction of the bucket capacity. Quiet keys lease a single token
+ * and so behave like a plain distributed bucket, while hot keys only go to
+ * Redis about once per lease duration. Unused tokens are handed back with the
+ * next lease request, in the same script call. A lease left idle for a lease
+ * duration is dropped, and its unused tokens are handed back on their own.
+ */
+public class LeasedRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeasedRateLimiter.class);
+    private static final String SCRIPT_LOCATION = "ratelimit/token_lease.lua";
+
+    private final RedisAsyncCommands<String, String> commands;
+    private final String script;
+    private final String sha;
+    private final LocalBucketStore<ClientKey, Lease> leases;
+    private final Function<ClientKey, String> redisKeys;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final long leaseNanos;
+    private final double maxLeaseFraction;
+    private final Disposable expiryTask;
+
+    public LeasedRateLimiter(StatefulRedisConnection<String, String> connection,
+                             RateLimitConfig.LocalStoreConfig storeConfig,
+                             Function<ClientKey, String> redisKeys,
+                             RedisCircuitBreaker circuitBreaker,
+                             RateLimitConfig.HybridConfig hybridConfig) {
+        this.commands = connection.async();
+        this.script = RedisScriptRateLimiter.loadScript(SCRIPT_LOCATION);
+        this.sha = commands.digest(script);
+        this.leases = new LocalBucketStore<>(storeConfig.getMaxEntries(), storeConfig.getTick().toNanos(),
+            storeConfig.getWheelSize(), this::release);
+        this.redisKeys = redisKeys;
+        this.circuitBreaker = circuitBreaker;
+        this.leaseNanos = hybridConfig.getLeaseDuration().toNanos();
+        this.maxLeaseFraction = hybridConfig.getMaxLeaseFraction();
+        commands.scriptLoad(script).whenComplete((loaded, error) -> {
+            if (error != null) {
+                logger.warn("Failed to preload rate limit script {}: {}", SCRIPT_LOCATION, error.getMessage());
+            }
+        });
+        // Requests advance the store's wheel too, but idle leases must be returned when traffic stops
+        this.expiryTask = Schedulers.parallel().schedulePeriodically(leases::expire, leaseNanos, leaseNanos,
+            TimeUnit.NANOSECONDS);
+    }
+
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig,
+                                                             long idleNanos) {
+        // Dropped once idle past its lease, so unused tokens do not sit here until the bucket refills
+        Lease lease = leases.get(key, Math.min(idleNanos, leaseNanos), k -> new Lease());
+        long now = AtomicRateLimiter.monotonicNanos();
+
+        if (now < lease.expiresAt) {
+            long left = lease.take();
+            if (left >= 0) {
+                return Mono.just(allowed(lease, left));
+            }
+        }
+
+        lease.waiters.incrementAndGet();
+        return renew(key, lease, endpointConfig)
+            .then(Mono.defer(() -> {
+                long left = lease.take();
+                if (left >= 0) {
+                    return Mono.just(allowed(lease, left));
+                }
+                if (lease.retryAfterNanos == 0) {
+                    // Redis had tokens, but this caller joined the renewal after it was sized, or
+                    // others spent the grant first; renew once more, still counted if it joined late
+                    return renew(key, lease, endpointConfig).then(Mono.fromSupplier(() -> takeOrDeny(lease)));
+                }
+                return Mono.just(denied(lease));
+            }));
+    }
+
+    /**
+     * Single-flight lease renewal: concurrent misses on the same key share one Redis call.
+     * The request is sized from the callers counted in {@code waiters} when it is sent.
+     */
+    private Mono<Void> renew(ClientKey key, Lease lease, RateLimitConfig.EndpointConfig endpointConfig) {
+        for (;;) {
+            Mono<Void> current = lease.renewal.get();
+            if (current != null) {
+                return current;
+            }
+            Mono<Void> renewal = requestLease(key, lease, endpointConfig)
+                .doFinally(signal -> lease.renewal.set(null))
+                .cache();
+            if (lease.renewal.compareAndSet(null, renewal)) {
+                return renewal;
+            }
+        }
+    }
+
+    private Mono<Void> requestLease(ClientKey key, Lease lease, RateLimitConfig.EndpointConfig endpointConfig) {
+        return Mono.defer(() -> {
+            long now = AtomicRateLimiter.monotonicNanos();
+            long returned = lease.tokens.getAndSet(0);
+            long requested = Math.max(lease.targetSize(now, returned, leaseNanos,
+                maxLeaseFraction * endpointConfig.getCapacity()), lease.waiters.getAndSet(0));
+            lease.endpointConfig = endpointConfig;
+
+            // Only lease requests reach Redis, so only they feed the circuit breaker
+            return circuitBreaker.protect(callScript(key, endpointConfig, requested, returned))
+                .doOnNext(reply -> {
+                    lease.grant(reply.get(0), reply.get(1), AtomicRateLimiter.monotonicNanos(), leaseNanos);
+                    if (leases.peek(key) != lease) {
+                        release(key, lease); // Dropped while the renewal was in flight
+                    }
+                })
+                .then();
+        });
+    }
+
+    /**
+     * Hand the unused tokens of a dropped lease back to Redis. Nothing waits for the
+     * reply; if the call fails, the tokens come back with the bucket's refill instead.
+     */
+    private void release(ClientKey key, Lease lease) {
+        long returned = lease.tokens.getAndSet(0);
+        RateLimitConfig.EndpointConfig endpointConfig = lease.endpointConfig;
+        if (returned <= 0 || endpointConfig == null || circuitBreaker.isOpen()) {
+            return;
+        }
+        callScript(key, endpointConfig, 0, returned).subscribe(
+            reply -> {},
+            error -> logger.debug("Failed to return {} leased tokens: {}", returned, error.getMessage())
+        );
+    }
+
+    private Mono<List<Long>> callScript(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig,
+                                        long requested, long returned) {
+        // The Redis key string is only built when Redis is called
+        String[] keys = { redisKeys.apply(key) };
+        String[] args = {
+            String.valueOf(endpointConfig.getCapacity()),
+            String.valueOf(endpointConfig.getRefillTokens()),
+            String.valueOf(endpointConfig.getRefillPeriod().toNanos() / 1000),
+            String.valueOf(requested),
+            String.valueOf(returned)
+        };
+        return Mono.fromCompletionStage(() -> commands.<List<Long>>evalsha(sha, ScriptOutputType.MULTI, keys, args))
+            .onErrorResume(RedisNoScriptException.class, error ->
+                Mono.fromCompletionStage(() -> commands.<List<Long>>eval(script, ScriptOutputType.MULTI, keys, args)));
+    }
+
+    /**
+     * Leases by key, for metrics
+     */
+    public LocalBucketStore<ClientKey, Lease> leases() {
+        return leases;
+    }
+
+    /**
+     * Stop expiring leases and hand back every unused token
+     */
+    public void close() {
+        expiryTask.dispose();
+        leases.forEach((key, lease, idleNanos) -> release(key, lease));
+    }
+
+    private static RateLimitService.RateLimitResult takeOrDeny(Lease lease) {
+        long left = lease.take();
+        return left >= 0 ? allowed(lease, left) : denied(lease);
+    }
+
+    private static RateLimitService.RateLimitResult denied(Lease lease) {
+        return new RateLimitService.RateLimitResult(false, 0, -1, Duration.ofNanos(lease.retryAfterNanos));
+    }
+
+    private static RateLimitService.RateLimitResult allowed(Lease lease, long left) {
+        // Shared bucket level at lease time plus what this node still holds
+        return new RateLimitService.RateLimitResult(true, lease.sharedRemaining + left, -1, Duration.ZERO);
+    }
+
+    /**
+     * Tokens leased by this node for one key.
+     */
+    public static final class Lease {
+        private final AtomicLong tokens = new AtomicLong();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final AtomicReference<Mono<Void>> renewal = new AtomicReference<>();
+
+        // Written only by the single in-flight renewal
+        private volatile RateLimitConfig.EndpointConfig endpointConfig; // Limits of the last request, for returns
+        private volatile long expiresAt;
+        private volatile long sharedRemaining;
+        private volatile long retryAfterNanos;
+        private volatile long grantedAt;
+        private volatile long granted;
+        private volatile double ratePerNano;
+
+        /**
+         * Take one token, returning the tokens left or -1 if the lease is empty.
+         */
+        long take() {
+            for (;;) {
+                long current = tokens.get();
+                if (current <= 0) {
+                    return -1;
+                }
+                if (tokens.compareAndSet(current, current - 1)) {
+                    return current - 1;
+                }
+            }
+        }
+
+        long targetSize(long now, long unused, long leaseNanos, double maxLease) {
+            long elapsed = now - grantedAt;
+            if (granted > 0 && elapsed > 0) {
+                double observed = (double) (granted - unused) / elapsed;
+                ratePerNano = ratePerNano == 0 ? observed : (ratePerNano + observed) / 2;
+            }
+            long target = (long) Math.ceil(ratePerNano * leaseNanos);
+            return Math.max(1, Math.min(target, (long) maxLease));
+        }
+
+        void grant(long grantedTokens, long value, long now, long leaseNanos) {
+            this.grantedAt = now;
+            if (grantedTokens > 0) {
+                this.granted = grantedTokens;
+                this.sharedRemaining = value;
+                this.retryAfterNanos = 0;
+                this.expiresAt = now + leaseNanos;
+                tokens.addAndGet(grantedTokens);
+            } else {
+                this.granted = 0;
+                this.sharedRemaining = 0;
+                this.retryAfterNanos = value * 1000;
+                this.expiresAt = now;
+            }
+        }
+    }
+}
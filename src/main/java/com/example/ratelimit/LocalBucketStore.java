@@ -0,0 +1,275 @@
+package com.example.ratelimit;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded store for per-key rate limit state with idle expiry.
+ *
+ * Entries are dropped once they have not been touched for their idle timeout.
+ * Callers pick a timeout after which the state is back at its initial value
+ * (e.g. the time a bucket needs to refill completely), so dropping an idle entry
+ * and rebuilding it later gives the same answer as keeping it.
+ *
+ * Expiry is driven by a hashed timer wheel: an access only stamps the entry,
+ * and each wheel tick inspects one slot, rescheduling entries that were touched
+ * since they were placed there. The wheel is advanced by callers, so the store
+ * needs no background thread. When the hard entry cap is reached, entries with
+ * the nearest scheduled deadline are evicted first. Inserts never wait for the
+ * wheel: when another caller holds it, that caller re-checks the cap once it
+ * lets go, so the cap may be exceeded only briefly. An optional removal listener
+ * is told of every dropped entry; it runs on the caller that dropped it, so it
+ * must not block.
+ */
+public class LocalBucketStore<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<K, V>> entries;
+    private final ConcurrentLinkedQueue<Entry<K, V>> pending = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Entry<K, V>>[] wheel;
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder idleEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+    private final BiConsumer<? super K, ? super V> removalListener;
+    private final LongSupplier clock;
+    private final int maxEntries;
+    private final long tickNanos;
+    private final int mask;
+
+    // Guarded by wheelLock
+    private long currentTick;
+    private volatile long nextTickAt;
+
+    public LocalBucketStore(int maxEntries, long tickNanos, int wheelSize) {
+        this(maxEntries, tickNanos, wheelSize, (key, value) -> {}, System::nanoTime);
+    }
+
+    public LocalBucketStore(int maxEntries, long tickNanos, int wheelSize,
+                            BiConsumer<? super K, ? super V> removalListener) {
+        this(maxEntries, tickNanos, wheelSize, removalListener, System::nanoTime);
+    }
+
+    LocalBucketStore(int maxEntries, long tickNanos, int wheelSize, LongSupplier clock) {
+        this(maxEntries, tickNanos, wheelSize, (key, value) -> {}, clock);
+    }
+
+    @SuppressWarnings("unchecked")
+    LocalBucketStore(int maxEntries, long tickNanos, int wheelSize,
+                     BiConsumer<? super K, ? super V> removalListener, LongSupplier clock) {
+        if (maxEntries <= 0 || tickNanos <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("maxEntries, tickNanos and wheelSize must be positive");
+        }
+        int slots = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.maxEntries = maxEntries;
+        this.tickNanos = tickNanos;
+        this.mask = Math.max(slots, 2) - 1;
+        this.removalListener = removalListener;
+        this.clock = clock;
+        this.entries = new ConcurrentHashMap<>(Math.min(maxEntries, 1 << 16));
+        this.wheel = new ArrayDeque[mask + 1];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        long now = clock.getAsLong();
+        this.currentTick = now / tickNanos;
+        this.nextTickAt = (currentTick + 1) * tickNanos;
+    }
+
+    /**
+     * Return the state for the key, creating it with the factory if absent.
+     *
+     * @param idleNanos how long the entry may stay untouched before it is dropped;
+     *                  only used when the entry is created
+     */
+    public V get(K key, long idleNanos, Function<? super K, ? extends V> factory) {
+        long now = clock.getAsLong();
+        if (now >= nextTickAt) {
+            advance(now);
+        }
+
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            entry.touch(now, tickNanos);
+            return entry.value;
+        }
+
+        Entry<K, V> created = new Entry<>(key, factory.apply(key), idleNanos, now);
+        Entry<K, V> existing = entries.putIfAbsent(key, created);
+        if (existing != null) {
+            existing.touch(now, tickNanos);
+            return existing.value;
+        }
+
+        pending.offer(created);
+        if (size.incrementAndGet() > maxEntries) {
+            evictOverflow();
+        }
+        return created.value;
+    }
+
+    /**
+     * Return the state for the key without creating or touching it.
+     */
+    public V peek(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Visit every entry with how much longer it may stay idle before it is dropped.
+     * Entries added or removed during the walk may or may not be visited.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        long now = clock.getAsLong();
+        for (Entry<K, V> entry : entries.values()) {
+            visitor.visit(entry.key, entry.value, Math.max(entry.deadline(tickNanos) - now, 0));
+        }
+    }
+
+    /**
+     * Advance the wheel to the current time, dropping expired entries.
+     */
+    public void expire() {
+        advance(clock.getAsLong());
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    public long idleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    public long capacityEvictions() {
+        return capacityEvictions.sum();
+    }
+
+    private void advance(long now) {
+        if (!wheelLock.tryLock()) {
+            // Another caller is already advancing the wheel
+            return;
+        }
+        try {
+            drainPending();
+            long targetTick = now / tickNanos;
+            long ticks = targetTick - currentTick;
+            if (ticks > wheel.length) {
+                // Long pause: one pass over every slot covers all deadlines
+                currentTick = targetTick - wheel.length;
+            }
+            while (currentTick < targetTick) {
+                currentTick++;
+                expireSlot(wheel[(int) (currentTick & mask)], now);
+            }
+            nextTickAt = (currentTick + 1) * tickNanos;
+        } finally {
+            wheelLock.unlock();
+        }
+        evictOverflow();
+    }
+
+    private void expireSlot(ArrayDeque<Entry<K, V>> slot, long now) {
+        for (int i = slot.size(); i > 0; i--) {
+            Entry<K, V> entry = slot.pollFirst();
+            long deadline = entry.deadline(tickNanos);
+            if (deadline <= now) {
+                if (remove(entry)) {
+                    idleEvictions.increment();
+                }
+            } else if (entries.get(entry.key) == entry) {
+                schedule(entry, deadline);
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        // Inserts run on event loop threads, so never wait for the lock: its holder
+        // calls back here after releasing it and sees the overflow left behind
+        boolean evicted = true;
+        while (evicted && size.get() > maxEntries && wheelLock.tryLock()) {
+            evicted = false;
+            try {
+                drainPending();
+                for (int i = 1; i <= wheel.length && size.get() > maxEntries; i++) {
+                    ArrayDeque<Entry<K, V>> slot = wheel[(int) ((currentTick + i) & mask)];
+                    while (!slot.isEmpty() && size.get() > maxEntries) {
+                        if (remove(slot.pollFirst())) {
+                            capacityEvictions.increment();
+                            evicted = true;
+                        }
+                    }
+                }
+            } finally {
+                wheelLock.unlock();
+            }
+        }
+    }
+
+    private void drainPending() {
+        Entry<K, V> entry;
+        while ((entry = pending.poll()) != null) {
+            schedule(entry, entry.deadline(tickNanos));
+        }
+    }
+
+    private void schedule(Entry<K, V> entry, long deadline) {
+        long tick = Math.max(deadline / tickNanos, currentTick + 1);
+        if (tick - currentTick > wheel.length) {
+            // Beyond one revolution: park in the last slot and re-check when reached
+            tick = currentTick + wheel.length;
+        }
+        wheel[(int) (tick & mask)].addLast(entry);
+    }
+
+    private boolean remove(Entry<K, V> entry) {
+        if (entries.remove(entry.key, entry)) {
+            size.decrementAndGet();
+            removalListener.accept(entry.key, entry.value);
+            return true;
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface EntryVisitor<K, V> {
+        void visit(K key, V value, long remainingIdleNanos);
+    }
+
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        final long idleNanos;
+        volatile long lastAccess;
+
+        Entry(K key, V value, long idleNanos, long now) {
+            this.key = key;
+            this.value = value;
+            this.idleNanos = idleNanos;
+            this.lastAccess = now;
+        }
+
+        void touch(long now, long granularity) {
+            // Skip the volatile write on hot keys; expiry is only tick-accurate anyway
+            if (now - lastAccess >= granularity) {
+                lastAccess = now;
+            }
+        }
+
+        long deadline(long tickNanos) {
+            // One extra tick covers the staleness allowed by touch()
+            return lastAccess + idleNanos + tickNanos;
+        }
+    }
+}
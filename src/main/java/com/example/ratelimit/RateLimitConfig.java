@@ -4,6 +4,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration properties for rate limiting
@@ -19,7 +23,10 @@ public class RateLimitConfig {
     private int refillTokens = 100;
     private Duration refillPeriod = Duration.ofMinutes(1);
     private boolean useRedis = false;
+    private RedisMode redisMode = RedisMode.CAS;
+    private boolean denialCacheEnabled = true; // Reject locally until retry-after instead of asking Redis
     private String keyPrefix = "rate_limit:";
+    private List<String> trustedProxies = new ArrayList<>(); // CIDRs allowed to set forwarding headers
     
     // Per-endpoint configurations
     private EndpointConfig getUserById = new EndpointConfig(60, 60, Duration.ofMinutes(1));
@@ -28,16 +35,51 @@ public class RateLimitConfig {
     private EndpointConfig deleteUser = new EndpointConfig(5, 5, Duration.ofMinutes(1));
     private EndpointConfig listUsers = new EndpointConfig(30, 30, Duration.ofMinutes(1));
     
+    // Limits checked together with the per-endpoint bucket
+    private TiersConfig tiers = new TiersConfig();
+    
+    // In-memory bucket store sizing
+    private LocalStoreConfig localStore = new LocalStoreConfig();
+    
+    // Micro-batching of Redis script checks
+    private BatchConfig batch = new BatchConfig();
+    
+    // Token leasing for the HYBRID Redis mode
+    private HybridConfig hybrid = new HybridConfig();
+    
+    // Fallback to local buckets when Redis is slow or down
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+    
+    // Heavy-hitter tracking of rate limit keys
+    private HotKeysConfig hotKeys = new HotKeysConfig();
+    
+    // Persistence of in-memory bucket state across restarts
+    private SnapshotConfig snapshot = new SnapshotConfig();
+    
+    // Runtime changes of per-endpoint limits
+    private ReloadConfig reload = new ReloadConfig();
+    
+    // In-memory limits shared between gateway nodes by gossip, without Redis
+    private GossipConfig gossip = new GossipConfig();
+    
     public enum Strategy {
         TOKEN_BUCKET,
         FIXED_WINDOW,
-        SLIDING_WINDOW
+        SLIDING_WINDOW,
+        GCRA
+    }
+    
+    public enum RedisMode {
+        CAS,    // Bucket4j compare-and-swap, several round trips under contention
+        SCRIPT, // One EVALSHA of a preloaded Lua script per check
+        HYBRID  // Token buckets leased from Redis in chunks and spent locally
     }
     
     public static class EndpointConfig {
         private int capacity;
         private int refillTokens;
         private Duration refillPeriod;
+        private Strategy strategy; // Overrides the global strategy when set
         
         public EndpointConfig() {}
         
@@ -56,6 +98,244 @@ public class RateLimitConfig {
         
         public Duration getRefillPeriod() { return refillPeriod; }
         public void setRefillPeriod(Duration refillPeriod) { this.refillPeriod = refillPeriod; }
+        
+        public Strategy getStrategy() { return strategy; }
+        public void setStrategy(Strategy strategy) { this.strategy = strategy; }
+    }
+    
+    /**
+     * Tiers above the client x endpoint bucket, all GCRA (continuous refill). Unset tiers are not checked.
+     */
+    public static class TiersConfig {
+        private EndpointConfig client; // Per client across all endpoints
+        private Map<String, EndpointConfig> endpoints = new LinkedHashMap<>(); // Per endpoint across all clients, by endpoint name
+        private EndpointConfig gateway; // All clients and endpoints
+        private ShardingConfig sharding = new ShardingConfig(); // Of the endpoint and gateway tiers
+        
+        public boolean isEnabled() {
+            return client != null || !endpoints.isEmpty() || gateway != null;
+        }
+        
+        // Getters and setters
+        public EndpointConfig getClient() { return client; }
+        public void setClient(EndpointConfig client) { this.client = client; }
+        
+        public Map<String, EndpointConfig> getEndpoints() { return endpoints; }
+        public void setEndpoints(Map<String, EndpointConfig> endpoints) { this.endpoints = endpoints; }
+        
+        public EndpointConfig getGateway() { return gateway; }
+        public void setGateway(EndpointConfig gateway) { this.gateway = gateway; }
+        
+        public ShardingConfig getSharding() { return sharding; }
+        public void setSharding(ShardingConfig sharding) { this.sharding = sharding; }
+    }
+    
+    public static class ShardingConfig {
+        private boolean enabled = true;
+        private double minRate = 10_000; // Requests per second above which permits are split per core; 0 = always
+        private int stripes = 0; // Power of two; 0 = available processors, rounded up
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public double getMinRate() { return minRate; }
+        public void setMinRate(double minRate) { this.minRate = minRate; }
+        
+        public int getStripes() { return stripes; }
+        public void setStripes(int stripes) { this.stripes = stripes; }
+    }
+    
+    public static class LocalStoreConfig {
+        private int maxEntries = 100_000;
+        private Duration tick = Duration.ofSeconds(1);
+        private int wheelSize = 512;
+        
+        // Getters and setters
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        
+        public Duration getTick() { return tick; }
+        public void setTick(Duration tick) { this.tick = tick; }
+        
+        public int getWheelSize() { return wheelSize; }
+        public void setWheelSize(int wheelSize) { this.wheelSize = wheelSize; }
+    }
+    
+    public static class BatchConfig {
+        private boolean enabled = false;
+        private int maxSize = 64;
+        private Duration window = Duration.ofNanos(200_000);
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+        
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+    }
+    
+    public static class HybridConfig {
+        private Duration leaseDuration = Duration.ofSeconds(1);
+        private double maxLeaseFraction = 0.1;
+        
+        // Getters and setters
+        public Duration getLeaseDuration() { return leaseDuration; }
+        public void setLeaseDuration(Duration leaseDuration) { this.leaseDuration = leaseDuration; }
+        
+        public double getMaxLeaseFraction() { return maxLeaseFraction; }
+        public void setMaxLeaseFraction(double maxLeaseFraction) { this.maxLeaseFraction = maxLeaseFraction; }
+    }
+    
+    public static class CircuitBreakerConfig {
+        private Duration callTimeout = Duration.ofMillis(100);
+        private Duration slowCallThreshold = Duration.ofMillis(50);
+        private double failureRateThreshold = 0.5;
+        private int minimumCalls = 20;
+        private Duration window = Duration.ofSeconds(10);
+        private Duration probeInterval = Duration.ofSeconds(1);
+        private int clusterSize = 1; // Gateway nodes sharing the limits, used to scale local fallback buckets
+        
+        // Getters and setters
+        public Duration getCallTimeout() { return callTimeout; }
+        public void setCallTimeout(Duration callTimeout) { this.callTimeout = callTimeout; }
+        
+        public Duration getSlowCallThreshold() { return slowCallThreshold; }
+        public void setSlowCallThreshold(Duration slowCallThreshold) { this.slowCallThreshold = slowCallThreshold; }
+        
+        public double getFailureRateThreshold() { return failureRateThreshold; }
+        public void setFailureRateThreshold(double failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+        
+        public int getMinimumCalls() { return minimumCalls; }
+        public void setMinimumCalls(int minimumCalls) { this.minimumCalls = minimumCalls; }
+        
+        public Duration getWindow() { return window; }
+        public void setWindow(Duration window) { this.window = window; }
+        
+        public Duration getProbeInterval() { return probeInterval; }
+        public void setProbeInterval(Duration probeInterval) { this.probeInterval = probeInterval; }
+        
+        public int getClusterSize() { return clusterSize; }
+        public void setClusterSize(int clusterSize) { this.clusterSize = clusterSize; }
+    }
+    
+    public static class HotKeysConfig {
+        private boolean enabled = true;
+        private int topK = 20;
+        private int stripes = 16; // Power of two
+        private int sketchWidth = 512; // Counters per sketch row and stripe, power of two
+        private int sketchDepth = 4;
+        private Duration decayInterval = Duration.ofMinutes(1); // Counts are halved this often
+        private int exportedKeys = 5;
+        private Duration exportInterval = Duration.ofSeconds(10);
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public int getTopK() { return topK; }
+        public void setTopK(int topK) { this.topK = topK; }
+        
+        public int getStripes() { return stripes; }
+        public void setStripes(int stripes) { this.stripes = stripes; }
+        
+        public int getSketchWidth() { return sketchWidth; }
+        public void setSketchWidth(int sketchWidth) { this.sketchWidth = sketchWidth; }
+        
+        public int getSketchDepth() { return sketchDepth; }
+        public void setSketchDepth(int sketchDepth) { this.sketchDepth = sketchDepth; }
+        
+        public Duration getDecayInterval() { return decayInterval; }
+        public void setDecayInterval(Duration decayInterval) { this.decayInterval = decayInterval; }
+        
+        public int getExportedKeys() { return exportedKeys; }
+        public void setExportedKeys(int exportedKeys) { this.exportedKeys = exportedKeys; }
+        
+        public Duration getExportInterval() { return exportInterval; }
+        public void setExportInterval(Duration exportInterval) { this.exportInterval = exportInterval; }
+    }
+    
+    public static class SnapshotConfig {
+        private boolean enabled = false;
+        private String path; // Required when enabled, one file per instance
+        private Duration interval = Duration.ofSeconds(30); // Also written at shutdown
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+        
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+    }
+    
+    public static class ReloadConfig {
+        private boolean adminApiEnabled = false; // Unauthenticated writes; keep off unless the path is protected
+        private String file; // YAML file of endpoint limit overrides, not watched when unset
+        private Duration pollInterval = Duration.ofSeconds(5);
+        
+        // Getters and setters
+        public boolean isAdminApiEnabled() { return adminApiEnabled; }
+        public void setAdminApiEnabled(boolean adminApiEnabled) { this.adminApiEnabled = adminApiEnabled; }
+        
+        public String getFile() { return file; }
+        public void setFile(String file) { this.file = file; }
+        
+        public Duration getPollInterval() { return pollInterval; }
+        public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+    }
+    
+    public static class GossipConfig {
+        private boolean enabled = false; // Only used with the in-memory backend
+        private String bindAddress = "127.0.0.1"; // Set to the node's private cluster address
+        private String sharedSecret; // Signs every packet (HMAC-SHA256); required, at least 16 bytes
+        private int port = 7400; // UDP
+        private String nodeId; // Defaults to host name and port; keep it stable across restarts
+        private List<String> peers = new ArrayList<>(); // host:port, may include this node
+        private Duration interval = Duration.ofMillis(200);
+        private int resendRounds = 1; // Extra rounds a changed counter is sent in, against packet loss
+        private int maxPacketBytes = 1400; // Below the usual MTU, so packets are not fragmented
+        private int maxPeers = 16;
+        private Duration peerTimeout = Duration.ofMinutes(10); // Silent peers give up their slot after this
+        
+        // Getters and setters
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        
+        public String getBindAddress() { return bindAddress; }
+        public void setBindAddress(String bindAddress) { this.bindAddress = bindAddress; }
+        
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+        
+        public String getSharedSecret() { return sharedSecret; }
+        public void setSharedSecret(String sharedSecret) { this.sharedSecret = sharedSecret; }
+        
+        public String getNodeId() { return nodeId; }
+        public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+        
+        public List<String> getPeers() { return peers; }
+        public void setPeers(List<String> peers) { this.peers = peers; }
+        
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+        
+        public int getResendRounds() { return resendRounds; }
+        public void setResendRounds(int resendRounds) { this.resendRounds = resendRounds; }
+        
+        public int getMaxPacketBytes() { return maxPacketBytes; }
+        public void setMaxPacketBytes(int maxPacketBytes) { this.maxPacketBytes = maxPacketBytes; }
+        
+        public int getMaxPeers() { return maxPeers; }
+        public void setMaxPeers(int maxPeers) { this.maxPeers = maxPeers; }
+        
+        public Duration getPeerTimeout() { return peerTimeout; }
+        public void setPeerTimeout(Duration peerTimeout) { this.peerTimeout = peerTimeout; }
     }
     
     // Getters and setters
@@ -80,9 +360,18 @@ public class RateLimitConfig {
     public boolean isUseRedis() { return useRedis; }
     public void setUseRedis(boolean useRedis) { this.useRedis = useRedis; }
     
+    public RedisMode getRedisMode() { return redisMode; }
+    public void setRedisMode(RedisMode redisMode) { this.redisMode = redisMode; }
+    
+    public boolean isDenialCacheEnabled() { return denialCacheEnabled; }
+    public void setDenialCacheEnabled(boolean denialCacheEnabled) { this.denialCacheEnabled = denialCacheEnabled; }
+    
     public String getKeyPrefix() { return keyPrefix; }
     public void setKeyPrefix(String keyPrefix) { this.keyPrefix = keyPrefix; }
     
+    public List<String> getTrustedProxies() { return trustedProxies; }
+    public void setTrustedProxies(List<String> trustedProxies) { this.trustedProxies = trustedProxies; }
+    
     public EndpointConfig getGetUserById() { return getUserById; }
     public void setGetUserById(EndpointConfig getUserById) { this.getUserById = getUserById; }
     
@@ -97,4 +386,31 @@ public class RateLimitConfig {
     
     public EndpointConfig getListUsers() { return listUsers; }
     public void setListUsers(EndpointConfig listUsers) { this.listUsers = listUsers; }
+    
+    public LocalStoreConfig getLocalStore() { return localStore; }
+    public void setLocalStore(LocalStoreConfig localStore) { this.localStore = localStore; }
+    
+    public BatchConfig getBatch() { return batch; }
+    public void setBatch(BatchConfig batch) { this.batch = batch; }
+    
+    public HybridConfig getHybrid() { return hybrid; }
+    public void setHybrid(HybridConfig hybrid) { this.hybrid = hybrid; }
+    
+    public TiersConfig getTiers() { return tiers; }
+    public void setTiers(TiersConfig tiers) { this.tiers = tiers; }
+    
+    public CircuitBreakerConfig getCircuitBreaker() { return circuitBreaker; }
+    public void setCircuitBreaker(CircuitBreakerConfig circuitBreaker) { this.circuitBreaker = circuitBreaker; }
+    
+    public HotKeysConfig getHotKeys() { return hotKeys; }
+    public void setHotKeys(HotKeysConfig hotKeys) { this.hotKeys = hotKeys; }
+    
+    public SnapshotConfig getSnapshot() { return snapshot; }
+    public void setSnapshot(SnapshotConfig snapshot) { this.snapshot = snapshot; }
+    
+    public ReloadConfig getReload() { return reload; }
+    public void setReload(ReloadConfig reload) { this.reload = reload; }
+    
+    public GossipConfig getGossip() { return gossip; }
+    public void setGossip(GossipConfig gossip) { this.gossip = gossip; }
 }
\ No newline at end of file
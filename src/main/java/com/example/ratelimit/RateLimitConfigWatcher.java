@@ -0,0 +1,107 @@
+package com.example.ratelimit;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies per-endpoint limit overrides from a YAML file whenever the file changes.
+ *
+ * The file holds an {@code endpoints} map in the same shape as the endpoint
+ * sections of {@code rate-limit} in application.yml, keyed by endpoint name:
+ *
+ * <pre>
+ * endpoints:
+ *   getUserById:
+ *     capacity: 200
+ *     refill-tokens: 200
+ *     refill-period: PT1M
+ * </pre>
+ *
+ * Only the endpoints listed are changed, through {@link RateLimitService#updateLimits},
+ * so buckets migrate lazily. The file is polled rather than watched with a
+ * WatchService, which misses the symlink swaps of mounted ConfigMaps.
+ */
+@Component
+public class RateLimitConfigWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitConfigWatcher.class);
+
+    private final RateLimitService rateLimitService;
+    private final Path path; // Null when no file is configured
+    private final Disposable pollTask;
+    private Object lastVersion; // Guarded by this
+
+    public RateLimitConfigWatcher(RateLimitConfig config, RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+        RateLimitConfig.ReloadConfig reloadConfig = config.getReload();
+        if (reloadConfig.getFile() != null && !reloadConfig.getFile().isBlank()) {
+            this.path = Path.of(reloadConfig.getFile());
+            long interval = reloadConfig.getPollInterval().toNanos();
+            this.pollTask = Schedulers.boundedElastic().schedulePeriodically(
+                this::poll, 0, interval, TimeUnit.NANOSECONDS);
+            logger.info("Watching {} for rate limit changes", path);
+        } else {
+            this.path = null;
+            this.pollTask = null;
+        }
+    }
+
+    /**
+     * Apply the file if it changed since the last poll. A missing file changes nothing,
+     * and a file that fails to parse or holds invalid limits is skipped until it changes again.
+     */
+    synchronized void poll() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return;
+        }
+        // The file key changes when a mounted ConfigMap swaps its symlink
+        Object version = Arrays.asList(attributes.lastModifiedTime(), attributes.size(), attributes.fileKey());
+        if (version.equals(lastVersion)) {
+            return;
+        }
+        lastVersion = version;
+        try {
+            // Checked as a whole by the service, so a bad file changes nothing
+            rateLimitService.updateLimits(load(path));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring rate limit overrides in {}: {}", path, e.getMessage());
+        }
+    }
+
+    static Map<String, RateLimitConfig.EndpointConfig> load(Path path) throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+            .load("rate-limit-overrides", new FileSystemResource(path));
+        return new Binder(ConfigurationPropertySources.from(sources))
+            .bind("endpoints", Bindable.mapOf(String.class, RateLimitConfig.EndpointConfig.class))
+            .orElse(Map.of());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (pollTask != null) {
+            pollTask.dispose();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.ratelimit;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ServerWebExchange;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 
 /**
  * Resolves the key to use for rate limiting
@@ -11,49 +13,173 @@ import java.net.InetSocketAddress;
 @Component
 public class RateLimitKeyResolver {
     
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String X_REAL_IP = "X-Real-IP";
+    private static final String UNKNOWN = "unknown";
+    
+    // Trusted proxy networks as (high, low, maskHigh, maskLow) per entry
+    private final long[] trustedProxies;
+    
+    public RateLimitKeyResolver(RateLimitConfig config) {
+        this.trustedProxies = parseNetworks(config.getTrustedProxies());
+    }
+    
     /**
      * Resolve the rate limiting key from the request
      * This implementation uses IP address, but can be extended to use:
      * - User ID from JWT token
      * - API key
      * - Custom headers
+     *
+     * Addresses are parsed straight from the header value into a binary key.
+     * Without trusted proxies configured, forwarding headers are taken as sent.
+     * With them, the headers are only honoured when the peer is a trusted proxy,
+     * and the client is the right-most {@code X-Forwarded-For} hop that is not one.
      */
-    public String resolve(ServerWebExchange exchange) {
-        // Try to get real IP from headers (for proxy scenarios)
-        String xForwardedFor = exchange.getRequest().getHeaders().getFirst("X-Forwarded-For");
+    public ClientKey resolve(ServerWebExchange exchange, int endpointId) {
+        if (trustedProxies.length > 0) {
+            ClientKey peer = remoteKey(exchange, endpointId);
+            if (peer == null || !isTrusted(peer)) {
+                // Direct client: forwarding headers are client controlled
+                return peer != null ? peer : ClientKey.ofName(endpointId, UNKNOWN);
+            }
+        }
+        
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        String xForwardedFor = headers.getFirst(X_FORWARDED_FOR);
         if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
+            ClientKey forwarded = trustedProxies.length > 0
+                ? untrustedHop(xForwardedFor, endpointId)
+                : hop(xForwardedFor, 0, firstComma(xForwardedFor), endpointId);
+            if (forwarded != null) {
+                return forwarded;
+            }
         }
         
-        String xRealIp = exchange.getRequest().getHeaders().getFirst("X-Real-IP");
+        String xRealIp = headers.getFirst(X_REAL_IP);
         if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
+            return ClientKey.of(endpointId, xRealIp);
         }
         
         // Fallback to remote address
-        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
-        if (remoteAddress != null) {
-            return remoteAddress.getAddress().getHostAddress();
+        ClientKey remote = remoteKey(exchange, endpointId);
+        if (remote != null) {
+            return remote;
         }
         
         // Ultimate fallback
-        return "unknown";
+        return ClientKey.ofName(endpointId, UNKNOWN);
     }
     
     /**
      * Resolve key for authenticated users (if you have authentication)
      * This method can be used when you want to rate limit per user instead of per IP
      */
-    public String resolveForUser(ServerWebExchange exchange) {
+    public ClientKey resolveForUser(ServerWebExchange exchange, int endpointId) {
         // Example: Extract user ID from JWT token
         String authHeader = exchange.getRequest().getHeaders().getFirst("Authorization");
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             // Parse JWT and extract user ID
             // This is a placeholder - implement based on your authentication mechanism
-            return "user_" + authHeader.substring(7, Math.min(authHeader.length(), 20));
+            return ClientKey.ofName(endpointId, "user_" + authHeader.substring(7, Math.min(authHeader.length(), 20)));
         }
         
         // Fallback to IP-based rate limiting
-        return resolve(exchange);
+        return resolve(exchange, endpointId);
+    }
+    
+    /**
+     * Walk X-Forwarded-For from the right, skipping trusted proxies. If every hop is
+     * trusted the left-most one is the client.
+     */
+    private ClientKey untrustedHop(String xForwardedFor, int endpointId) {
+        ClientKey client = null;
+        int end = xForwardedFor.length();
+        while (end >= 0) {
+            int comma = xForwardedFor.lastIndexOf(',', end - 1);
+            ClientKey hop = hop(xForwardedFor, comma + 1, end, endpointId);
+            if (hop != null) {
+                client = hop;
+                if (!hop.isAddress() || !isTrusted(hop)) {
+                    return hop;
+                }
+            }
+            end = comma;
+        }
+        return client;
+    }
+    
+    private static ClientKey remoteKey(ServerWebExchange exchange, int endpointId) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return remoteAddress != null && remoteAddress.getAddress() != null
+            ? ClientKey.of(endpointId, remoteAddress.getAddress())
+            : null;
+    }
+    
+    /**
+     * Key for one X-Forwarded-For entry, trimmed in place. Entries that are not an
+     * address become a name key; empty entries yield null.
+     */
+    private static ClientKey hop(String xForwardedFor, int start, int end, int endpointId) {
+        while (start < end && xForwardedFor.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && xForwardedFor.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        ClientKey key = ClientKey.parse(endpointId, xForwardedFor, start, end);
+        return key != null ? key : ClientKey.ofName(endpointId, xForwardedFor.substring(start, end));
+    }
+    
+    private static int firstComma(String value) {
+        int comma = value.indexOf(',');
+        return comma < 0 ? value.length() : comma;
+    }
+    
+    private boolean isTrusted(ClientKey key) {
+        for (int i = 0; i < trustedProxies.length; i += 4) {
+            if ((key.high() & trustedProxies[i + 2]) == trustedProxies[i]
+                    && (key.low() & trustedProxies[i + 3]) == trustedProxies[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static long[] parseNetworks(List<String> networks) {
+        long[] parsed = new long[networks.size() * 4];
+        for (int i = 0; i < networks.size(); i++) {
+            String network = networks.get(i).trim();
+            int slash = network.indexOf('/');
+            int addressEnd = slash < 0 ? network.length() : slash;
+            ClientKey address = ClientKey.parse(0, network, 0, addressEnd);
+            if (address == null) {
+                throw new IllegalArgumentException("Invalid trusted proxy address: " + network);
+            }
+        
+            // IPv4 networks apply to the IPv4-mapped range
+            boolean ipv4 = network.indexOf(':') < 0;
+            int prefix = ipv4 ? 32 : 128;
+            if (slash >= 0) {
+                prefix = Integer.parseInt(network.substring(slash + 1));
+                if (prefix < 0 || prefix > (ipv4 ? 32 : 128)) {
+                    throw new IllegalArgumentException("Invalid trusted proxy prefix: " + network);
+                }
+            }
+            if (ipv4) {
+                prefix += 96;
+            }
+        
+            long maskHigh = prefix >= 64 ? -1L : prefix == 0 ? 0 : -1L << (64 - prefix);
+            long maskLow = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+            parsed[i * 4] = address.high() & maskHigh;
+            parsed[i * 4 + 1] = address.low() & maskLow;
+            parsed[i * 4 + 2] = maskHigh;
+            parsed[i * 4 + 3] = maskLow;
+        }
+        return parsed;
     }
 }
\ No newline at end of file
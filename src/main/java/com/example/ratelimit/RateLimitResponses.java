@@ -0,0 +1,111 @@
+package com.example.ratelimit;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes rate limit headers and the 429 response with as little work per request as possible.
+ *
+ * The rejection body is encoded once per second, when its timestamp changes,
+ * and every rejection in that second wraps the same bytes. Header values for
+ * small numbers come from a table of cached strings, and header names are
+ * constants, so a rejected request allocates almost nothing.
+ */
+class RateLimitResponses {
+
+    static final String REMAINING = "X-RateLimit-Remaining";
+    static final String AVAILABLE = "X-RateLimit-Available";
+    static final String RETRY_AFTER = "X-RateLimit-Retry-After";
+
+    private static final int CACHED_NUMBERS = 1024;
+    private static final String[] NUMBERS = new String[CACHED_NUMBERS];
+
+    static {
+        for (int i = 0; i < CACHED_NUMBERS; i++) {
+            NUMBERS[i] = Integer.toString(i);
+        }
+    }
+
+    private final LongSupplier epochSeconds;
+
+    // Body and its second, replaced together as one object so readers see a consistent pair
+    private volatile EncodedBody body = new EncodedBody(Long.MIN_VALUE, new byte[0], "0");
+
+    RateLimitResponses() {
+        this(() -> System.currentTimeMillis() / 1000);
+    }
+
+    RateLimitResponses(LongSupplier epochSeconds) {
+        this.epochSeconds = epochSeconds;
+    }
+
+    void addRateLimitHeaders(ServerHttpResponse response, RateLimitService.RateLimitResult result) {
+        HttpHeaders headers = response.getHeaders();
+        if (result.getRemainingTokens() >= 0) {
+            headers.add(REMAINING, number(result.getRemainingTokens()));
+        }
+        if (result.getAvailableTokens() >= 0) {
+            headers.add(AVAILABLE, number(result.getAvailableTokens()));
+        }
+        if (!result.getRetryAfter().isZero()) {
+            headers.add(RETRY_AFTER, number(result.getRetryAfter().getSeconds()));
+        }
+    }
+
+    Mono<Void> writeRateLimitExceeded(ServerHttpResponse response, RateLimitService.RateLimitResult result) {
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+
+        // Add rate limit headers
+        addRateLimitHeaders(response, result);
+
+        HttpHeaders headers = response.getHeaders();
+        if (!result.getRetryAfter().isZero()) {
+            headers.add(HttpHeaders.RETRY_AFTER, number(result.getRetryAfter().getSeconds()));
+        }
+
+        EncodedBody encoded = currentBody();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(HttpHeaders.CONTENT_LENGTH, encoded.length());
+
+        // Wrapping shares the encoded array; it is never written after publication
+        DataBuffer buffer = response.bufferFactory().wrap(encoded.bytes());
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    private EncodedBody currentBody() {
+        long second = epochSeconds.getAsLong();
+        EncodedBody current = body;
+        if (current.second() != second) {
+            // Racing threads may each encode once; the last write wins and all are equivalent
+            byte[] bytes = encode(second);
+            current = new EncodedBody(second, bytes, Integer.toString(bytes.length));
+            body = current;
+        }
+        return current;
+    }
+
+    private static byte[] encode(long epochSecond) {
+        return """
+            {
+                "error": "Rate limit exceeded",
+                "message": "Too many requests. Please try again later.",
+                "status": 429,
+                "timestamp": "%s"
+            }
+            """.formatted(Instant.ofEpochSecond(epochSecond)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String number(long value) {
+        return value >= 0 && value < CACHED_NUMBERS ? NUMBERS[(int) value] : Long.toString(value);
+    }
+
+    private record EncodedBody(long second, byte[] bytes, String length) {}
+}
@@ -1,89 +1,315 @@
 package com.example.ratelimit;
 
+import com.example.metrics.CustomMetrics;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.TokensInheritanceStrategy;
 import io.github.bucket4j.distributed.AsyncBucketProxy;
-import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.AsyncProxyManager;
+import io.github.bucket4j.distributed.proxy.RemoteAsyncBucketBuilder;
 import io.github.bucket4j.redis.lettuce.cas.LettuceBasedProxyManager;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.codec.ByteArrayCodec;
 import io.lettuce.core.codec.RedisCodec;
 import io.lettuce.core.codec.StringCodec;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
 
 /**
- * Service for rate limiting using Bucket4j
+ * Service for rate limiting using Bucket4j token buckets, lock-free in-memory
+ * limiters or Redis scripts, depending on the configured strategy
  */
 @Service
 public class RateLimitService {
     
     private static final Logger logger = LoggerFactory.getLogger(RateLimitService.class);
     
+    private static final Mono<RateLimitResult> UNLIMITED =
+        Mono.just(new RateLimitResult(true, -1, -1, Duration.ZERO));
+    
+    private static final ThreadLocal<StringBuilder> REDIS_KEY_BUFFER =
+        ThreadLocal.withInitial(() -> new StringBuilder(64));
+    
     private final RateLimitConfig config;
-    private final ConcurrentHashMap<String, Bucket> localBuckets = new ConcurrentHashMap<>();
-    private final ProxyManager<String> proxyManager;
+    private final AtomicReferenceArray<EndpointLimits> endpointLimits; // Replaced per endpoint on reload
+    private long lastGeneration; // Guarded by this
+    private final String[] bucketKeyPrefixes;
+    private final LocalBucketStore<ClientKey, LocalBucket> localBuckets;
+    private final LocalBucketStore<ClientKey, AtomicLong> localStates;
+    private final ConcurrentHashMap<RateLimitConfig.EndpointConfig, AtomicRateLimiter> atomicLimiters =
+        new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<RateLimitConfig.EndpointConfig, CompletableFuture<BucketConfiguration>> bucketConfigurations =
+        new ConcurrentHashMap<>();
+    private final AsyncProxyManager<String> proxyManager;
+    private final EnumMap<RateLimitConfig.Strategy, RedisScriptRateLimiter> redisScripts =
+        new EnumMap<>(RateLimitConfig.Strategy.class);
+    private final LeasedRateLimiter leasedLimiter;
+    private final DenialCache denials;
+    private final RedisCircuitBreaker redisBreaker;
+    private final TieredRateLimits tiers; // Null without tiers
+    private final RedisTieredRateLimiter redisTiers; // Null without tiers or Redis
+    private final GossipRateLimiter gossip; // Null without gossip
+    private final Function<ClientKey, AtomicLong> stateFactory = this::restoreState;
+    private final Path snapshotPath; // Null without snapshots
+    private final Disposable snapshotTask;
+    private volatile BucketSnapshot restoredSnapshot; // Null once none of its states is live
+    private final CustomMetrics customMetrics;
     
-    public RateLimitService(RateLimitConfig config, RedisClient redisClient) {
+    public RateLimitService(RateLimitConfig config, RedisClient redisClient, CustomMetrics customMetrics) {
         this.config = config;
+        this.customMetrics = customMetrics;
+        
+        // Resolved once per endpoint id so a check is two array reads
+        this.endpointLimits = new AtomicReferenceArray<>(RouteTable.ENDPOINT_COUNT);
+        this.bucketKeyPrefixes = new String[RouteTable.ENDPOINT_COUNT];
+        RateLimitConfig.EndpointConfig[] endpointConfigs = new RateLimitConfig.EndpointConfig[RouteTable.ENDPOINT_COUNT];
+        for (int id = 0; id < RouteTable.ENDPOINT_COUNT; id++) {
+            endpointConfigs[id] = getEndpointConfig(id);
+            endpointLimits.set(id, new EndpointLimits(endpointConfigs[id],
+                scaleToNode(endpointConfigs[id], config.getCircuitBreaker().getClusterSize()), 0));
+            bucketKeyPrefixes[id] = config.getKeyPrefix() + RouteTable.endpointName(id) + ":";
+        }
+        
+        this.localBuckets = createLocalStore();
+        this.localStates = createLocalStore();
+        customMetrics.bindRateLimitStore("token-bucket", localBuckets);
+        customMetrics.bindRateLimitStore("atomic", localStates);
+        
+        if (config.getTiers().isEnabled()) {
+            LocalBucketStore<ClientKey, AtomicLong> clientTierStates = createLocalStore();
+            customMetrics.bindRateLimitStore("client-tier", clientTierStates);
+            // With Redis these only serve the fallback, at this node's share
+            int clusterSize = config.isUseRedis() ? config.getCircuitBreaker().getClusterSize() : 1;
+            this.tiers = new TieredRateLimits(config.getTiers(), clusterSize, clientTierStates);
+        } else {
+            this.tiers = null;
+        }
         
         if (config.isUseRedis()) {
             StatefulRedisConnection<String, byte[]> redisConnection = redisClient.connect(
                 RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE)
             );
+            // Async proxy: Bucket4j talks to Redis through Lettuce futures, never blocking the event loop
             this.proxyManager = LettuceBasedProxyManager.builderFor(redisConnection)
-                .build();
-            logger.info("Rate limiting initialized with Redis backend");
+                .build()
+                .asAsync();
+            StatefulRedisConnection<String, String> scriptConnection = redisClient.connect();
+            this.redisBreaker = new RedisCircuitBreaker(config.getCircuitBreaker(), scriptConnection.async()::ping);
+            customMetrics.bindRedisCircuitBreaker(redisBreaker);
+            redisScripts.put(RateLimitConfig.Strategy.TOKEN_BUCKET,
+                new RedisScriptRateLimiter(scriptConnection, "ratelimit/token_bucket.lua",
+                    config.getBatch(), customMetrics));
+            redisScripts.put(RateLimitConfig.Strategy.GCRA,
+                new RedisScriptRateLimiter(scriptConnection, "ratelimit/gcra.lua",
+                    config.getBatch(), customMetrics));
+            redisScripts.put(RateLimitConfig.Strategy.FIXED_WINDOW,
+                new RedisScriptRateLimiter(scriptConnection, "ratelimit/fixed_window.lua",
+                    config.getBatch(), customMetrics));
+            redisScripts.put(RateLimitConfig.Strategy.SLIDING_WINDOW,
+                new RedisScriptRateLimiter(scriptConnection, "ratelimit/sliding_window.lua",
+                    config.getBatch(), customMetrics));
+            this.leasedLimiter = new LeasedRateLimiter(scriptConnection, config.getLocalStore(), this::redisKey,
+                redisBreaker, config.getHybrid());
+            customMetrics.bindRateLimitStore("lease", leasedLimiter.leases());
+            this.redisTiers = tiers != null
+                ? new RedisTieredRateLimiter(scriptConnection, config, endpointConfigs, this::redisKey)
+                : null;
+            if (config.isDenialCacheEnabled()) {
+                LocalBucketStore<ClientKey, AtomicLong> denialStore = createLocalStore();
+                customMetrics.bindRateLimitStore("denial", denialStore);
+                this.denials = new DenialCache(denialStore);
+            } else {
+                this.denials = null;
+            }
+            this.gossip = null;
+            logger.info("Rate limiting initialized with Redis backend ({} mode)", config.getRedisMode());
         } else {
             this.proxyManager = null;
-            logger.info("Rate limiting initialized with in-memory backend");
+            this.leasedLimiter = null;
+            this.denials = null;
+            this.redisBreaker = null;
+            this.redisTiers = null;
+            if (config.getGossip().isEnabled()) {
+                LocalBucketStore<ClientKey, GossipRateLimiter.Counter> counters = createLocalStore();
+                customMetrics.bindRateLimitStore("gossip", counters);
+                try {
+                    this.gossip = new GossipRateLimiter(config.getGossip(), counters, this::endpointConfig);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to start rate limit gossip: " + e.getMessage(), e);
+                }
+                customMetrics.bindGossip(gossip);
+                logger.info("Rate limiting initialized with gossip backend");
+            } else {
+                this.gossip = null;
+                logger.info("Rate limiting initialized with in-memory backend");
+            }
+        }
+        
+        // Only the in-memory backend keeps its state locally; Redis survives restarts by itself
+        RateLimitConfig.SnapshotConfig snapshotConfig = config.getSnapshot();
+        if (snapshotConfig.isEnabled() && !config.isUseRedis()) {
+            if (snapshotConfig.getPath() == null || snapshotConfig.getPath().isBlank()) {
+                throw new IllegalArgumentException("Rate limit snapshots need a path of their own per instance");
+            }
+            this.snapshotPath = Path.of(snapshotConfig.getPath());
+            this.restoredSnapshot = openSnapshot(snapshotPath);
+            long interval = snapshotConfig.getInterval().toNanos();
+            this.snapshotTask = Schedulers.boundedElastic().schedulePeriodically(
+                this::writeSnapshot, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            this.snapshotPath = null;
+            this.snapshotTask = null;
         }
     }
     
     /**
-     * Check if request is allowed for the given key and endpoint
+     * Check if request is allowed for the given key and endpoint name
      */
     public Mono<RateLimitResult> isAllowed(String key, String endpoint) {
+        return isAllowed(ClientKey.of(RouteTable.endpointId(endpoint), key));
+    }
+    
+    /**
+     * Check if request is allowed for the given client key, whose endpoint id comes from the {@link RouteTable}
+     */
+    public Mono<RateLimitResult> isAllowed(ClientKey key) {
         if (!config.isEnabled()) {
-            return Mono.just(new RateLimitResult(true, -1, -1, Duration.ZERO));
+            return UNLIMITED;
         }
         
         try {
+            EndpointLimits limits = endpointLimits.get(key.endpointId());
+            RateLimitConfig.EndpointConfig endpointConfig = limits.config();
+            RateLimitConfig.Strategy strategy = strategyOf(endpointConfig);
+            
             if (config.isUseRedis() && proxyManager != null) {
-                return checkRateLimitDistributed(key, endpoint);
-            } else {
-                return checkRateLimitLocal(key, endpoint);
+                if (denials != null) {
+                    // A key inside its retry-after cannot pass yet, so Redis is not asked again
+                    Mono<RateLimitResult> cachedDenial = denials.get(key);
+                    if (cachedDenial != null) {
+                        customMetrics.incrementRateLimitDenialCacheHit();
+                        return cachedDenial;
+                    }
+                }
+                if (redisBreaker.isOpen()) {
+                    return checkRateLimitFallback(key, strategy);
+                }
+                Mono<RateLimitResult> result = checkRateLimitRedis(key, limits, strategy)
+                    .onErrorResume(error -> checkRateLimitFallback(key, strategy));
+                return denials == null ? result : result.doOnNext(r -> denials.record(key, r));
             }
+            return checkRateLimitTiered(key, endpointConfig, limits.generation(), strategy);
         } catch (Exception e) {
-            logger.error("Error checking rate limit for key: {}, endpoint: {}", key, endpoint, e);
+            logger.error("Error checking rate limit for key: {}, endpoint: {}", key, key.endpointId(), e);
             // Fail open - allow request if rate limiting fails
-            return Mono.just(new RateLimitResult(true, -1, -1, Duration.ZERO));
+            return UNLIMITED;
         }
     }
     
-    private Mono<RateLimitResult> checkRateLimitLocal(String key, String endpoint) {
-        String bucketKey = config.getKeyPrefix() + endpoint + ":" + key;
+    private Mono<RateLimitResult> checkRateLimitRedis(ClientKey key, EndpointLimits limits,
+                                                      RateLimitConfig.Strategy strategy) {
+        RateLimitConfig.EndpointConfig endpointConfig = limits.config();
+        // All tiers must be consumed in one script call, whatever the Redis mode
+        if (redisTiers != null) {
+            return redisBreaker.protect(redisTiers.tryAcquire(key));
+        }
+        // Leases come from the shared token bucket; GCRA is served the same way in this mode
+        if (config.getRedisMode() == RateLimitConfig.RedisMode.HYBRID
+                && (strategy == RateLimitConfig.Strategy.TOKEN_BUCKET
+                    || strategy == RateLimitConfig.Strategy.GCRA)) {
+            return leasedLimiter.tryAcquire(key, endpointConfig, timeToFull(endpointConfig));
+        }
+        // Window strategies only exist as scripts; CAS mode keeps Bucket4j for token buckets
+        boolean useScript = config.getRedisMode() == RateLimitConfig.RedisMode.SCRIPT
+            || strategy == RateLimitConfig.Strategy.FIXED_WINDOW
+            || strategy == RateLimitConfig.Strategy.SLIDING_WINDOW;
+        return redisBreaker.protect(useScript
+            ? checkRateLimitScript(redisScripts.get(strategy), redisKey(key), endpointConfig)
+            : checkRateLimitDistributed(redisKey(key), endpointConfig, limits.generation()));
+    }
+    
+    /**
+     * Local limit used while Redis is failing or slow. Each node enforces its share of
+     * the endpoint limit, so the cluster as a whole stays close to the configured rate.
+     */
+    private Mono<RateLimitResult> checkRateLimitFallback(ClientKey key, RateLimitConfig.Strategy strategy) {
+        EndpointLimits limits = endpointLimits.get(key.endpointId());
+        return checkRateLimitTiered(key, limits.fallback(), limits.generation(), strategy);
+    }
+    
+    /**
+     * Local check of the endpoint bucket, together with the tiers above it when configured
+     */
+    private Mono<RateLimitResult> checkRateLimitTiered(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig,
+                                                       long generation, RateLimitConfig.Strategy strategy) {
+        if (tiers == null) {
+            return checkRateLimitLocal(key, endpointConfig, generation, strategy);
+        }
+        return tiers.tryAcquire(key, AtomicRateLimiter.monotonicNanos(),
+            () -> checkRateLimitLocal(key, endpointConfig, generation, strategy));
+    }
+    
+    private Mono<RateLimitResult> checkRateLimitLocal(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig,
+                                                      long generation, RateLimitConfig.Strategy strategy) {
+        if (gossip != null) {
+            return gossip.tryAcquire(key, endpointConfig, AtomicRateLimiter.monotonicNanos());
+        }
+        return switch (strategy) {
+            case TOKEN_BUCKET -> checkRateLimitLocal(key, endpointConfig, generation);
+            default -> checkRateLimitAtomic(key, endpointConfig, strategy);
+        };
+    }
+    
+    private Mono<RateLimitResult> checkRateLimitAtomic(ClientKey bucketKey,
+                                                       RateLimitConfig.EndpointConfig endpointConfig,
+                                                       RateLimitConfig.Strategy strategy) {
+        AtomicRateLimiter limiter = atomicLimiters.get(endpointConfig);
+        if (limiter == null) {
+            limiter = atomicLimiters.computeIfAbsent(endpointConfig, c -> createAtomicLimiter(c, strategy));
+        }
         
-        Bucket bucket = localBuckets.computeIfAbsent(bucketKey, k -> {
-            RateLimitConfig.EndpointConfig endpointConfig = getEndpointConfig(endpoint);
-            Bandwidth bandwidth = Bandwidth.builder()
-                .capacity(endpointConfig.getCapacity())
-                .refillIntervally(endpointConfig.getRefillTokens(), endpointConfig.getRefillPeriod())
-                .build();
-            return Bucket.builder()
-                .addLimit(bandwidth)
-                .build();
-        });
+        AtomicLong state = localStates.get(bucketKey, limiter.idleNanos(), stateFactory);
+        return limiter.tryAcquire(state, AtomicRateLimiter.monotonicNanos());
+    }
+    
+    private static AtomicRateLimiter createAtomicLimiter(RateLimitConfig.EndpointConfig endpointConfig,
+                                                         RateLimitConfig.Strategy strategy) {
+        return switch (strategy) {
+            case FIXED_WINDOW -> new FixedWindowRateLimiter(endpointConfig);
+            case SLIDING_WINDOW -> new SlidingWindowRateLimiter(endpointConfig);
+            case GCRA -> new GcraRateLimiter(endpointConfig);
+            case TOKEN_BUCKET -> throw new IllegalArgumentException("Token bucket is served by Bucket4j");
+        };
+    }
+    
+    private Mono<RateLimitResult> checkRateLimitLocal(ClientKey bucketKey, RateLimitConfig.EndpointConfig endpointConfig,
+                                                      long generation) {
+        LocalBucket localBucket = localBuckets.get(bucketKey, timeToFull(endpointConfig),
+            k -> new LocalBucket(restoreBucket(k, endpointConfig), endpointConfig, generation));
+        if (localBucket.generation < generation) {
+            localBucket.upgrade(createBucketConfiguration(endpointConfig), endpointConfig, generation);
+        }
+        Bucket bucket = localBucket.bucket;
         
         var probe = bucket.tryConsumeAndReturnRemaining(1);
         
@@ -105,13 +331,83 @@ public class RateLimitService {
         }
     }
     
-    private Mono<RateLimitResult> checkRateLimitDistributed(String key, String endpoint) {
-        String bucketKey = config.getKeyPrefix() + endpoint + ":" + key;
+    private Bucket restoreBucket(ClientKey key, RateLimitConfig.EndpointConfig endpointConfig) {
+        Bandwidth bandwidth = Bandwidth.builder()
+            .capacity(endpointConfig.getCapacity())
+            .refillIntervally(endpointConfig.getRefillTokens(), endpointConfig.getRefillPeriod())
+            .build();
+        Bucket bucket = Bucket.builder()
+            .addLimit(bandwidth)
+            .build();
         
-        Supplier<BucketConfiguration> configSupplier = () -> createBucketConfiguration(endpoint);
-        var bucket = proxyManager.builder().build(bucketKey, configSupplier);
+        BucketSnapshot snapshot = restoredSnapshot;
+        if (snapshot != null) {
+            long now = AtomicRateLimiter.monotonicNanos();
+            long saved = findSaved(snapshot, key, BucketSnapshot.TOKEN_BUCKET, RateLimitConfig.Strategy.TOKEN_BUCKET, now);
+            if (saved != BucketSnapshot.NOT_FOUND) {
+                long missing = endpointConfig.getCapacity() - refilled(saved, snapshot.writtenAt(), now, endpointConfig);
+                if (missing > 0) {
+                    bucket.tryConsume(Math.min(missing, endpointConfig.getCapacity()));
+                }
+            }
+        }
+        return bucket;
+    }
+    
+    private AtomicLong restoreState(ClientKey key) {
+        BucketSnapshot snapshot = restoredSnapshot;
+        if (snapshot != null) {
+            long saved = findSaved(snapshot, key, BucketSnapshot.ATOMIC, strategyOf(endpointConfig(key.endpointId())),
+                AtomicRateLimiter.monotonicNanos());
+            if (saved != BucketSnapshot.NOT_FOUND) {
+                return new AtomicLong(saved);
+            }
+        }
+        return new AtomicLong();
+    }
+    
+    private long findSaved(BucketSnapshot snapshot, ClientKey key, byte kind, RateLimitConfig.Strategy strategy,
+                           long nowNanos) {
+        long saved = snapshot.find(key, kind, strategy, nowNanos);
+        if (!snapshot.isValid() && restoredSnapshot == snapshot) {
+            logger.warn("Ignoring rate limit snapshot {}: corrupt slot table", snapshotPath);
+            restoredSnapshot = null;
+        }
+        return saved;
+    }
+    
+    /**
+     * Tokens of a saved bucket after the whole refill periods since it was saved. The
+     * refill phase is not saved, so the restored bucket may refill up to one period late.
+     */
+    private static long refilled(long savedTokens, long savedAt, long nowNanos,
+                                 RateLimitConfig.EndpointConfig endpointConfig) {
+        long periods = (nowNanos - savedAt) / endpointConfig.getRefillPeriod().toNanos();
+        long refills = Math.min(periods, endpointConfig.getCapacity()) * endpointConfig.getRefillTokens();
+        return Math.min(savedTokens + refills, endpointConfig.getCapacity());
+    }
+    
+    private Mono<RateLimitResult> checkRateLimitScript(RedisScriptRateLimiter limiter, String bucketKey,
+                                                       RateLimitConfig.EndpointConfig endpointConfig) {
+        return limiter.tryAcquire(bucketKey, endpointConfig);
+    }
+    
+    private Mono<RateLimitResult> checkRateLimitDistributed(String bucketKey, RateLimitConfig.EndpointConfig endpointConfig,
+                                                            long generation) {
+        CompletableFuture<BucketConfiguration> bucketConfiguration = bucketConfigurations.get(endpointConfig);
+        if (bucketConfiguration == null) {
+            bucketConfiguration = bucketConfigurations.computeIfAbsent(endpointConfig,
+                c -> CompletableFuture.completedFuture(createBucketConfiguration(c)));
+        }
+        CompletableFuture<BucketConfiguration> configFuture = bucketConfiguration;
+        RemoteAsyncBucketBuilder<String> builder = proxyManager.builder();
+        if (generation > 0) {
+            // Buckets stored with older limits take the reloaded ones within the same CAS update
+            builder = builder.withImplicitConfigurationReplacement(generation, TokensInheritanceStrategy.AS_IS);
+        }
+        AsyncBucketProxy bucket = builder.build(bucketKey, () -> configFuture);
         
-        return Mono.fromCallable(() -> bucket.tryConsumeAndReturnRemaining(1))
+        return Mono.fromFuture(() -> bucket.tryConsumeAndReturnRemaining(1))
             .map(probe -> {
                 if (probe.isConsumed()) {
                     return new RateLimitResult(
@@ -129,13 +425,10 @@ public class RateLimitService {
                             Duration.ofNanos(probe.getNanosToWaitForRefill()) : Duration.ZERO
                     );
                 }
-            })
-            .onErrorReturn(new RateLimitResult(true, -1, -1, Duration.ZERO)); // Fail open
+            });
     }
     
-    private BucketConfiguration createBucketConfiguration(String endpoint) {
-        RateLimitConfig.EndpointConfig endpointConfig = getEndpointConfig(endpoint);
-        
+    private BucketConfiguration createBucketConfiguration(RateLimitConfig.EndpointConfig endpointConfig) {
         Bandwidth bandwidth = Bandwidth.builder()
             .capacity(endpointConfig.getCapacity())
             .refillIntervally(endpointConfig.getRefillTokens(), endpointConfig.getRefillPeriod())
@@ -146,21 +439,264 @@ public class RateLimitService {
             .build();
     }
     
-    private RateLimitConfig.EndpointConfig getEndpointConfig(String endpoint) {
-        return switch (endpoint.toLowerCase()) {
-            case "getuserbyid" -> config.getGetUserById();
-            case "createuser" -> config.getCreateUser();
-            case "updateuser" -> config.getUpdateUser();
-            case "deleteuser" -> config.getDeleteUser();
-            case "listusers" -> config.getListUsers();
+    /**
+     * Time an empty bucket needs to refill completely. A bucket left idle this long
+     * is full again, so the local store may drop it and rebuild it on next use.
+     */
+    private static long timeToFull(RateLimitConfig.EndpointConfig endpointConfig) {
+        long refills = (endpointConfig.getCapacity() + endpointConfig.getRefillTokens() - 1)
+            / endpointConfig.getRefillTokens();
+        return endpointConfig.getRefillPeriod().toNanos() * Math.max(refills, 1);
+    }
+    
+    /**
+     * Replace the limits of an endpoint at runtime. Nothing is rebuilt or flushed: each
+     * bucket moves to the new limits the next time it is used, keeping its tokens up to
+     * the new capacity. The strategy of the endpoint cannot change. Returns the
+     * generation of the limits in effect, which only grows, so Redis buckets written by
+     * nodes that reloaded earlier are replaced too.
+     */
+    public synchronized long updateLimits(int endpointId, int capacity, int refillTokens, Duration refillPeriod) {
+        checkLimits(RouteTable.endpointName(endpointId), capacity, refillTokens, refillPeriod);
+        EndpointLimits current = endpointLimits.get(endpointId);
+        RateLimitConfig.EndpointConfig previous = current.config();
+        if (previous.getCapacity() == capacity && previous.getRefillTokens() == refillTokens
+                && previous.getRefillPeriod().equals(refillPeriod)) {
+            return current.generation();
+        }
+        
+        RateLimitConfig.EndpointConfig updated = new RateLimitConfig.EndpointConfig(capacity, refillTokens, refillPeriod);
+        updated.setStrategy(previous.getStrategy());
+        // Wall clock milliseconds, so a node that restarts still issues a newer generation
+        long generation = Math.max(lastGeneration + 1, System.currentTimeMillis());
+        lastGeneration = generation;
+        endpointLimits.set(endpointId, new EndpointLimits(updated,
+            scaleToNode(updated, config.getCircuitBreaker().getClusterSize()), generation));
+        if (redisTiers != null) {
+            redisTiers.updateLimits(endpointId, updated);
+        }
+        // Atomic limiter states are times and counts, which the new limiter reads as they are
+        atomicLimiters.remove(previous);
+        atomicLimiters.remove(current.fallback());
+        bucketConfigurations.remove(previous);
+        
+        logger.info("Rate limits of {} changed to capacity {}, refill {} per {} (generation {})",
+            RouteTable.endpointName(endpointId), capacity, refillTokens, refillPeriod, generation);
+        return generation;
+    }
+    
+    /**
+     * Replace the limits of several endpoints, keyed by endpoint name. Every entry is
+     * checked before any is applied, so a single bad entry changes nothing.
+     */
+    public synchronized void updateLimits(Map<String, RateLimitConfig.EndpointConfig> limitsByEndpoint) {
+        Map<Integer, RateLimitConfig.EndpointConfig> byId = new LinkedHashMap<>();
+        for (Map.Entry<String, RateLimitConfig.EndpointConfig> entry : limitsByEndpoint.entrySet()) {
+            RateLimitConfig.EndpointConfig limits = entry.getValue();
+            checkLimits(entry.getKey(), limits.getCapacity(), limits.getRefillTokens(), limits.getRefillPeriod());
+            byId.put(TieredRateLimits.endpointId(entry.getKey()), limits);
+        }
+        byId.forEach((endpointId, limits) ->
+            updateLimits(endpointId, limits.getCapacity(), limits.getRefillTokens(), limits.getRefillPeriod()));
+    }
+    
+    private static void checkLimits(String endpointName, int capacity, int refillTokens, Duration refillPeriod) {
+        if (capacity < 1 || refillTokens < 1 || refillPeriod == null
+                || refillPeriod.isNegative() || refillPeriod.isZero()) {
+            throw new IllegalArgumentException("Limits of " + endpointName
+                + " need a positive capacity, refill tokens and refill period");
+        }
+    }
+    
+    /**
+     * Limits in effect for an endpoint
+     */
+    public RateLimitConfig.EndpointConfig endpointConfig(int endpointId) {
+        return endpointLimits.get(endpointId).config();
+    }
+    
+    /**
+     * Generation of the limits in effect for an endpoint, 0 until they are first reloaded
+     */
+    public long limitsGeneration(int endpointId) {
+        return endpointLimits.get(endpointId).generation();
+    }
+    
+    private RateLimitConfig.Strategy strategyOf(RateLimitConfig.EndpointConfig endpointConfig) {
+        return endpointConfig.getStrategy() != null ? endpointConfig.getStrategy() : config.getStrategy();
+    }
+    
+    private RateLimitConfig.EndpointConfig getEndpointConfig(int endpointId) {
+        return switch (endpointId) {
+            case RouteTable.GET_USER_BY_ID -> config.getGetUserById();
+            case RouteTable.CREATE_USER -> config.getCreateUser();
+            case RouteTable.UPDATE_USER -> config.getUpdateUser();
+            case RouteTable.DELETE_USER -> config.getDeleteUser();
+            case RouteTable.LIST_USERS -> config.getListUsers();
             default -> new RateLimitConfig.EndpointConfig(
-                config.getCapacity(), 
-                config.getRefillTokens(), 
+                config.getCapacity(),
+                config.getRefillTokens(),
                 config.getRefillPeriod()
             );
         };
     }
     
+    /**
+     * Share of an endpoint limit enforced by one of {@code clusterSize} nodes, rounded up
+     */
+    static RateLimitConfig.EndpointConfig scaleToNode(RateLimitConfig.EndpointConfig endpointConfig,
+                                                              int clusterSize) {
+        if (clusterSize <= 1) {
+            return endpointConfig;
+        }
+        RateLimitConfig.EndpointConfig scaled = new RateLimitConfig.EndpointConfig(
+            Math.max((endpointConfig.getCapacity() + clusterSize - 1) / clusterSize, 1),
+            Math.max((endpointConfig.getRefillTokens() + clusterSize - 1) / clusterSize, 1),
+            endpointConfig.getRefillPeriod()
+        );
+        scaled.setStrategy(endpointConfig.getStrategy());
+        return scaled;
+    }
+    
+    /**
+     * Redis key for a client: prefix, endpoint name and client, built in a reused per-thread buffer
+     */
+    private String redisKey(ClientKey key) {
+        StringBuilder builder = REDIS_KEY_BUFFER.get();
+        builder.setLength(0);
+        builder.append(bucketKeyPrefixes[key.endpointId()]);
+        return key.appendClient(builder).toString();
+    }
+    
+    private static BucketSnapshot openSnapshot(Path path) {
+        long started = System.nanoTime();
+        try {
+            BucketSnapshot snapshot = BucketSnapshot.open(path, AtomicRateLimiter.monotonicNanos());
+            if (snapshot != null) {
+                logger.info("Mapped rate limit snapshot {} with {} keys in {} ms", path, snapshot.entryCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+            return snapshot;
+        } catch (IOException e) {
+            logger.warn("Ignoring rate limit snapshot {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Write the in-memory states to the snapshot file. Restored states that were not
+     * used since startup are carried over, so a quick second restart keeps them too.
+     */
+    synchronized void writeSnapshot() {
+        long now = AtomicRateLimiter.monotonicNanos();
+        BucketSnapshot previous = restoredSnapshot;
+        if (previous != null && (previous.isExpired(now) || !previous.isValid())) {
+            restoredSnapshot = previous = null;
+        }
+        int expected = localBuckets.size() + localStates.size() + (previous != null ? previous.entryCount() : 0);
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(snapshotPath, expected)) {
+            localBuckets.forEach((key, localBucket, idleNanos) -> {
+                long tokens = localBucket.bucket.getAvailableTokens();
+                if (tokens < localBucket.limits.getCapacity()) {
+                    writer.add(key, BucketSnapshot.TOKEN_BUCKET, RateLimitConfig.Strategy.TOKEN_BUCKET,
+                        tokens, now + idleNanos);
+                }
+            });
+            localStates.forEach((key, state, idleNanos) -> {
+                long value = state.get();
+                if (value != 0) {
+                    writer.add(key, BucketSnapshot.ATOMIC, strategyOf(endpointConfig(key.endpointId())),
+                        value, now + idleNanos);
+                }
+            });
+            if (previous != null) {
+                long previousAt = previous.writtenAt();
+                previous.forEach(now, (key, kind, strategy, state, expiresAt) -> {
+                    if (kind == BucketSnapshot.TOKEN_BUCKET && localBuckets.peek(key) == null) {
+                        writer.add(key, kind, strategy,
+                            refilled(state, previousAt, now, endpointConfig(key.endpointId())), expiresAt);
+                    } else if (kind == BucketSnapshot.ATOMIC && localStates.peek(key) == null) {
+                        writer.add(key, kind, strategy, state, expiresAt);
+                    }
+                });
+                if (!previous.isValid()) {
+                    // The states carried over so far were sound; the rest is not kept
+                    logger.warn("Dropping rate limit snapshot {} after this write: corrupt slot table", snapshotPath);
+                    restoredSnapshot = null;
+                }
+            }
+            writer.commit(now);
+            logger.debug("Wrote rate limit snapshot {} with {} keys", snapshotPath, writer.entries());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write rate limit snapshot {}: {}", snapshotPath, e.toString());
+        }
+    }
+    
+    @PreDestroy
+    public void close() {
+        if (snapshotTask != null) {
+            snapshotTask.dispose();
+            writeSnapshot();
+        }
+        if (leasedLimiter != null) {
+            leasedLimiter.close();
+        }
+        if (gossip != null) {
+            try {
+                gossip.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close rate limit gossip: {}", e.toString());
+            }
+        }
+    }
+    
+    private <V> LocalBucketStore<ClientKey, V> createLocalStore() {
+        RateLimitConfig.LocalStoreConfig storeConfig = config.getLocalStore();
+        return new LocalBucketStore<>(
+            storeConfig.getMaxEntries(),
+            storeConfig.getTick().toNanos(),
+            storeConfig.getWheelSize()
+        );
+    }
+    
+    /**
+     * Limits of one endpoint and its Redis fallback share. Swapped as a whole on reload, so
+     * a check never sees a limit from one generation and a fallback from another.
+     */
+    private record EndpointLimits(RateLimitConfig.EndpointConfig config, RateLimitConfig.EndpointConfig fallback,
+                                  long generation) {}
+    
+    /**
+     * Local Bucket4j bucket with the limits it was last configured with; a bucket whose
+     * limits are older than the endpoint's is moved to the current ones on its next use
+     */
+    private static final class LocalBucket {
+        final Bucket bucket;
+        volatile RateLimitConfig.EndpointConfig limits;
+        volatile long generation;
+        
+        LocalBucket(Bucket bucket, RateLimitConfig.EndpointConfig limits, long generation) {
+            this.bucket = bucket;
+            this.limits = limits;
+            this.generation = generation;
+        }
+        
+        /**
+         * Move to newer limits, keeping the tokens up to the new capacity. A check that read
+         * the limits before a reload may get here after one that read them after it, so
+         * limits of an older generation than the bucket's are ignored.
+         */
+        synchronized void upgrade(BucketConfiguration configuration, RateLimitConfig.EndpointConfig limits,
+                                  long generation) {
+            if (generation <= this.generation) {
+                return;
+            }
+            bucket.replaceConfiguration(configuration, TokensInheritanceStrategy.AS_IS);
+            this.limits = limits;
+            this.generation = generation;
+        }
+    }
+    
     /**
      * Result of rate limit check
      */
@@ -0,0 +1,174 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micro-batches rate limit checks for one Lua script.
+ *
+ * Checks arriving within the batch window, or until the batch is full, are
+ * sent as a single multi-key script call that runs the per-key script for
+ * each entry in order, and the replies are fanned back to the waiting callers.
+ * This trades up to one window of latency for far fewer Redis commands.
+ *
+ * Keys in a batch may hash to different slots, so batching requires a
+ * standalone or sentinel Redis deployment.
+ *
+ * A check cancelled before its batch is sent is left out of it, so it takes no
+ * token; once sent, the script runs whether or not anyone waits for it.
+ */
+public class RedisBatchDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisBatchDispatcher.class);
+    private static final int ARGS_PER_CHECK = 3;
+
+    private final RedisAsyncCommands<String, String> commands;
+    private final String batchScript;
+    private final String batchSha;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final CustomMetrics customMetrics;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private final ConcurrentLinkedQueue<PendingCheck> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public RedisBatchDispatcher(RedisAsyncCommands<String, String> commands, String script,
+                                RateLimitConfig.BatchConfig batchConfig, CustomMetrics customMetrics) {
+        if (batchConfig.getMaxSize() < 1) {
+            throw new IllegalArgumentException("Rate limit batches need max-size >= 1");
+        }
+        this.commands = commands;
+        this.batchScript = wrap(script);
+        this.batchSha = commands.digest(batchScript);
+        this.maxBatchSize = batchConfig.getMaxSize();
+        this.windowNanos = batchConfig.getWindow().toNanos();
+        this.customMetrics = customMetrics;
+        // Preload so the first batch can use EVALSHA; a miss is handled per call
+        commands.scriptLoad(batchScript).whenComplete((loaded, error) -> {
+            if (error != null) {
+                logger.warn("Failed to preload batched rate limit script: {}", error.getMessage());
+            }
+        });
+    }
+
+    public Mono<Long> submit(String key, String[] args) {
+        return Mono.create(sink -> {
+            PendingCheck check = new PendingCheck(key, args, sink);
+            sink.onCancel(() -> cancel(check));
+            enqueue(check);
+        });
+    }
+
+    private void enqueue(PendingCheck check) {
+        queue.offer(check);
+        int size = queued.incrementAndGet();
+        if (size >= maxBatchSize) {
+            flush();
+        } else if (size == 1) {
+            // First entry of a new batch starts the window
+            scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void cancel(PendingCheck check) {
+        // Too late once a flush claimed it; a flush that polled it but lost the claim skips it
+        if (check.claimed.compareAndSet(false, true) && queue.remove(check)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void flush() {
+        List<PendingCheck> batch = new ArrayList<>(maxBatchSize);
+        int polled = 0;
+        PendingCheck check;
+        while (batch.size() < maxBatchSize && (check = queue.poll()) != null) {
+            polled++;
+            if (check.claimed.compareAndSet(false, true)) {
+                batch.add(check);
+            } // Cancelled while queued
+        }
+        if (polled == 0) {
+            return;
+        }
+        if (queued.addAndGet(-polled) > 0) {
+            // Entries left behind by a full batch get their own window
+            scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        String[] keys = new String[batch.size()];
+        String[] args = new String[batch.size() * ARGS_PER_CHECK];
+        for (int i = 0; i < keys.length; i++) {
+            PendingCheck pending = batch.get(i);
+            keys[i] = pending.key;
+            System.arraycopy(pending.args, 0, args, i * ARGS_PER_CHECK, ARGS_PER_CHECK);
+        }
+        customMetrics.recordRateLimitBatch(keys.length);
+
+        Mono.fromCompletionStage(() -> commands.<List<Long>>evalsha(batchSha, ScriptOutputType.MULTI, keys, args))
+            .onErrorResume(RedisNoScriptException.class, error ->
+                Mono.fromCompletionStage(() -> commands.<List<Long>>eval(batchScript, ScriptOutputType.MULTI, keys, args)))
+            .subscribe(
+                replies -> demultiplex(batch, replies),
+                error -> batch.forEach(pending -> pending.sink.error(error))
+            );
+    }
+
+    private static void demultiplex(List<PendingCheck> batch, List<Long> replies) {
+        if (replies.size() != batch.size()) {
+            IllegalStateException error = new IllegalStateException("Batched rate limit script answered "
+                + replies.size() + " replies for " + batch.size() + " keys");
+            batch.forEach(pending -> pending.sink.error(error));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).sink.success(replies.get(i));
+        }
+    }
+
+    /**
+     * Turn a single-key script into one that runs it for every key in order.
+     * The per-key body sees its own KEYS and ARGV tables, so it is reused as is.
+     */
+    static String wrap(String script) {
+        return "local function check(KEYS, ARGV)\n"
+            + script
+            + "\nend\n"
+            + "local results = {}\n"
+            + "for i = 1, #KEYS do\n"
+            + "    local offset = (i - 1) * " + ARGS_PER_CHECK + "\n"
+            + "    results[i] = check({ KEYS[i] }, { ARGV[offset + 1], ARGV[offset + 2], ARGV[offset + 3] })\n"
+            + "end\n"
+            + "return results\n";
+    }
+
+    private static final class PendingCheck {
+        final String key;
+        final String[] args;
+        final MonoSink<Long> sink;
+        final AtomicBoolean claimed = new AtomicBoolean(); // By the flush sending it or by a cancel, whichever is first
+
+        PendingCheck(String key, String[] args, MonoSink<Long> sink) {
+            this.key = key;
+            this.args = args;
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Latency-aware circuit breaker around the Redis rate limit backend.
+ *
+ * Every protected call is bounded by a short timeout, far below the client's
+ * command timeout, and counts as failed when it errors, times out or is slower
+ * than the slow-call threshold. Once enough calls in the current window have
+ * failed, the breaker opens and callers switch to their local fallback. While
+ * open, a background probe pings Redis at a fixed interval, and the first
+ * fast, successful probe closes the breaker again. Requests never wait on a
+ * probe.
+ */
+public class RedisCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    private final Supplier<? extends CompletionStage<?>> probe;
+    private final Duration callTimeout;
+    private final long slowCallNanos;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long windowNanos;
+    private final long probeIntervalNanos;
+    private final Scheduler scheduler;
+
+    // Calls (upper 32 bits) and failed calls (lower 32 bits) in the current window
+    private final AtomicLong counts = new AtomicLong();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final LongAdder failedCalls = new LongAdder();
+    private final AtomicLong trips = new AtomicLong();
+    private volatile long windowStart = System.nanoTime();
+    private volatile boolean open;
+    private Disposable probeTask; // Guarded by this
+
+    public RedisCircuitBreaker(RateLimitConfig.CircuitBreakerConfig breakerConfig,
+                               Supplier<? extends CompletionStage<?>> probe) {
+        this(breakerConfig, probe, Schedulers.parallel());
+    }
+
+    RedisCircuitBreaker(RateLimitConfig.CircuitBreakerConfig breakerConfig,
+                        Supplier<? extends CompletionStage<?>> probe, Scheduler scheduler) {
+        this.probe = probe;
+        this.callTimeout = breakerConfig.getCallTimeout();
+        this.slowCallNanos = breakerConfig.getSlowCallThreshold().toNanos();
+        this.failureRateThreshold = breakerConfig.getFailureRateThreshold();
+        this.minimumCalls = breakerConfig.getMinimumCalls();
+        this.windowNanos = breakerConfig.getWindow().toNanos();
+        this.probeIntervalNanos = breakerConfig.getProbeInterval().toNanos();
+        this.scheduler = scheduler;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public long failedCalls() {
+        return failedCalls.sum();
+    }
+
+    public long trips() {
+        return trips.get();
+    }
+
+    /**
+     * Bound the call by the call timeout and record its outcome and latency
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.timeout(callTimeout, scheduler)
+                .doOnSuccess(value -> record(System.nanoTime() - start > slowCallNanos))
+                .doOnError(error -> record(true));
+        });
+    }
+
+    private void record(boolean failed) {
+        if (failed) {
+            failedCalls.increment();
+        }
+        long now = System.nanoTime();
+        if (now - windowStart > windowNanos) {
+            // Racing resets only drop a few samples
+            windowStart = now;
+            counts.set(0);
+        }
+        long current = counts.addAndGet(failed ? (1L << 32) | 1 : 1L << 32);
+        long calls = current >>> 32;
+        long failures = current & 0xFFFFFFFFL;
+        if (failed && !open && calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+            trip(calls, failures);
+        }
+    }
+
+    private synchronized void trip(long calls, long failures) {
+        if (open) {
+            return;
+        }
+        open = true;
+        trips.incrementAndGet();
+        logger.warn("Redis rate limit backend degraded ({} of {} calls failed or slow), using local buckets",
+            failures, calls);
+        probeTask = scheduler.schedulePeriodically(this::probe, probeIntervalNanos, probeIntervalNanos,
+            TimeUnit.NANOSECONDS);
+    }
+
+    private void probe() {
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Mono.fromCompletionStage(probe)
+            .timeout(callTimeout, scheduler)
+            .doFinally(signal -> probing.set(false))
+            .subscribe(
+                reply -> {
+                    if (System.nanoTime() - start <= slowCallNanos) {
+                        close();
+                    }
+                },
+                error -> logger.debug("Redis probe failed: {}", error.toString())
+            );
+    }
+
+    private synchronized void close() {
+        if (!open) {
+            return;
+        }
+        counts.set(0);
+        windowStart = System.nanoTime();
+        open = false;
+        probeTask.dispose();
+        logger.info("Redis rate limit backend recovered, closing circuit breaker");
+    }
+}
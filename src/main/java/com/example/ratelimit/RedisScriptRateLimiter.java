@@ -0,0 +1,96 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distributed rate limiter that evaluates one preloaded Lua script per check,
+ * so each decision is atomic on the Redis side and costs a single
+ * {@code EVALSHA} round trip, however contended the key is.
+ *
+ * Scripts keep their state as a small packed binary string with a TTL and
+ * return the remaining permits when the request is allowed, or
+ * {@code -retryAfterMicros} when it is denied.
+ */
+public class RedisScriptRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisScriptRateLimiter.class);
+
+    private final RedisAsyncCommands<String, String> commands;
+    private final String script;
+    private final String sha;
+    private final ConcurrentHashMap<RateLimitConfig.EndpointConfig, String[]> scriptArguments =
+        new ConcurrentHashMap<>();
+    private final RedisBatchDispatcher batchDispatcher;
+
+    public RedisScriptRateLimiter(StatefulRedisConnection<String, String> connection, String scriptLocation,
+                                  RateLimitConfig.BatchConfig batchConfig, CustomMetrics customMetrics) {
+        this.commands = connection.async();
+        this.script = loadScript(scriptLocation);
+        this.sha = commands.digest(script);
+        this.batchDispatcher = batchConfig.isEnabled()
+            ? new RedisBatchDispatcher(commands, script, batchConfig, customMetrics)
+            : null;
+
+        // Preload so the first check can use EVALSHA; a miss is handled per call
+        commands.scriptLoad(script).whenComplete((loaded, error) -> {
+            if (error != null) {
+                logger.warn("Failed to preload rate limit script {}: {}", scriptLocation, error.getMessage());
+            }
+        });
+    }
+
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(String key, RateLimitConfig.EndpointConfig endpointConfig) {
+        String[] keys = { key };
+        String[] args = scriptArguments.get(endpointConfig);
+        if (args == null) {
+            args = scriptArguments.computeIfAbsent(endpointConfig, RedisScriptRateLimiter::toArguments);
+        }
+        String[] values = args;
+
+        if (batchDispatcher != null) {
+            return batchDispatcher.submit(key, values).map(RedisScriptRateLimiter::toResult);
+        }
+        return Mono.fromCompletionStage(() -> commands.<Long>evalsha(sha, ScriptOutputType.INTEGER, keys, values))
+            .onErrorResume(RedisNoScriptException.class, error ->
+                // Script cache was flushed (restart or failover): EVAL also caches it again
+                Mono.fromCompletionStage(() -> commands.<Long>eval(script, ScriptOutputType.INTEGER, keys, values)))
+            .map(RedisScriptRateLimiter::toResult);
+    }
+
+    private static String[] toArguments(RateLimitConfig.EndpointConfig endpointConfig) {
+        return new String[] {
+            String.valueOf(endpointConfig.getCapacity()),
+            String.valueOf(endpointConfig.getRefillTokens()),
+            String.valueOf(endpointConfig.getRefillPeriod().toNanos() / 1000)
+        };
+    }
+
+    static RateLimitService.RateLimitResult toResult(Long reply) {
+        if (reply >= 0) {
+            return new RateLimitService.RateLimitResult(true, reply, -1, Duration.ZERO);
+        }
+        return new RateLimitService.RateLimitResult(false, 0, -1, Duration.ofNanos(-reply * 1000));
+    }
+
+    static String loadScript(String location) {
+        try {
+            return new ClassPathResource(location).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load rate limit script: " + location, e);
+        }
+    }
+}
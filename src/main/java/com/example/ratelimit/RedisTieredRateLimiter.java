@@ -0,0 +1,135 @@
+package com.example.ratelimit;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Distributed multi-tier check: the client x endpoint bucket and every configured
+ * tier (client, endpoint-global, gateway-global) in one script call. The script
+ * evaluates all tiers before writing any, so a request denied by one tier takes
+ * nothing from the others.
+ *
+ * Tier keys live in different hash slots, so this needs a standalone or sentinel Redis.
+ */
+public class RedisTieredRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisTieredRateLimiter.class);
+    private static final String SCRIPT_LOCATION = "ratelimit/tiered.lua";
+
+    private final RedisAsyncCommands<String, String> commands;
+    private final String script;
+    private final String sha;
+    private final Function<ClientKey, String> redisKeys;
+    private final String clientTierPrefix; // Null without a client tier
+    private final String[] endpointTierKeys; // By endpoint id, null without a ceiling
+    private final String gatewayTierKey; // Null without a gateway tier
+    private final RateLimitConfig.EndpointConfig clientTier;
+    private final RateLimitConfig.EndpointConfig[] endpointTiers;
+    private final RateLimitConfig.EndpointConfig gatewayTier;
+    private final RateLimitConfig.Strategy defaultStrategy;
+    private final AtomicReferenceArray<String[]> arguments; // By endpoint id, four per tier in key order
+
+    public RedisTieredRateLimiter(StatefulRedisConnection<String, String> connection, RateLimitConfig config,
+                                  RateLimitConfig.EndpointConfig[] endpointConfigs,
+                                  Function<ClientKey, String> redisKeys) {
+        this.commands = connection.async();
+        this.script = RedisScriptRateLimiter.loadScript(SCRIPT_LOCATION);
+        this.sha = commands.digest(script);
+        this.redisKeys = redisKeys;
+
+        RateLimitConfig.TiersConfig tiers = config.getTiers();
+        this.clientTierPrefix = tiers.getClient() != null ? config.getKeyPrefix() + "client:" : null;
+        this.gatewayTierKey = tiers.getGateway() != null ? config.getKeyPrefix() + "gateway" : null;
+        this.clientTier = tiers.getClient();
+        this.gatewayTier = tiers.getGateway();
+        this.defaultStrategy = config.getStrategy();
+        this.endpointTierKeys = new String[RouteTable.ENDPOINT_COUNT];
+        this.endpointTiers = new RateLimitConfig.EndpointConfig[RouteTable.ENDPOINT_COUNT];
+        for (Map.Entry<String, RateLimitConfig.EndpointConfig> entry : tiers.getEndpoints().entrySet()) {
+            int id = TieredRateLimits.endpointId(entry.getKey());
+            endpointTierKeys[id] = config.getKeyPrefix() + "endpoint:" + RouteTable.endpointName(id);
+            endpointTiers[id] = entry.getValue();
+        }
+
+        this.arguments = new AtomicReferenceArray<>(RouteTable.ENDPOINT_COUNT);
+        for (int id = 0; id < RouteTable.ENDPOINT_COUNT; id++) {
+            arguments.set(id, toArguments(id, endpointConfigs[id]));
+        }
+
+        commands.scriptLoad(script).whenComplete((loaded, error) -> {
+            if (error != null) {
+                logger.warn("Failed to preload rate limit script {}: {}", SCRIPT_LOCATION, error.getMessage());
+            }
+        });
+    }
+
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(ClientKey key) {
+        int id = key.endpointId();
+        String[] keys = new String[1 + tierCount(id)];
+        int i = 0;
+        if (clientTierPrefix != null) {
+            keys[i++] = key.appendClient(new StringBuilder(clientTierPrefix)).toString();
+        }
+        if (endpointTierKeys[id] != null) {
+            keys[i++] = endpointTierKeys[id];
+        }
+        if (gatewayTierKey != null) {
+            keys[i++] = gatewayTierKey;
+        }
+        keys[i] = redisKeys.apply(key);
+        String[] args = arguments.get(id);
+
+        return Mono.fromCompletionStage(() -> commands.<Long>evalsha(sha, ScriptOutputType.INTEGER, keys, args))
+            .onErrorResume(RedisNoScriptException.class, error ->
+                Mono.fromCompletionStage(() -> commands.<Long>eval(script, ScriptOutputType.INTEGER, keys, args)))
+            .map(RedisScriptRateLimiter::toResult);
+    }
+
+    /**
+     * Use reloaded limits for the client x endpoint bucket from the next check on. The
+     * script reads the stored state with whatever limits it is given, so nothing is migrated.
+     */
+    void updateLimits(int endpointId, RateLimitConfig.EndpointConfig endpointConfig) {
+        arguments.set(endpointId, toArguments(endpointId, endpointConfig));
+    }
+
+    private String[] toArguments(int endpointId, RateLimitConfig.EndpointConfig endpointConfig) {
+        RateLimitConfig.Strategy strategy = endpointConfig.getStrategy() != null
+            ? endpointConfig.getStrategy() : defaultStrategy;
+        String[] args = new String[4 * (1 + tierCount(endpointId))];
+        int i = 0;
+        i = addTier(args, i, RateLimitConfig.Strategy.GCRA, clientTier);
+        i = addTier(args, i, RateLimitConfig.Strategy.GCRA, endpointTiers[endpointId]);
+        i = addTier(args, i, RateLimitConfig.Strategy.GCRA, gatewayTier);
+        addTier(args, i, strategy, endpointConfig);
+        return args;
+    }
+
+    private int tierCount(int endpointId) {
+        return (clientTierPrefix != null ? 1 : 0)
+            + (endpointTierKeys[endpointId] != null ? 1 : 0)
+            + (gatewayTierKey != null ? 1 : 0);
+    }
+
+    private static int addTier(String[] args, int i, RateLimitConfig.Strategy strategy,
+                               RateLimitConfig.EndpointConfig tierConfig) {
+        if (tierConfig == null) {
+            return i;
+        }
+        args[i] = strategy.name().toLowerCase(Locale.ROOT);
+        args[i + 1] = String.valueOf(tierConfig.getCapacity());
+        args[i + 2] = String.valueOf(tierConfig.getRefillTokens());
+        args[i + 3] = String.valueOf(tierConfig.getRefillPeriod().toNanos() / 1000);
+        return i + 4;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.ratelimit;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Resolves request paths to rate limited endpoint ids.
+ *
+ * Routes are compiled at startup into a trie of path segments, with the HTTP
+ * method index at each leaf, so a lookup is a single scan of the path that
+ * allocates nothing. Any path or method without a route maps to
+ * {@link #DEFAULT_ENDPOINT}, so the number of distinct endpoints stays bounded
+ * however many different paths clients send.
+ */
+@Component
+public class RouteTable {
+
+    public static final int DEFAULT_ENDPOINT = 0;
+    public static final int GET_USER_BY_ID = 1;
+    public static final int CREATE_USER = 2;
+    public static final int UPDATE_USER = 3;
+    public static final int DELETE_USER = 4;
+    public static final int LIST_USERS = 5;
+
+    // Indexed by endpoint id, also used in bucket keys
+    private static final String[] ENDPOINT_NAMES = {
+        "default", "getUserById", "createUser", "updateUser", "deleteUser", "listUsers"
+    };
+
+    public static final int ENDPOINT_COUNT = ENDPOINT_NAMES.length;
+
+    private static final int METHOD_COUNT = 8;
+    private static final String PARAMETER = "*";
+
+    private final Node root = new Node();
+
+    public RouteTable() {
+        add("GET", "/api/users", LIST_USERS);
+        add("POST", "/api/users", CREATE_USER);
+        add("GET", "/api/users/*", GET_USER_BY_ID);
+        add("PUT", "/api/users/*", UPDATE_USER);
+        add("DELETE", "/api/users/*", DELETE_USER);
+    }
+
+    /**
+     * Resolve the endpoint id for a request path and method
+     */
+    public int resolve(String path, String method) {
+        int methodIndex = methodIndex(method);
+        int length = path.length();
+        if (methodIndex < 0 || length < 2 || path.charAt(0) != '/') {
+            return DEFAULT_ENDPOINT;
+        }
+
+        Node node = root;
+        int start = 1;
+        for (;;) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end == start) {
+                return DEFAULT_ENDPOINT; // Empty segment, including a trailing slash
+            }
+            node = node.child(path, start, end - start);
+            if (node == null) {
+                return DEFAULT_ENDPOINT;
+            }
+            if (end == length) {
+                return node.endpoints[methodIndex];
+            }
+            start = end + 1;
+        }
+    }
+
+    public static String endpointName(int endpointId) {
+        return ENDPOINT_NAMES[endpointId];
+    }
+
+    /**
+     * Endpoint id for an endpoint name, ignoring case. Unknown names map to the default endpoint.
+     */
+    public static int endpointId(String endpointName) {
+        for (int id = 1; id < ENDPOINT_COUNT; id++) {
+            if (ENDPOINT_NAMES[id].equalsIgnoreCase(endpointName)) {
+                return id;
+            }
+        }
+        return DEFAULT_ENDPOINT;
+    }
+
+    private void add(String method, String pattern, int endpointId) {
+        Node node = root;
+        for (String segment : pattern.substring(1).split("/")) {
+            node = node.getOrAddChild(segment);
+        }
+        node.endpoints[methodIndex(method)] = endpointId;
+    }
+
+    private static int methodIndex(String method) {
+        return switch (method) {
+            case "GET" -> 0;
+            case "HEAD" -> 1;
+            case "POST" -> 2;
+            case "PUT" -> 3;
+            case "PATCH" -> 4;
+            case "DELETE" -> 5;
+            case "OPTIONS" -> 6;
+            case "TRACE" -> 7;
+            default -> -1;
+        };
+    }
+
+    private static final class Node {
+        private String[] literals = new String[0];
+        private Node[] literalChildren = new Node[0];
+        private Node parameterChild;
+        private final int[] endpoints = new int[METHOD_COUNT]; // DEFAULT_ENDPOINT unless routed
+
+        /**
+         * Child for the path segment at [offset, offset + length); literal segments win over parameters
+         */
+        Node child(String path, int offset, int length) {
+            for (int i = 0; i < literals.length; i++) {
+                String literal = literals[i];
+                if (literal.length() == length && path.regionMatches(offset, literal, 0, length)) {
+                    return literalChildren[i];
+                }
+            }
+            return parameterChild;
+        }
+
+        Node getOrAddChild(String segment) {
+            if (PARAMETER.equals(segment)) {
+                if (parameterChild == null) {
+                    parameterChild = new Node();
+                }
+                return parameterChild;
+            }
+            for (int i = 0; i < literals.length; i++) {
+                if (literals[i].equals(segment)) {
+                    return literalChildren[i];
+                }
+            }
+            Node child = new Node();
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+            literals[literals.length - 1] = segment;
+            literalChildren[literalChildren.length - 1] = child;
+            return child;
+        }
+    }
+}
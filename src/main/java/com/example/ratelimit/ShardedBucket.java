@@ -0,0 +1,144 @@
+package com.example.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * GCRA state shared by all clients, such as an endpoint or gateway tier, that
+ * spreads its permits over per-core stripes while it is hot.
+ *
+ * A plain shared state makes every event-loop thread compare-and-set the same
+ * cache line. Once the state sees {@code min-rate} requests per second, each
+ * thread takes permits from its own stripe instead, like a {@link java.util.concurrent.atomic.LongAdder}
+ * cell. A stripe that runs dry leases a small batch from the shared GCRA state,
+ * and when that has none left either, takes half of another stripe's permits, so
+ * permits parked on quiet threads are still used. Below half the rate, the stripes
+ * are drained back into the shared state.
+ *
+ * Leased permits have already left the shared state, so the sustained rate is
+ * exact. A burst right after a quiet period may exceed the capacity by the permits
+ * still parked in stripes, at most {@code stripes x batch}: about a quarter of the capacity.
+ */
+public class ShardedBucket {
+
+    private static final int STRIDE = 16; // Longs per stripe: 128 bytes, so stripes never share a cache line
+    private static final int TOKENS = 0;
+    private static final int REQUESTS = 1;
+    private static final long EVALUATION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final GcraRateLimiter limiter;
+    private final AtomicLong state = new AtomicLong();
+    private final AtomicLongArray stripes;
+    private final int stripeMask;
+    private final int batch;
+    private final boolean adaptive; // Switched by the request rate rather than fixed
+    private final double minRate; // Requests per second
+    private final AtomicLong evaluatedAt = new AtomicLong();
+    private volatile boolean sharded;
+
+    public ShardedBucket(GcraRateLimiter limiter, RateLimitConfig.ShardingConfig shardingConfig) {
+        int stripeCount = shardingConfig.getStripes() > 0 ? shardingConfig.getStripes()
+            : Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors() * 2 - 1, 1));
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Sharded bucket stripes must be a power of two");
+        }
+        this.limiter = limiter;
+        this.stripes = new AtomicLongArray(stripeCount * STRIDE);
+        this.stripeMask = stripeCount - 1;
+        this.batch = (int) Math.max(1, Math.min(limiter.capacity() / (4L * stripeCount), Integer.MAX_VALUE));
+        this.minRate = shardingConfig.getMinRate();
+        this.adaptive = shardingConfig.isEnabled() && minRate > 0;
+        this.sharded = shardingConfig.isEnabled() && minRate <= 0;
+    }
+
+    /**
+     * Take one permit: the remaining permits, or {@code -retryAfterNanos} when denied,
+     * as {@link GcraRateLimiter#acquire}
+     */
+    long acquire(long nowNanos) {
+        int stripe = stripe();
+        if (adaptive) {
+            stripes.getAndIncrement(stripe + REQUESTS);
+            long evaluated = evaluatedAt.get();
+            if (nowNanos - evaluated >= EVALUATION_NANOS && evaluatedAt.compareAndSet(evaluated, nowNanos)) {
+                evaluate(nowNanos - evaluated);
+            }
+        }
+        if (!sharded) {
+            return limiter.acquire(state, nowNanos);
+        }
+
+        long tokens;
+        while ((tokens = stripes.get(stripe + TOKENS)) > 0) {
+            if (stripes.compareAndSet(stripe + TOKENS, tokens, tokens - 1)) {
+                return tokens - 1 + limiter.remaining(state, nowNanos);
+            }
+        }
+        int leased = limiter.acquireUpTo(state, nowNanos, batch);
+        if (leased > 0) {
+            if (leased > 1) {
+                stripes.getAndAdd(stripe + TOKENS, leased - 1);
+            }
+            return leased - 1 + limiter.remaining(state, nowNanos);
+        }
+        for (int i = STRIDE; i < stripes.length(); i += STRIDE) {
+            int other = (stripe + i) & (stripes.length() - 1);
+            while ((tokens = stripes.get(other + TOKENS)) > 0) {
+                long stolen = (tokens + 1) / 2;
+                if (stripes.compareAndSet(other + TOKENS, tokens, tokens - stolen)) {
+                    if (stolen > 1) {
+                        stripes.getAndAdd(stripe + TOKENS, stolen - 1);
+                    }
+                    return stolen - 1 + limiter.remaining(state, nowNanos);
+                }
+            }
+        }
+        // Nothing left anywhere: the shared state's retry-after, unless it refilled meanwhile
+        return limiter.acquire(state, nowNanos);
+    }
+
+    /**
+     * Give back a permit taken by {@link #acquire}
+     */
+    void refund() {
+        if (sharded) {
+            stripes.getAndIncrement(stripe() + TOKENS);
+        } else {
+            limiter.refund(state);
+        }
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    private int stripe() {
+        // Event-loop threads are created together, so consecutive ids land on distinct stripes
+        return ((int) Thread.currentThread().threadId() & stripeMask) * STRIDE;
+    }
+
+    /**
+     * Switch on or off by the request rate since the last evaluation. Runs in one
+     * thread at a time, the one that won the evaluation.
+     */
+    private void evaluate(long elapsedNanos) {
+        long requests = 0;
+        for (int i = REQUESTS; i < stripes.length(); i += STRIDE) {
+            requests += stripes.getAndSet(i, 0);
+        }
+        double rate = requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        if (!sharded && rate >= minRate) {
+            sharded = true;
+        } else if (sharded && rate < minRate / 2) {
+            sharded = false;
+            // Permits move, never appear: whatever a racing refund leaves behind is only lost
+            for (int i = TOKENS; i < stripes.length(); i += STRIDE) {
+                long tokens = stripes.getAndSet(i, 0);
+                if (tokens > 0) {
+                    limiter.refund(state, tokens);
+                }
+            }
+        }
+    }
+}
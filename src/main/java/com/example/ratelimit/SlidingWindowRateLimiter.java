@@ -0,0 +1,88 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window approximated with two fixed-window counters.
+ *
+ * The request count over the last {@code refillPeriod} is estimated as the
+ * current window's count plus the previous window's count weighted by how
+ * much of it still overlaps the sliding window. Memory per key is constant.
+ *
+ * The state packs the window index (upper 24 bits), the previous window's
+ * count and the current window's count (20 bits each) into one {@code long}.
+ */
+public class SlidingWindowRateLimiter extends AtomicRateLimiter {
+
+    static final int COUNT_BITS = 20;
+    static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    static final long WINDOW_MASK = (1L << (64 - 2 * COUNT_BITS)) - 1;
+
+    private final long limit;
+    private final long windowNanos;
+
+    public SlidingWindowRateLimiter(RateLimitConfig.EndpointConfig endpointConfig) {
+        super(endpointConfig.getCapacity());
+        if (endpointConfig.getCapacity() > COUNT_MASK) {
+            throw new IllegalArgumentException("Sliding window capacity must not exceed " + COUNT_MASK);
+        }
+        this.limit = endpointConfig.getCapacity();
+        this.windowNanos = endpointConfig.getRefillPeriod().toNanos();
+    }
+
+    @Override
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(AtomicLong state, long nowNanos) {
+        long window = nowNanos / windowNanos;
+        long windowBits = window & WINDOW_MASK;
+        long elapsed = nowNanos - window * windowNanos;
+
+        for (;;) {
+            long current = state.get();
+            long stateWindow = current >>> (2 * COUNT_BITS);
+            long previous;
+            long count;
+            if (stateWindow == windowBits) {
+                previous = (current >>> COUNT_BITS) & COUNT_MASK;
+                count = current & COUNT_MASK;
+            } else if (stateWindow == ((window - 1) & WINDOW_MASK)) {
+                previous = current & COUNT_MASK;
+                count = 0;
+            } else {
+                previous = 0;
+                count = 0;
+            }
+
+            long estimate = weighted(previous, windowNanos - elapsed, windowNanos) + count;
+            if (estimate >= limit) {
+                return denied(retryAfter(limit, windowNanos, previous, count, elapsed));
+            }
+
+            long next = (windowBits << (2 * COUNT_BITS)) | (previous << COUNT_BITS) | (count + 1);
+            if (state.compareAndSet(current, next)) {
+                return allowed(limit - estimate - 1);
+            }
+        }
+    }
+
+    @Override
+    public long idleNanos() {
+        // After two windows the previous counter no longer contributes
+        return 2 * windowNanos;
+    }
+
+    static long weighted(long previous, long overlapNanos, long windowNanos) {
+        // Rounded up so the estimate never under-counts
+        return (long) Math.ceil(previous * ((double) overlapNanos / windowNanos));
+    }
+
+    static long retryAfter(long limit, long windowNanos, long previous, long count, long elapsed) {
+        if (count < limit && previous > 0) {
+            // Wait until the previous window's weight has decayed enough for one more request
+            long overlapAllowed = (long) ((double) (limit - 1 - count) / previous * windowNanos);
+            return windowNanos - overlapAllowed - elapsed;
+        }
+        return windowNanos - elapsed;
+    }
+}
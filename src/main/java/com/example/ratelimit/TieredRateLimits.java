@@ -0,0 +1,159 @@
+package com.example.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-memory tiers checked together with the client x endpoint bucket: per client
+ * across all endpoints, per endpoint across all clients, and gateway-wide.
+ *
+ * Every tier is a GCRA, so each is one compare-and-set and a permit can be
+ * handed back exactly. Tiers are taken in order and the endpoint bucket last;
+ * when any of them denies, the permits already taken are refunded, so a
+ * rejected request consumes nothing. Nothing is taken until the check is
+ * subscribed, and a check cancelled before its result refunds as well.
+ *
+ * Endpoint and gateway states are shared {@link ShardedBucket}s, so those
+ * tiers never touch the key store and split into per-core stripes when they
+ * get hot.
+ */
+public class TieredRateLimits {
+
+    /**
+     * Endpoint id of client tier keys, which span all endpoints
+     */
+    static final int ALL_ENDPOINTS = -1;
+
+    private final GcraRateLimiter clientTier;
+    private final LocalBucketStore<ClientKey, AtomicLong> clientStates;
+    private final ShardedBucket[] endpointTiers; // By endpoint id, null without a ceiling
+    private final ShardedBucket gatewayTier;
+
+    /**
+     * @param clusterSize nodes sharing the limits; each node enforces its share of every tier
+     */
+    public TieredRateLimits(RateLimitConfig.TiersConfig tiersConfig, int clusterSize,
+                            LocalBucketStore<ClientKey, AtomicLong> clientStates) {
+        this.clientTier = tier(tiersConfig.getClient(), clusterSize);
+        this.clientStates = clientStates;
+        this.endpointTiers = new ShardedBucket[RouteTable.ENDPOINT_COUNT];
+        for (Map.Entry<String, RateLimitConfig.EndpointConfig> entry : tiersConfig.getEndpoints().entrySet()) {
+            endpointTiers[endpointId(entry.getKey())] = sharedTier(entry.getValue(), clusterSize, tiersConfig.getSharding());
+        }
+        this.gatewayTier = sharedTier(tiersConfig.getGateway(), clusterSize, tiersConfig.getSharding());
+    }
+
+    /**
+     * Check all tiers for the key, then the endpoint bucket from {@code primary}. The
+     * result carries the lowest remaining count, or the retry-after of the denying tier.
+     */
+    public Mono<RateLimitService.RateLimitResult> tryAcquire(ClientKey key, long nowNanos,
+                                                             Supplier<Mono<RateLimitService.RateLimitResult>> primary) {
+        return Mono.defer(() -> acquire(key, nowNanos, primary));
+    }
+
+    private Mono<RateLimitService.RateLimitResult> acquire(ClientKey key, long nowNanos,
+                                                           Supplier<Mono<RateLimitService.RateLimitResult>> primary) {
+        long remaining = Long.MAX_VALUE;
+
+        AtomicLong clientState = null;
+        if (clientTier != null) {
+            clientState = clientStates.get(key.withEndpointId(ALL_ENDPOINTS), clientTier.idleNanos(),
+                k -> new AtomicLong());
+            long clientRemaining = clientTier.acquire(clientState, nowNanos);
+            if (clientRemaining < 0) {
+                return denied(-clientRemaining);
+            }
+            remaining = clientRemaining;
+        }
+
+        ShardedBucket endpointTier = endpointTiers[key.endpointId()];
+        if (endpointTier != null) {
+            long endpointRemaining = endpointTier.acquire(nowNanos);
+            if (endpointRemaining < 0) {
+                refund(clientTier, clientState);
+                return denied(-endpointRemaining);
+            }
+            remaining = Math.min(remaining, endpointRemaining);
+        }
+
+        if (gatewayTier != null) {
+            long gatewayRemaining = gatewayTier.acquire(nowNanos);
+            if (gatewayRemaining < 0) {
+                refund(clientTier, clientState);
+                refund(endpointTier);
+                return denied(-gatewayRemaining);
+            }
+            remaining = Math.min(remaining, gatewayRemaining);
+        }
+
+        // Refunded once: on a primary denial, or on a cancel that comes before the result
+        long tierRemaining = remaining;
+        AtomicLong takenClientState = clientState;
+        AtomicBoolean settled = new AtomicBoolean();
+        return primary.get()
+            .map(result -> {
+                if (!settled.compareAndSet(false, true)) {
+                    return result; // Cancelled and refunded already
+                }
+                if (!result.isAllowed()) {
+                    refundAll(takenClientState, endpointTier);
+                    return result;
+                }
+                if (result.getRemainingTokens() <= tierRemaining) {
+                    return result;
+                }
+                return new RateLimitService.RateLimitResult(true, tierRemaining, tierRemaining, Duration.ZERO);
+            })
+            .doOnCancel(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    refundAll(takenClientState, endpointTier);
+                }
+            });
+    }
+
+    private void refundAll(AtomicLong clientState, ShardedBucket endpointTier) {
+        refund(clientTier, clientState);
+        refund(endpointTier);
+        refund(gatewayTier);
+    }
+
+    static int endpointId(String endpointName) {
+        int id = RouteTable.endpointId(endpointName);
+        if (!RouteTable.endpointName(id).equalsIgnoreCase(endpointName)) {
+            throw new IllegalArgumentException("Unknown rate limited endpoint: " + endpointName);
+        }
+        return id;
+    }
+
+    private static GcraRateLimiter tier(RateLimitConfig.EndpointConfig tierConfig, int clusterSize) {
+        return tierConfig == null ? null : new GcraRateLimiter(RateLimitService.scaleToNode(tierConfig, clusterSize));
+    }
+
+    private static ShardedBucket sharedTier(RateLimitConfig.EndpointConfig tierConfig, int clusterSize,
+                                            RateLimitConfig.ShardingConfig shardingConfig) {
+        GcraRateLimiter tier = tier(tierConfig, clusterSize);
+        return tier == null ? null : new ShardedBucket(tier, shardingConfig);
+    }
+
+    private static void refund(GcraRateLimiter tier, AtomicLong state) {
+        if (tier != null) {
+            tier.refund(state);
+        }
+    }
+
+    private static void refund(ShardedBucket tier) {
+        if (tier != null) {
+            tier.refund();
+        }
+    }
+
+    private static Mono<RateLimitService.RateLimitResult> denied(long retryAfterNanos) {
+        return Mono.just(new RateLimitService.RateLimitResult(false, 0, 0, Duration.ofNanos(retryAfterNanos)));
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for micro-batching user lookups into BatchGetUsers calls
+ */
+@Configuration
+@ConfigurationProperties(prefix = "grpc.client.user-service.batch")
+public class UserBatchConfig {
+    
+    private boolean enabled = false; // The user service must implement BatchGetUsers
+    private int maxSize = 50;
+    private Duration window = Duration.ofMillis(1);
+    
+    // Getters and setters
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    
+    public int getMaxSize() { return maxSize; }
+    public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+    
+    public Duration getWindow() { return window; }
+    public void setWindow(Duration window) { this.window = window; }
+}
\ No newline at end of file
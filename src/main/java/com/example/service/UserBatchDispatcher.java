@@ -0,0 +1,177 @@
+package com.example.service;
+
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.grpc.BatchGetUsersRequest;
+import com.example.grpc.BatchGetUsersResponse;
+import com.example.grpc.GetUserResponse;
+import com.example.grpc.ReactorUserServiceGrpc;
+import com.example.metrics.CustomMetrics;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micro-batches user lookups into BatchGetUsers calls.
+ *
+ * Lookups arriving within the batch window, or until the batch is full, are
+ * sent as one call and its per-ID results, found or not, are fanned back to the
+ * waiting callers. Each batch takes one permit of the concurrency limit; when it
+ * is shed or fails, every lookup in it fails the same way. This trades up to one
+ * window of latency for far fewer calls under fan-in load.
+ *
+ * A lookup cancelled before its batch is sent is left out of it; the call of a
+ * batch whose lookups have all been cancelled is cancelled too.
+ */
+public class UserBatchDispatcher {
+
+    private final ReactorUserServiceGrpc.ReactorUserServiceStub userServiceStub;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final CustomMetrics customMetrics;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private final ConcurrentLinkedQueue<PendingLookup> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public UserBatchDispatcher(ReactorUserServiceGrpc.ReactorUserServiceStub userServiceStub,
+                               AdaptiveConcurrencyLimiter concurrencyLimiter,
+                               UserBatchConfig batchConfig, CustomMetrics customMetrics) {
+        if (batchConfig.getMaxSize() < 1) {
+            throw new IllegalArgumentException("User lookup batches need max-size >= 1");
+        }
+        this.userServiceStub = userServiceStub;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.customMetrics = customMetrics;
+        this.maxBatchSize = batchConfig.getMaxSize();
+        this.windowNanos = batchConfig.getWindow().toNanos();
+    }
+
+    public Mono<GetUserResponse> submit(String userId) {
+        return Mono.create(sink -> {
+            PendingLookup lookup = new PendingLookup(userId, sink);
+            sink.onCancel(() -> cancel(lookup));
+            enqueue(lookup);
+        });
+    }
+
+    private void enqueue(PendingLookup lookup) {
+        queue.offer(lookup);
+        int size = queued.incrementAndGet();
+        if (size >= maxBatchSize) {
+            flush();
+        } else if (size == 1) {
+            // First entry of a new batch starts the window
+            scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void cancel(PendingLookup lookup) {
+        if (lookup.state.compareAndSet(PendingLookup.QUEUED, PendingLookup.CANCELLED)) {
+            if (queue.remove(lookup)) {
+                queued.decrementAndGet();
+            } // Otherwise a flush has polled it and will skip it
+        } else if (lookup.state.get() == PendingLookup.SENT) {
+            lookup.batch.release();
+        }
+    }
+
+    private void flush() {
+        Batch batch = new Batch(maxBatchSize);
+        int polled = 0;
+        PendingLookup lookup;
+        while (batch.lookups.size() < maxBatchSize && (lookup = queue.poll()) != null) {
+            polled++;
+            batch.live.incrementAndGet();
+            lookup.batch = batch; // Published by the state change, for a cancel that sees SENT
+            if (lookup.state.compareAndSet(PendingLookup.QUEUED, PendingLookup.SENT)) {
+                batch.lookups.add(lookup);
+            } else {
+                batch.live.decrementAndGet(); // Cancelled while queued
+            }
+        }
+        if (polled == 0) {
+            return;
+        }
+        if (queued.addAndGet(-polled) > 0) {
+            // Entries left behind by a full batch get their own window
+            scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+        }
+        List<PendingLookup> lookups = batch.lookups;
+        if (lookups.isEmpty()) {
+            return;
+        }
+
+        BatchGetUsersRequest.Builder request = BatchGetUsersRequest.newBuilder();
+        lookups.forEach(pending -> request.addUserIds(pending.userId));
+        customMetrics.recordUserBatch(lookups.size());
+
+        batch.call = userServiceStub.batchGetUsers(request.build())
+            .transform(concurrencyLimiter::limit)
+            .defaultIfEmpty(BatchGetUsersResponse.getDefaultInstance()) // Fails every lookup as a short answer
+            .subscribe(
+                response -> demultiplex(lookups, response),
+                error -> lookups.forEach(pending -> pending.sink.error(error))
+            );
+        if (batch.live.get() == 0) {
+            batch.call.dispose(); // Every lookup was cancelled before the call was stored
+        }
+    }
+
+    private static void demultiplex(List<PendingLookup> batch, BatchGetUsersResponse response) {
+        if (response.getResultsCount() != batch.size()) {
+            IllegalStateException error = new IllegalStateException("BatchGetUsers answered "
+                + response.getResultsCount() + " results for " + batch.size() + " user IDs");
+            batch.forEach(pending -> pending.sink.error(error));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).sink.success(response.getResults(i));
+        }
+    }
+
+    private static final class PendingLookup {
+        static final int QUEUED = 0;
+        static final int SENT = 1;
+        static final int CANCELLED = 2;
+
+        final String userId;
+        final MonoSink<GetUserResponse> sink;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        volatile Batch batch; // Set before the lookup moves to SENT
+
+        PendingLookup(String userId, MonoSink<GetUserResponse> sink) {
+            this.userId = userId;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Lookups sent in one call, with how many of them still wait for it
+     */
+    private static final class Batch {
+        final List<PendingLookup> lookups;
+        final AtomicInteger live = new AtomicInteger();
+        volatile Disposable call;
+
+        Batch(int maxSize) {
+            this.lookups = new ArrayList<>(maxSize);
+        }
+
+        void release() {
+            if (live.decrementAndGet() == 0) {
+                Disposable current = call; // Null until stored; flush checks live again after storing it
+                if (current != null) {
+                    current.dispose();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.service;
+
+import com.example.dto.UserDto;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of users by ID.
+ *
+ * Backed by Caffeine, whose W-TinyLFU policy admits a new user only when it is
+ * requested more often than the entry it would evict, so a scan of one-off IDs
+ * does not flush the popular ones. Entries expire {@code ttl} after they were
+ * loaded or written; reads past {@code refresh-after} still get the cached user
+ * and reload it in the background. Users that are not found are not cached.
+ *
+ * Concurrent misses for one ID share a single load. {@link #put} and
+ * {@link #invalidate} replace or drop a load in flight as well, so its answer,
+ * which may predate a write, is never stored. A load runs while any reader waits
+ * for it; when the last one cancels, the load is cancelled too and dropped.
+ */
+public class UserCache {
+
+    private final AsyncLoadingCache<String, UserDto> cache; // null when disabled
+    private final Function<String, Mono<UserDto>> loader;
+    private final ConcurrentHashMap<CompletableFuture<UserDto>, Integer> readers = new ConcurrentHashMap<>(); // Of loads in flight
+
+    public UserCache(UserCacheConfig config, Function<String, Mono<UserDto>> loader) {
+        this(config, loader, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    UserCache(UserCacheConfig config, Function<String, Mono<UserDto>> loader, Ticker ticker, Executor executor) {
+        this.loader = loader;
+        if (!config.isEnabled()) {
+            this.cache = null;
+            return;
+        }
+        if (config.getMaxSize() < 1 || !config.getTtl().isPositive() || config.getRefreshAfter().isNegative()
+                || config.getRefreshAfter().compareTo(config.getTtl()) >= 0) {
+            throw new IllegalArgumentException("User cache needs max-size >= 1 and 0 <= refresh-after < ttl");
+        }
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterWrite(config.getTtl())
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats();
+        if (config.getRefreshAfter().isPositive()) {
+            builder.refreshAfterWrite(config.getRefreshAfter());
+        }
+        // An empty load completes with null, which Caffeine does not store
+        AsyncCacheLoader<String, UserDto> cacheLoader = (userId, loadExecutor) -> loader.apply(userId).toFuture();
+        this.cache = builder.buildAsync(cacheLoader);
+    }
+
+    /**
+     * The cached user, or the result of loading it. Cancelling leaves the load
+     * running for other readers, and cancels it when no reader is left.
+     */
+    public Mono<UserDto> get(String userId) {
+        if (cache == null) {
+            return loader.apply(userId);
+        }
+        return Mono.defer(() -> {
+            for (;;) {
+                CompletableFuture<UserDto> load = cache.get(userId);
+                if (load.isDone()) {
+                    return Mono.fromFuture(load, true);
+                }
+                if (attach(load)) {
+                    return Mono.fromFuture(load, true).doFinally(signal -> detach(load, signal));
+                }
+                if (!load.isCancelled()) {
+                    return Mono.fromFuture(load, true); // Completed meanwhile
+                }
+                // Cancelled by its last reader, which also dropped it from the cache; load again
+            }
+        });
+    }
+
+    /**
+     * Count a reader of a load, unless the load is over
+     */
+    private boolean attach(CompletableFuture<UserDto> load) {
+        boolean[] attached = { false };
+        readers.compute(load, (future, count) -> {
+            if (future.isDone()) {
+                return count;
+            }
+            attached[0] = true;
+            return count == null ? 1 : count + 1;
+        });
+        return attached[0];
+    }
+
+    private void detach(CompletableFuture<UserDto> load, SignalType signal) {
+        readers.compute(load, (future, count) -> {
+            if (count != null && count > 1) {
+                return count - 1;
+            }
+            if (signal == SignalType.CANCEL) {
+                // Under the map lock, so no reader can attach between the last one leaving
+                // and the cancel; cancelling the load's future cancels its Mono too
+                future.cancel(false);
+            }
+            return null;
+        });
+    }
+
+    public void put(String userId, UserDto user) {
+        if (cache != null) {
+            cache.put(userId, CompletableFuture.completedFuture(user));
+        }
+    }
+
+    public void invalidate(String userId) {
+        if (cache != null) {
+            cache.synchronous().invalidate(userId);
+        }
+    }
+
+    /**
+     * The underlying cache for metrics, null when disabled
+     */
+    public AsyncLoadingCache<String, UserDto> cache() {
+        return cache;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for the in-process user cache in front of GetUser
+ */
+@Configuration
+@ConfigurationProperties(prefix = "grpc.client.user-service.cache")
+public class UserCacheConfig {
+    
+    private boolean enabled = false; // Other gateway nodes and direct writes are only seen after ttl
+    private long maxSize = 10_000;
+    private Duration ttl = Duration.ofSeconds(60); // Bounds staleness from writes through other nodes or bypassing the gateway
+    private Duration refreshAfter = Duration.ofSeconds(30); // Reads past this reload in the background; 0 = never
+    
+    // Getters and setters
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    
+    public long getMaxSize() { return maxSize; }
+    public void setMaxSize(long maxSize) { this.maxSize = maxSize; }
+    
+    public Duration getTtl() { return ttl; }
+    public void setTtl(Duration ttl) { this.ttl = ttl; }
+    
+    public Duration getRefreshAfter() { return refreshAfter; }
+    public void setRefreshAfter(Duration refreshAfter) { this.refreshAfter = refreshAfter; }
+}
\ No newline at end of file
@@ -1,8 +1,11 @@
 package com.example.service;
 
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.concurrency.SingleFlight;
 import com.example.dto.CreateUserRequest;
 import com.example.dto.UpdateUserRequest;
 import com.example.dto.UserDto;
+import com.example.exception.ConcurrencyLimitExceededException;
 import com.example.grpc.*;
 import com.example.mapper.UserMapper;
 import com.example.metrics.CustomMetrics;
@@ -14,8 +17,19 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.function.Function;
+
 /**
- * Service layer that handles business logic and calls gRPC services
+ * Service layer that handles business logic and calls gRPC services.
+ * Every call goes through the adaptive concurrency limit and is shed with
+ * {@link com.example.exception.ConcurrencyLimitExceededException} when the
+ * user service is saturated.
+ * Concurrent lookups of the same user share one call, which takes one permit;
+ * updates and deletes detach it so no read that starts after a write joins one
+ * from before it. With batching enabled, lookups of different users are sent
+ * together as BatchGetUsers calls, one permit per batch.
+ * Found users are kept in a {@link UserCache}. Creates and updates store the
+ * written user and deletes drop it before the write returns.
  */
 @Service
 public class UserGatewayService {
@@ -25,13 +39,30 @@ public class UserGatewayService {
     private final ReactorUserServiceGrpc.ReactorUserServiceStub userServiceStub;
     private final UserMapper userMapper;
     private final CustomMetrics customMetrics;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final SingleFlight<String, UserDto> userLookups = new SingleFlight<>();
+    private final UserBatchDispatcher batchDispatcher; // null when batching is disabled
+    private final UserCache userCache;
     
     public UserGatewayService(ReactorUserServiceGrpc.ReactorUserServiceStub userServiceStub, 
                              UserMapper userMapper,
-                             CustomMetrics customMetrics) {
+                             CustomMetrics customMetrics,
+                             AdaptiveConcurrencyLimiter concurrencyLimiter,
+                             UserBatchConfig batchConfig,
+                             UserCacheConfig cacheConfig) {
         this.userServiceStub = userServiceStub;
         this.userMapper = userMapper;
         this.customMetrics = customMetrics;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.batchDispatcher = batchConfig.isEnabled()
+                ? new UserBatchDispatcher(userServiceStub, concurrencyLimiter, batchConfig, customMetrics)
+                : null;
+        this.userCache = new UserCache(cacheConfig,
+                userId -> userLookups.execute(userId, () -> fetchUser(userId)));
+        customMetrics.bindSingleFlight("get-user", userLookups);
+        if (userCache.cache() != null) {
+            customMetrics.bindUserCache(userCache.cache());
+        }
     }
     
     /**
@@ -41,13 +72,13 @@ public class UserGatewayService {
     public Mono<UserDto> getUserById(String userId) {
         logger.info("Getting user by ID: {}", userId);
         
+        return userCache.get(userId);
+    }
+    
+    private Mono<UserDto> fetchUser(String userId) {
         Timer.Sample sample = customMetrics.startGrpcTimer();
         
-        GetUserRequest request = GetUserRequest.newBuilder()
-                .setUserId(userId)
-                .build();
-        
-        return userServiceStub.getUser(request)
+        return lookUp(userId)
                 .doOnNext(response -> {
                     logger.debug("Received gRPC response: {}", response);
                     customMetrics.stopGrpcTimer(sample);
@@ -55,13 +86,31 @@ public class UserGatewayService {
                 .filter(GetUserResponse::getFound)
                 .map(GetUserResponse::getUser)
                 .map(userMapper::toDto)
-                .doOnError(error -> {
+                // A shed lookup never reached the service
+                .doOnError(error -> !(error instanceof ConcurrencyLimitExceededException), error -> {
                     logger.error("Error getting user by ID: {}", userId, error);
                     customMetrics.incrementGrpcError();
                     customMetrics.stopGrpcTimer(sample);
                 });
     }
     
+    /**
+     * One GetUser call, or a place in the next BatchGetUsers call when batching;
+     * either way under the concurrency limit
+     */
+    private Mono<GetUserResponse> lookUp(String userId) {
+        if (batchDispatcher != null) {
+            return batchDispatcher.submit(userId);
+        }
+        
+        GetUserRequest request = GetUserRequest.newBuilder()
+                .setUserId(userId)
+                .build();
+        
+        return userServiceStub.getUser(request)
+                .transform(concurrencyLimiter::limit);
+    }
+    
     /**
      * Create a new user
      */
@@ -88,11 +137,13 @@ public class UserGatewayService {
                 .filter(com.example.grpc.CreateUserResponse::getSuccess)
                 .map(com.example.grpc.CreateUserResponse::getUser)
                 .map(userMapper::toDto)
+                .doOnNext(user -> userCache.put(user.id(), user))
                 .doOnError(error -> {
                     logger.error("Error creating user: {}", createRequest.name(), error);
                     customMetrics.incrementGrpcError();
                     customMetrics.stopGrpcTimer(sample);
-                });
+                })
+                .transform(concurrencyLimiter::limit);
     }
     
     /**
@@ -119,7 +170,9 @@ public class UserGatewayService {
                 .filter(com.example.grpc.UpdateUserResponse::getSuccess)
                 .map(com.example.grpc.UpdateUserResponse::getUser)
                 .map(userMapper::toDto)
-                .doOnError(error -> logger.error("Error updating user: {}", userId, error));
+                .doOnError(error -> logger.error("Error updating user: {}", userId, error))
+                .transform(concurrencyLimiter::limit)
+                .transform(write -> writeThrough(userId, write, user -> user));
     }
     
     /**
@@ -148,7 +201,36 @@ public class UserGatewayService {
                     logger.error("Error deleting user: {}", userId, error);
                     customMetrics.incrementGrpcError();
                     customMetrics.stopGrpcTimer(sample);
-                });
+                })
+                .transform(concurrencyLimiter::limit)
+                .transform(write -> writeThrough(userId, write, deleted -> null));
+    }
+    
+    /**
+     * Drop the cached user and detach any lookup in flight when the write starts.
+     * Before the write returns, store the user it wrote, or drop the user again if it
+     * wrote none, failed or was cancelled. Reads that start during the write may load
+     * the old user, but this replaces it, so no read after the write returns sees it.
+     */
+    private <T> Mono<T> writeThrough(String userId, Mono<T> write, Function<T, UserDto> written) {
+        return write
+                .doOnSubscribe(subscription -> forget(userId))
+                .doOnSuccess(result -> {
+                    UserDto user = result != null ? written.apply(result) : null;
+                    if (user != null) {
+                        userLookups.invalidate(userId);
+                        userCache.put(userId, user);
+                    } else {
+                        forget(userId);
+                    }
+                })
+                .doOnError(error -> forget(userId))
+                .doOnCancel(() -> forget(userId));
+    }
+    
+    private void forget(String userId) {
+        userLookups.invalidate(userId);
+        userCache.invalidate(userId);
     }
     
     /**
@@ -176,6 +258,7 @@ public class UserGatewayService {
                     logger.error("Error listing users", error);
                     customMetrics.incrementGrpcError();
                     customMetrics.stopGrpcTimer(sample);
-                });
+                })
+                .transform(concurrencyLimiter::limit);
     }
 }
\ No newline at end of file
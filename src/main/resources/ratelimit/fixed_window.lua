@@ -0,0 +1,29 @@
+-- Fixed window counter
+-- KEYS[1]: rate limit key, value is struct '>dd' (window index, count)
+-- ARGV[1]: limit per window
+-- ARGV[2]: unused (refill tokens)
+-- ARGV[3]: window length in microseconds
+-- Returns remaining permits (>= 0) when allowed, or -retryAfterMicros when denied
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local index = math.floor(now / window)
+local ends_in = (index + 1) * window - now
+
+local count = 0
+local state = redis.call('GET', KEYS[1])
+if state and #state == 16 then
+    local state_index, state_count = struct.unpack('>dd', state)
+    if state_index == index then
+        count = state_count
+    end
+end
+
+if count >= limit then
+    return -math.max(ends_in, 1)
+end
+
+redis.call('SET', KEYS[1], struct.pack('>dd', index, count + 1), 'PX', math.ceil(ends_in / 1000))
+return limit - count - 1
@@ -0,0 +1,28 @@
+-- Generic cell rate algorithm
+-- KEYS[1]: rate limit key, value is struct '>d' (theoretical arrival time)
+-- ARGV[1]: capacity (burst)
+-- ARGV[2]: tokens per refill period
+-- ARGV[3]: refill period in microseconds
+-- Returns remaining tokens (>= 0) when allowed, or -retryAfterMicros when denied
+local capacity = tonumber(ARGV[1])
+local emission_interval = tonumber(ARGV[3]) / tonumber(ARGV[2])
+local burst = emission_interval * capacity
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local tat = now
+local state = redis.call('GET', KEYS[1])
+if state and #state == 8 then
+    tat = math.max(struct.unpack('>d', state), now)
+end
+
+local new_tat = tat + emission_interval
+local backlog = new_tat - now
+if backlog > burst then
+    return -math.max(math.ceil(backlog - burst), 1)
+end
+
+-- The key expires when the backlog has drained, i.e. when it is equivalent to a missing one
+redis.call('SET', KEYS[1], struct.pack('>d', new_tat), 'PX', math.ceil(backlog / 1000) + 1)
+return math.floor((burst - backlog) / emission_interval + 1e-9)
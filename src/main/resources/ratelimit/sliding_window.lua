@@ -0,0 +1,40 @@
+-- Sliding window approximated with two fixed-window counters
+-- KEYS[1]: rate limit key, value is struct '>ddd' (window index, previous count, current count)
+-- ARGV[1]: limit per sliding window
+-- ARGV[2]: unused (refill tokens)
+-- ARGV[3]: window length in microseconds
+-- Returns remaining permits (>= 0) when allowed, or -retryAfterMicros when denied
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local index = math.floor(now / window)
+local elapsed = now - index * window
+
+local previous = 0
+local count = 0
+local state = redis.call('GET', KEYS[1])
+if state and #state == 24 then
+    local state_index, state_previous, state_count = struct.unpack('>ddd', state)
+    if state_index == index then
+        previous = state_previous
+        count = state_count
+    elseif state_index == index - 1 then
+        previous = state_count
+    end
+end
+
+local estimate = math.ceil(previous * (window - elapsed) / window) + count
+if estimate >= limit then
+    local retry_after = window - elapsed
+    if count < limit and previous > 0 then
+        retry_after = window - math.floor((limit - 1 - count) * window / previous) - elapsed
+    end
+    return -math.max(retry_after, 1)
+end
+
+-- Keep the key while the current window can still weigh into the next one
+redis.call('SET', KEYS[1], struct.pack('>ddd', index, previous, count + 1),
+    'PX', math.ceil((2 * window - elapsed) / 1000))
+return limit - estimate - 1
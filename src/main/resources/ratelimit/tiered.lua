@@ -0,0 +1,127 @@
+-- Multi-tier check: every tier is evaluated first and all are consumed only if all allow,
+-- so a request denied by one tier takes nothing from the others
+-- KEYS[i]: key of tier i
+-- ARGV[4i-3]: tier i algorithm (token_bucket, gcra, fixed_window or sliding_window)
+-- ARGV[4i-2]: capacity (limit per window for window algorithms)
+-- ARGV[4i-1]: tokens per refill period (unused by window algorithms)
+-- ARGV[4i]: refill period (window length) in microseconds
+-- Returns the lowest remaining count across tiers (>= 0) when allowed,
+-- or -retryAfterMicros of the longest denial
+-- Each algorithm matches its single-key script and returns remaining, new state and TTL in
+-- milliseconds, or -retryAfterMicros
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local function token_bucket(state, capacity, refill_tokens, period)
+    local tokens = capacity
+    local last_refill = now
+    if state and #state == 16 then
+        tokens, last_refill = struct.unpack('>dd', state)
+        local periods = math.floor((now - last_refill) / period)
+        if periods > 0 then
+            tokens = tokens + periods * refill_tokens
+            last_refill = last_refill + periods * period
+        end
+        -- Also caps tokens saved under a larger capacity before the limits were reloaded
+        tokens = math.min(capacity, tokens)
+    end
+    if tokens < 1 then
+        return -math.max(last_refill + period - now, 1)
+    end
+    tokens = tokens - 1
+    local time_to_full = math.ceil((capacity - tokens) / refill_tokens) * period
+    return tokens, struct.pack('>dd', tokens, last_refill),
+        math.ceil((last_refill + time_to_full - now) / 1000) + 1
+end
+
+local function gcra(state, capacity, refill_tokens, period)
+    local emission_interval = period / refill_tokens
+    local burst = emission_interval * capacity
+    local tat = now
+    if state and #state == 8 then
+        tat = math.max(struct.unpack('>d', state), now)
+    end
+    local new_tat = tat + emission_interval
+    local backlog = new_tat - now
+    if backlog > burst then
+        return -math.max(math.ceil(backlog - burst), 1)
+    end
+    return math.floor((burst - backlog) / emission_interval + 1e-9), struct.pack('>d', new_tat),
+        math.ceil(backlog / 1000) + 1
+end
+
+local function fixed_window(state, limit, _, window)
+    local index = math.floor(now / window)
+    local ends_in = (index + 1) * window - now
+    local count = 0
+    if state and #state == 16 then
+        local state_index, state_count = struct.unpack('>dd', state)
+        if state_index == index then
+            count = state_count
+        end
+    end
+    if count >= limit then
+        return -math.max(ends_in, 1)
+    end
+    return limit - count - 1, struct.pack('>dd', index, count + 1), math.ceil(ends_in / 1000)
+end
+
+local function sliding_window(state, limit, _, window)
+    local index = math.floor(now / window)
+    local elapsed = now - index * window
+    local previous = 0
+    local count = 0
+    if state and #state == 24 then
+        local state_index, state_previous, state_count = struct.unpack('>ddd', state)
+        if state_index == index then
+            previous = state_previous
+            count = state_count
+        elseif state_index == index - 1 then
+            previous = state_count
+        end
+    end
+    local estimate = math.ceil(previous * (window - elapsed) / window) + count
+    if estimate >= limit then
+        local retry_after = window - elapsed
+        if count < limit and previous > 0 then
+            retry_after = window - math.floor((limit - 1 - count) * window / previous) - elapsed
+        end
+        return -math.max(retry_after, 1)
+    end
+    return limit - estimate - 1, struct.pack('>ddd', index, previous, count + 1),
+        math.ceil((2 * window - elapsed) / 1000)
+end
+
+local algorithms = {
+    token_bucket = token_bucket,
+    gcra = gcra,
+    fixed_window = fixed_window,
+    sliding_window = sliding_window
+}
+
+local states = {}
+local ttls = {}
+local remaining = nil
+local retry_after = 0
+for i = 1, #KEYS do
+    local base = (i - 1) * 4
+    local result, state, ttl = algorithms[ARGV[base + 1]](redis.call('GET', KEYS[i]),
+        tonumber(ARGV[base + 2]), tonumber(ARGV[base + 3]), tonumber(ARGV[base + 4]))
+    if result < 0 then
+        retry_after = math.max(retry_after, -result)
+    else
+        states[i] = state
+        ttls[i] = ttl
+        if remaining == nil or result < remaining then
+            remaining = result
+        end
+    end
+end
+
+if retry_after > 0 then
+    return -retry_after
+end
+for i = 1, #KEYS do
+    redis.call('SET', KEYS[i], states[i], 'PX', ttls[i])
+end
+return remaining
@@ -0,0 +1,37 @@
+-- Token bucket with interval refill (same semantics as Bucket4j refillIntervally)
+-- KEYS[1]: rate limit key, value is struct '>dd' (tokens, last refill time)
+-- ARGV[1]: capacity
+-- ARGV[2]: tokens added per refill period
+-- ARGV[3]: refill period in microseconds
+-- Returns remaining tokens (>= 0) when allowed, or -retryAfterMicros when denied
+local capacity = tonumber(ARGV[1])
+local refill_tokens = tonumber(ARGV[2])
+local period = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local tokens = capacity
+local last_refill = now
+local state = redis.call('GET', KEYS[1])
+if state and #state == 16 then
+    tokens, last_refill = struct.unpack('>dd', state)
+    local periods = math.floor((now - last_refill) / period)
+    if periods > 0 then
+        tokens = tokens + periods * refill_tokens
+        last_refill = last_refill + periods * period
+    end
+    -- Also caps tokens saved under a larger capacity before the limits were reloaded
+    tokens = math.min(capacity, tokens)
+end
+
+if tokens < 1 then
+    return -math.max(last_refill + period - now, 1)
+end
+
+tokens = tokens - 1
+-- Once full again the key is equivalent to a missing one
+local time_to_full = math.ceil((capacity - tokens) / refill_tokens) * period
+redis.call('SET', KEYS[1], struct.pack('>dd', tokens, last_refill),
+    'PX', math.ceil((last_refill + time_to_full - now) / 1000) + 1)
+return tokens
@@ -0,0 +1,41 @@
+-- Token bucket lease for hybrid rate limiting (same state as token_bucket.lua)
+-- KEYS[1]: rate limit key, value is struct '>dd' (tokens, last refill time)
+-- ARGV[1]: capacity
+-- ARGV[2]: tokens added per refill period
+-- ARGV[3]: refill period in microseconds
+-- ARGV[4]: tokens requested for the new lease
+-- ARGV[5]: unused tokens returned from the previous lease
+-- Returns {granted, remaining} when at least one token is granted, or {0, retryAfterMicros}
+local capacity = tonumber(ARGV[1])
+local refill_tokens = tonumber(ARGV[2])
+local period = tonumber(ARGV[3])
+local requested = tonumber(ARGV[4])
+local returned = tonumber(ARGV[5])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local tokens = capacity
+local last_refill = now
+local state = redis.call('GET', KEYS[1])
+if state and #state == 16 then
+    tokens, last_refill = struct.unpack('>dd', state)
+    local periods = math.floor((now - last_refill) / period)
+    if periods > 0 then
+        tokens = math.min(capacity, tokens + periods * refill_tokens)
+        last_refill = last_refill + periods * period
+    end
+end
+tokens = math.min(capacity, tokens + returned)
+
+local granted = math.min(requested, math.floor(tokens))
+tokens = tokens - math.max(granted, 0)
+
+local time_to_full = math.ceil((capacity - tokens) / refill_tokens) * period
+redis.call('SET', KEYS[1], struct.pack('>dd', tokens, last_refill),
+    'PX', math.ceil((last_refill + time_to_full - now) / 1000) + 1)
+
+if granted < 1 then
+    return {0, math.max(last_refill + period - now, 1)}
+end
+return {granted, tokens}
@@ -0,0 +1,178 @@
+package com.example.concurrency;
+
+import com.example.exception.ConcurrencyLimitExceededException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for AdaptiveConcurrencyLimiter
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private final long[] now = {0};
+    private ConcurrencyLimitConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new ConcurrencyLimitConfig();
+        config.setEnabled(true);
+        config.setInitialLimit(20);
+        config.setMinLimit(10);
+        config.setMaxLimit(100);
+        config.setWindow(Duration.ofMillis(1));
+        config.setMinWindowSamples(10);
+    }
+
+    @Test
+    void shedsCallsAboveTheLimit() {
+        config.setInitialLimit(10);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(10, limiter.inFlight());
+        assertEquals(1, limiter.rejectedCalls());
+
+        limiter.release(SignalType.ON_COMPLETE, now[0]);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void shedCallIsNeverSubscribed() {
+        config.setInitialLimit(10);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+        }
+        AtomicInteger subscriptions = new AtomicInteger();
+
+        StepVerifier.create(limiter.limit(Mono.fromCallable(subscriptions::incrementAndGet)))
+            .expectError(ConcurrencyLimitExceededException.class)
+            .verify();
+
+        assertEquals(0, subscriptions.get());
+        assertEquals(10, limiter.inFlight());
+    }
+
+    @Test
+    void limitShrinksWhenLatencyRisesAboveBaseline() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        window(limiter, 10, 10); // Baseline of 10ms
+        int before = limiter.currentLimit();
+
+        for (int i = 0; i < 5; i++) {
+            window(limiter, 10, 50);
+        }
+        assertTrue(limiter.currentLimit() < before, "limit " + limiter.currentLimit());
+
+        for (int i = 0; i < 50; i++) {
+            window(limiter, 10, 50);
+        }
+        assertEquals(10, limiter.currentLimit());
+    }
+
+    @Test
+    void latencyWithinToleranceKeepsTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        window(limiter, 10, 10);
+        int before = limiter.currentLimit();
+
+        for (int i = 0; i < 20; i++) {
+            window(limiter, 10, 14); // Below 1.5x the baseline
+        }
+
+        assertTrue(limiter.currentLimit() >= before, "limit " + limiter.currentLimit());
+    }
+
+    @Test
+    void limitGrowsBackWhenLatencyRecovers() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        window(limiter, 10, 10);
+        for (int i = 0; i < 50; i++) {
+            window(limiter, 10, 50);
+        }
+        assertEquals(10, limiter.currentLimit());
+
+        for (int i = 0; i < 20; i++) {
+            window(limiter, limiter.currentLimit(), 10);
+        }
+
+        assertTrue(limiter.currentLimit() > 15, "limit " + limiter.currentLimit());
+    }
+
+    @Test
+    void limitDoesNotGrowWhileMostlyUnused() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        for (int i = 0; i < 20; i++) {
+            window(limiter, 2, 10);
+        }
+
+        assertEquals(20, limiter.currentLimit());
+    }
+
+    @Test
+    void cancelledCallsAreNotSampled() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        window(limiter, 10, 10);
+        int before = limiter.currentLimit();
+
+        for (int i = 0; i < 20; i++) {
+            long start = now[0];
+            for (int j = 0; j < 10; j++) {
+                limiter.tryAcquire();
+            }
+            now[0] += TimeUnit.MILLISECONDS.toNanos(500);
+            for (int j = 0; j < 10; j++) {
+                limiter.release(SignalType.CANCEL, start);
+            }
+        }
+
+        assertEquals(before, limiter.currentLimit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void disabledLimiterOnlyCountsCalls() {
+        config.setEnabled(false);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertEquals(50, limiter.inFlight());
+        assertEquals(0, limiter.rejectedCalls());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(config, () -> now[0]);
+    }
+
+    /**
+     * Run {@code concurrency} overlapping calls that all take {@code latencyMillis}
+     */
+    private void window(AdaptiveConcurrencyLimiter limiter, int concurrency, long latencyMillis) {
+        long start = now[0];
+        for (int i = 0; i < concurrency; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        now[0] += TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+        for (int i = 0; i < concurrency; i++) {
+            limiter.release(SignalType.ON_COMPLETE, start);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.concurrency;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight
+ */
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger cancels = new AtomicInteger();
+
+    private Mono<String> call(Sinks.One<String> result) {
+        return Mono.defer(() -> {
+            calls.incrementAndGet();
+            return result.asMono();
+        }).doOnCancel(cancels::incrementAndGet);
+    }
+
+    @Test
+    void testConcurrentCallersShareOneCall() {
+        Sinks.One<String> result = Sinks.one();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call(result)))
+            .then(() -> StepVerifier.create(singleFlight.execute("1", () -> call(result)))
+                .then(() -> result.tryEmitValue("user"))
+                .expectNext("user")
+                .verifyComplete())
+            .expectNext("user")
+            .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, cancels.get()); // Completed, not cancelled, so the call is sampled as finished
+        assertEquals(1, singleFlight.coalescedCalls());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testDifferentKeysAreNotCoalesced() {
+        Sinks.One<String> result = Sinks.one();
+
+        Disposable first = singleFlight.execute("1", () -> call(result)).subscribe();
+        Disposable second = singleFlight.execute("2", () -> call(result)).subscribe();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.coalescedCalls());
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void testErrorIsShared() {
+        Sinks.One<String> result = Sinks.one();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call(result)))
+            .then(() -> StepVerifier.create(singleFlight.execute("1", () -> call(result)))
+                .then(() -> result.tryEmitError(new IllegalStateException("unavailable")))
+                .expectError(IllegalStateException.class)
+                .verify())
+            .expectError(IllegalStateException.class)
+            .verify();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testCallIsCancelledOnlyWhenEveryCallerLeaves() {
+        Sinks.One<String> result = Sinks.one();
+        Disposable first = singleFlight.execute("1", () -> call(result)).subscribe();
+        Disposable second = singleFlight.execute("1", () -> call(result)).subscribe();
+
+        first.dispose();
+        assertEquals(0, cancels.get());
+
+        second.dispose();
+        assertEquals(1, cancels.get());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testCallerAfterAbandonedFlightStartsNewCall() {
+        singleFlight.execute("1", () -> call(Sinks.one())).subscribe().dispose();
+        Sinks.One<String> result = Sinks.one();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call(result)))
+            .then(() -> result.tryEmitValue("user"))
+            .expectNext("user")
+            .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.coalescedCalls());
+    }
+
+    @Test
+    void testCallerAfterInvalidateStartsNewCall() {
+        Sinks.One<String> before = Sinks.one();
+        Sinks.One<String> after = Sinks.one();
+
+        StepVerifier.create(singleFlight.execute("1", () -> call(before)))
+            .then(() -> {
+                singleFlight.invalidate("1");
+                StepVerifier.create(singleFlight.execute("1", () -> call(after)))
+                    .then(() -> after.tryEmitValue("new"))
+                    .expectNext("new")
+                    .verifyComplete();
+                before.tryEmitValue("old");
+            })
+            .expectNext("old")
+            .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.coalescedCalls());
+    }
+
+    @Test
+    void testFinishedFlightIsForgotten() {
+        StepVerifier.create(singleFlight.execute("1", () -> Mono.just("first")))
+            .expectNext("first")
+            .verifyComplete();
+
+        StepVerifier.create(singleFlight.execute("1", () -> Mono.just("second")))
+            .expectNext("second")
+            .verifyComplete();
+
+        assertEquals(0, singleFlight.coalescedCalls());
+    }
+}
@@ -65,7 +65,7 @@ public class IntegrationTestConfig {
     @Bean
     @Primary
     public RateLimitKeyResolver testRateLimitKeyResolver() {
-        return new RateLimitKeyResolver();
+        return new RateLimitKeyResolver(testRateLimitConfig());
     }
     
     @Bean
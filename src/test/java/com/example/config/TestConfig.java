@@ -53,6 +53,8 @@ public class TestConfig {
             new RateLimitService.RateLimitResult(true, 100, 100, java.time.Duration.ZERO);
         Mockito.when(mockService.isAllowed(Mockito.anyString(), Mockito.anyString()))
                .thenReturn(reactor.core.publisher.Mono.just(allowedResult));
+        Mockito.when(mockService.isAllowed(Mockito.any(com.example.ratelimit.ClientKey.class)))
+               .thenReturn(reactor.core.publisher.Mono.just(allowedResult));
         return mockService;
     }
     
@@ -4,6 +4,7 @@ import com.example.config.TestConfig;
 import com.example.dto.CreateUserRequest;
 import com.example.dto.UpdateUserRequest;
 import com.example.dto.UserDto;
+import com.example.exception.ConcurrencyLimitExceededException;
 import com.example.service.UserGatewayService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
@@ -75,6 +76,22 @@ class UserControllerTest {
                 .expectStatus().isNotFound();
     }
     
+    @Test
+    void testGetUserById_Shed() {
+        // Given
+        String userId = "1";
+        when(userGatewayService.getUserById(userId))
+                .thenReturn(Mono.error(new ConcurrencyLimitExceededException("user-service", 20)));
+        
+        // When & Then
+        webTestClient.get()
+                .uri("/api/users/{id}", userId)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals("Retry-After", "1");
+    }
+    
     @Test
     void testCreateUser_Success() {
         // Given
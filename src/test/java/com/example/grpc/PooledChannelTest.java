@@ -0,0 +1,179 @@
+package com.example.grpc;
+
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PooledChannel against a local gRPC server
+ */
+class PooledChannelTest {
+
+    private static final GetUserRequest REQUEST = GetUserRequest.newBuilder().setUserId("1").build();
+
+    private final HeldUserService service = new HeldUserService();
+    private Server server;
+    private PooledChannel pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = ServerBuilder.forPort(0).addService(service).build().start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        service.releaseAll();
+        if (pool != null) {
+            pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testCallsGoToLeastOutstandingConnection() throws InterruptedException {
+        pool = new PooledChannel(4, i -> channel(server.getPort()), 0);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        for (int i = 0; i < 8; i++) {
+            stub.getUser(REQUEST).subscribe();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(2, pool.outstanding(i));
+        }
+        await(() -> service.held.size() == 8);
+        service.releaseAll();
+        await(() -> totalOutstanding() == 0);
+    }
+
+    @Test
+    void testCallsBeyondEveryStreamLimitAreCountedAsSaturated() {
+        pool = new PooledChannel(2, i -> channel(server.getPort()), 1);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        stub.getUser(REQUEST).subscribe();
+        stub.getUser(REQUEST).subscribe();
+        assertEquals(0, pool.saturatedCalls());
+        stub.getUser(REQUEST).subscribe();
+
+        assertEquals(1, pool.saturatedCalls());
+    }
+
+    @Test
+    void testFailedConnectionIsSkipped() throws IOException, InterruptedException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        ManagedChannel broken = channel(closedPort);
+        pool = new PooledChannel(2, i -> i == 0 ? broken : channel(server.getPort()), 0);
+        await(() -> broken.getState(false) == ConnectivityState.TRANSIENT_FAILURE);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        for (int i = 0; i < 3; i++) {
+            stub.getUser(REQUEST).subscribe();
+        }
+
+        assertEquals(0, pool.outstanding(0));
+        assertEquals(3, pool.outstanding(1));
+    }
+
+    @Test
+    void testCompletedCallsAreNoLongerOutstanding() {
+        pool = new PooledChannel(2, i -> channel(server.getPort()), 0);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+        service.holding = false;
+
+        StepVerifier.create(stub.getUser(REQUEST))
+            .expectNextMatches(response -> !response.getFound())
+            .verifyComplete();
+
+        assertEquals(0, totalOutstanding());
+    }
+
+    @Test
+    void testAffinityWinsUntilItsConnectionIsFull() {
+        pool = new PooledChannel(4, i -> channel(server.getPort()), 2, () -> 2);
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        for (int i = 0; i < 3; i++) {
+            stub.getUser(REQUEST).subscribe();
+        }
+
+        assertEquals(2, pool.outstanding(2));
+        assertEquals(3, totalOutstanding());
+        assertEquals(0, pool.saturatedCalls());
+    }
+
+    @Test
+    void testRejectsEmptyPool() {
+        assertThrows(IllegalArgumentException.class, () -> new PooledChannel(0, i -> channel(server.getPort()), 0));
+    }
+
+    private static ManagedChannel channel(int port) {
+        return ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+    }
+
+    private int totalOutstanding() {
+        int total = 0;
+        for (int i = 0; i < pool.connections(); i++) {
+            total += pool.outstanding(i);
+        }
+        return total;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Answers getUser only when released, so calls stay outstanding
+     */
+    private static class HeldUserService extends UserServiceGrpc.UserServiceImplBase {
+
+        final BlockingQueue<StreamObserver<GetUserResponse>> held = new LinkedBlockingQueue<>();
+        volatile boolean holding = true;
+
+        @Override
+        public void getUser(GetUserRequest request, StreamObserver<GetUserResponse> responseObserver) {
+            if (holding) {
+                held.add(responseObserver);
+            } else {
+                respond(responseObserver);
+            }
+        }
+
+        void releaseAll() {
+            StreamObserver<GetUserResponse> responseObserver;
+            while ((responseObserver = held.poll()) != null) {
+                respond(responseObserver);
+            }
+        }
+
+        private static void respond(StreamObserver<GetUserResponse> responseObserver) {
+            responseObserver.onNext(GetUserResponse.newBuilder().setFound(false).build());
+            responseObserver.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.grpc;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.netty.resources.LoopResources;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SharedLoopChannels against a local gRPC server
+ */
+class SharedLoopChannelsTest {
+
+    private static final GetUserRequest REQUEST = GetUserRequest.newBuilder().setUserId("1").build();
+
+    private final LoopResources loops = LoopResources.create("shared-loops-test", 2, true);
+    private Server server;
+    private PooledChannel pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = ServerBuilder.forPort(0).addService(new MockUserServiceImpl()).build().start();
+        pool = SharedLoopChannels.create(loops, "localhost", server.getPort(), 0);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        loops.disposeLater().block();
+    }
+
+    @Test
+    void testOneConnectionPerEventLoop() {
+        assertEquals(2, pool.connections());
+    }
+
+    @Test
+    void testResponseIsHandledOnTheLoopThatStartedTheCall() throws Exception {
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        for (EventExecutor executor : loops.onServer(true)) {
+            EventLoop loop = (EventLoop) executor;
+            CompletableFuture<Boolean> onLoop = new CompletableFuture<>();
+            loop.execute(() -> stub.getUser(REQUEST)
+                .subscribe(response -> onLoop.complete(loop.inEventLoop()), onLoop::completeExceptionally));
+
+            assertTrue(onLoop.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testCallFromOutsideTheLoopsStillCompletes() {
+        ReactorUserServiceGrpc.ReactorUserServiceStub stub = ReactorUserServiceGrpc.newReactorStub(pool);
+
+        GetUserResponse response = stub.getUser(REQUEST).block();
+
+        assertNotNull(response);
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BucketSnapshot
+ */
+class BucketSnapshotTest {
+
+    private static final long NOW = 1_000_000_000_000L;
+    private static final long MINUTE = 60_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testFindsSavedStates() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        ClientKey ipv4 = ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.1");
+        ClientKey ipv6 = ClientKey.of(RouteTable.GET_USER_BY_ID, "2001:db8::1");
+        ClientKey user = ClientKey.ofName(RouteTable.CREATE_USER, "user-42");
+
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 3)) {
+            assertTrue(writer.add(ipv4, BucketSnapshot.TOKEN_BUCKET, RateLimitConfig.Strategy.TOKEN_BUCKET, 3, NOW + MINUTE));
+            assertTrue(writer.add(ipv6, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, NOW + 5, NOW + MINUTE));
+            assertTrue(writer.add(user, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.FIXED_WINDOW, 7, NOW + MINUTE));
+            writer.commit(NOW);
+        }
+        BucketSnapshot snapshot = BucketSnapshot.open(path, NOW + 1);
+
+        assertNotNull(snapshot);
+        assertEquals(3, snapshot.entryCount());
+        assertEquals(NOW, snapshot.writtenAt());
+        assertEquals(3, snapshot.find(ipv4, BucketSnapshot.TOKEN_BUCKET, RateLimitConfig.Strategy.TOKEN_BUCKET, NOW + 1));
+        assertEquals(NOW + 5, snapshot.find(ipv6, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, NOW + 1));
+        assertEquals(7, snapshot.find(user, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.FIXED_WINDOW, NOW + 1));
+    }
+
+    @Test
+    void testMissingMismatchedAndExpiredStatesAreNotFound() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        ClientKey key = ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.1");
+        ClientKey shortLived = ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.2");
+
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 2)) {
+            writer.add(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 42, NOW + MINUTE);
+            writer.add(shortLived, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 42, NOW + 10);
+            writer.commit(NOW);
+        }
+        BucketSnapshot snapshot = BucketSnapshot.open(path, NOW + 20);
+
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.3"), BucketSnapshot.ATOMIC,
+                RateLimitConfig.Strategy.GCRA, NOW + 20));
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(key.withEndpointId(RouteTable.LIST_USERS), BucketSnapshot.ATOMIC,
+                RateLimitConfig.Strategy.GCRA, NOW + 20));
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(key, BucketSnapshot.TOKEN_BUCKET, RateLimitConfig.Strategy.TOKEN_BUCKET, NOW + 20));
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.SLIDING_WINDOW, NOW + 20));
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(shortLived, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, NOW + 20));
+        assertEquals(BucketSnapshot.NOT_FOUND,
+            snapshot.find(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, NOW + MINUTE));
+        assertTrue(snapshot.isExpired(NOW + MINUTE));
+    }
+
+    @Test
+    void testOpenSkipsMissingAndFullyExpiredSnapshots() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        assertNull(BucketSnapshot.open(path, NOW));
+
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+            writer.add(ClientKey.of(0, "10.0.0.1"), BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + 10);
+            writer.commit(NOW);
+        }
+
+        assertNull(BucketSnapshot.open(path, NOW + 10));
+    }
+
+    @Test
+    void testOpenRejectsInvalidFiles() throws IOException {
+        Path garbage = dir.resolve("garbage.snapshot");
+        Files.write(garbage, new byte[64]);
+        assertThrows(IOException.class, () -> BucketSnapshot.open(garbage, NOW));
+
+        Path future = dir.resolve("future.snapshot");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(future, 1)) {
+            writer.add(ClientKey.of(0, "10.0.0.1"), BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + MINUTE);
+            writer.commit(NOW);
+        }
+        assertThrows(IOException.class, () -> BucketSnapshot.open(future, NOW - 1));
+    }
+
+    @Test
+    void testFullSlotTableIsInvalidNotEndless() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        ClientKey saved = ClientKey.of(0, "10.0.0.1");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 8)) {
+            writer.add(saved, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + MINUTE);
+            writer.commit(NOW);
+        }
+        // Mark every slot used without touching the header, as a corrupt or crafted file might
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(40);
+            channel.read(header, 0);
+            int slots = header.getInt(24);
+            for (int slot = 0; slot < slots; slot++) {
+                channel.write(ByteBuffer.wrap(new byte[] { BucketSnapshot.TOKEN_BUCKET }), 40 + slot * 40L);
+            }
+        }
+        BucketSnapshot snapshot = BucketSnapshot.open(path, NOW);
+
+        assertEquals(BucketSnapshot.NOT_FOUND, snapshot.find(ClientKey.of(0, "10.0.0.2"), BucketSnapshot.ATOMIC,
+            RateLimitConfig.Strategy.GCRA, NOW));
+        assertFalse(snapshot.isValid());
+        assertEquals(BucketSnapshot.NOT_FOUND, snapshot.find(saved, BucketSnapshot.ATOMIC,
+            RateLimitConfig.Strategy.GCRA, NOW));
+    }
+
+    @Test
+    void testCorruptSlotIsInvalidNotThrown() throws IOException {
+        ClientKey saved = ClientKey.ofName(RouteTable.GET_USER_BY_ID, "user-42");
+        // Position from the start of the slot (or of the names when negative), width, value
+        int[][] corruptions = {
+            { 1, 1, 99 },        // Strategy ordinal
+            { 2, 2, 999 },       // Endpoint id
+            { 4, 4, 1 << 20 },   // Name offset past the names
+            { -1, 2, 0xFFFF }    // Name length past the names
+        };
+        for (int i = 0; i < corruptions.length; i++) {
+            Path path = dir.resolve("buckets-" + i + ".snapshot");
+            try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+                writer.add(saved, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + MINUTE);
+                writer.commit(NOW);
+            }
+            corrupt(path, corruptions[i][0], corruptions[i][1], corruptions[i][2]);
+
+            BucketSnapshot found = BucketSnapshot.open(path, NOW);
+            assertEquals(BucketSnapshot.NOT_FOUND, found.find(saved, BucketSnapshot.ATOMIC,
+                RateLimitConfig.Strategy.GCRA, NOW));
+            assertFalse(found.isValid());
+
+            BucketSnapshot walked = BucketSnapshot.open(path, NOW);
+            List<ClientKey> visited = new ArrayList<>();
+            walked.forEach(NOW, (key, kind, strategy, state, expiresAt) -> visited.add(key));
+            assertTrue(visited.isEmpty());
+            assertFalse(walked.isValid());
+        }
+    }
+
+    /**
+     * Overwrite a field of the only used slot, or of the names when the position is negative
+     */
+    private static void corrupt(Path path, int position, int width, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(40);
+            channel.read(header, 0);
+            int slots = header.getInt(24);
+            long base = 40L + slots * 40L; // Names
+            if (position >= 0) {
+                ByteBuffer kind = ByteBuffer.allocate(1);
+                for (int slot = 0; slot < slots; slot++, kind.clear()) {
+                    channel.read(kind, 40 + slot * 40L);
+                    if (kind.get(0) != 0) {
+                        base = 40 + slot * 40L + position;
+                    }
+                }
+            }
+            ByteBuffer field = ByteBuffer.allocate(width);
+            switch (width) {
+                case 1 -> field.put(0, (byte) value);
+                case 2 -> field.putShort(0, (short) value);
+                default -> field.putInt(0, value);
+            }
+            channel.write(field, base);
+        }
+    }
+
+    @Test
+    void testUncommittedWriterLeavesPreviousSnapshot() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        ClientKey key = ClientKey.of(0, "10.0.0.1");
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+            writer.add(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + MINUTE);
+            writer.commit(NOW);
+        }
+
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 1)) {
+            writer.add(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 2, NOW + MINUTE);
+        }
+
+        assertEquals(1, BucketSnapshot.open(path, NOW).find(key, BucketSnapshot.ATOMIC,
+            RateLimitConfig.Strategy.GCRA, NOW));
+        assertFalse(Files.exists(dir.resolve("buckets.snapshot.tmp")));
+    }
+
+    @Test
+    void testManyKeysRoundTrip() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        int keys = 100_000;
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, keys)) {
+            for (int i = 0; i < keys; i++) {
+                ClientKey key = i % 2 == 0 ? ClientKey.ofIpv4(i % RouteTable.ENDPOINT_COUNT, i)
+                    : ClientKey.ofName(i % RouteTable.ENDPOINT_COUNT, "user-" + i);
+                assertTrue(writer.add(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, i + 1, NOW + MINUTE));
+            }
+            writer.commit(NOW);
+        }
+        BucketSnapshot snapshot = BucketSnapshot.open(path, NOW);
+
+        for (int i = 0; i < keys; i++) {
+            ClientKey key = i % 2 == 0 ? ClientKey.ofIpv4(i % RouteTable.ENDPOINT_COUNT, i)
+                : ClientKey.ofName(i % RouteTable.ENDPOINT_COUNT, "user-" + i);
+            assertEquals(i + 1, snapshot.find(key, BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, NOW));
+        }
+        List<ClientKey> visited = new ArrayList<>();
+        snapshot.forEach(NOW, (key, kind, strategy, state, expiresAt) -> visited.add(key));
+        assertEquals(keys, visited.size());
+    }
+
+    @Test
+    void testWriterStopsAtTableCapacity() throws IOException {
+        Path path = dir.resolve("buckets.snapshot");
+        int added = 0;
+        try (BucketSnapshot.Writer writer = new BucketSnapshot.Writer(path, 8)) {
+            for (int i = 0; i < 100; i++) {
+                if (writer.add(ClientKey.ofIpv4(0, i), BucketSnapshot.ATOMIC, RateLimitConfig.Strategy.GCRA, 1, NOW + MINUTE)) {
+                    added++;
+                }
+            }
+            writer.commit(NOW);
+        }
+
+        assertTrue(added >= 8 && added < 100, "added " + added);
+        assertEquals(added, BucketSnapshot.open(path, NOW).entryCount());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ClientKey
+ */
+class ClientKeyTest {
+
+    @Test
+    void testParsedAddressesMatchInetAddress() throws Exception {
+        String[] addresses = {
+            "192.168.1.100", "::1", "2001:db8::1", "fe80:0:0:0:0:0:0:1", "::ffff:10.0.0.1",
+            "1:2:3:4:5:6:1.2.3.4", "abcd:ef01:2345:6789:abcd:ef01:2345:6789"
+        };
+        for (String address : addresses) {
+            ClientKey parsed = ClientKey.parse(1, address, 0, address.length());
+            InetAddress expected = InetAddress.getByName(address);
+
+            assertEquals(ClientKey.of(1, expected), parsed, address);
+            assertEquals(expected.getHostAddress(), parsed.toString(), address);
+        }
+    }
+
+    @Test
+    void testParseIgnoresPortBracketsAndZone() {
+        assertEquals(ClientKey.of(0, "10.0.0.1"), parse("10.0.0.1:8080"));
+        assertEquals(ClientKey.of(0, "2001:db8::2"), parse("[2001:db8::2]:443"));
+        assertEquals(ClientKey.of(0, "fe80::1"), parse("fe80::1%eth0"));
+    }
+
+    @Test
+    void testRejectsMalformedAddresses() {
+        String[] malformed = {
+            "", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1.2.3.", "1:2", "1:::2", "1::2::3",
+            "1:2:3:4:5:6:7:8:9", "12345::", "1:", "unknown", "::1.2.3"
+        };
+        for (String text : malformed) {
+            assertNull(parse(text), text);
+        }
+    }
+
+    @Test
+    void testKeysIncludeEndpoint() {
+        assertNotEquals(ClientKey.of(1, "10.0.0.1"), ClientKey.of(2, "10.0.0.1"));
+        assertNotEquals(ClientKey.of(1, "test-key"), ClientKey.of(2, "test-key"));
+        assertEquals(ClientKey.of(1, "test-key"), ClientKey.ofName(1, "test-key"));
+    }
+
+    @Test
+    void testParsesSubrange() {
+        String header = "203.0.113.7, 10.0.0.1";
+
+        assertEquals(ClientKey.of(0, "10.0.0.1"), ClientKey.parse(0, header, 13, header.length()));
+    }
+
+    private static ClientKey parse(String text) {
+        return ClientKey.parse(0, text, 0, text.length());
+    }
+}
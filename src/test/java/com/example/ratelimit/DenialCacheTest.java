@@ -0,0 +1,71 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DenialCache
+ */
+class DenialCacheTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(100 * SECOND);
+    private final LocalBucketStore<ClientKey, AtomicLong> store =
+        new LocalBucketStore<>(100, SECOND, 16, now::get);
+    private final DenialCache cache = new DenialCache(store, now::get);
+    private final ClientKey key = ClientKey.of(RouteTable.GET_USER_BY_ID, "203.0.113.7");
+
+    @Test
+    void testRejectsUntilRetryAfter() {
+        cache.record(key, denied(Duration.ofSeconds(2)));
+
+        now.addAndGet(SECOND / 2);
+        RateLimitService.RateLimitResult cached = cache.get(key).block();
+        assertFalse(cached.isAllowed());
+        assertEquals(Duration.ofMillis(1500), cached.getRetryAfter());
+
+        now.addAndGet(3 * SECOND / 2);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void testAllowedResultsAreNotCached() {
+        cache.record(key, new RateLimitService.RateLimitResult(true, 4, -1, Duration.ZERO));
+
+        assertNull(cache.get(key));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testLookupsDoNotCreateEntries() {
+        assertNull(cache.get(key));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testDenialsAreScopedToKeyAndEndpoint() {
+        cache.record(key, denied(Duration.ofSeconds(2)));
+
+        assertNull(cache.get(ClientKey.of(RouteTable.GET_USER_BY_ID, "203.0.113.8")));
+        assertNull(cache.get(ClientKey.of(RouteTable.CREATE_USER, "203.0.113.7")));
+    }
+
+    @Test
+    void testLaterDenialExtendsWindow() {
+        cache.record(key, denied(Duration.ofSeconds(5)));
+        cache.record(key, denied(Duration.ofSeconds(1)));
+
+        now.addAndGet(2 * SECOND);
+        assertNotNull(cache.get(key));
+    }
+
+    private static RateLimitService.RateLimitResult denied(Duration retryAfter) {
+        return new RateLimitService.RateLimitResult(false, 0, -1, retryAfter);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.ratelimit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal RESP2 server standing in for Redis in tests. It speaks just enough of the
+ * protocol for a Lettuce connection and the rate limit scripts: every script call
+ * answers with a fixed number of remaining tokens.
+ *
+ * Commands are read as soon as they arrive and counted, while replies go out from a
+ * separate thread that can be paused or slowed down, like a Redis that hangs or lags.
+ */
+class FakeRedisServer implements AutoCloseable {
+
+    private static final byte[] POISON = new byte[0];
+
+    private final ServerSocket serverSocket;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger scriptCalls = new AtomicInteger();
+    private volatile CountDownLatch paused;
+    private volatile long delayNanos;
+    private volatile long remainingTokens = 100;
+
+    FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        daemon(this::accept, "fake-redis-accept");
+    }
+
+    String uri() {
+        return "redis://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Script calls received, including ones whose reply is still held back
+     */
+    int scriptCalls() {
+        return scriptCalls.get();
+    }
+
+    /**
+     * Hold every reply until {@link #resume()}
+     */
+    void pause() {
+        paused = new CountDownLatch(1);
+    }
+
+    void resume() {
+        CountDownLatch latch = paused;
+        paused = null;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Delay every reply by the given time
+     */
+    void setDelay(Duration delay) {
+        delayNanos = delay.toNanos();
+    }
+
+    void setRemainingTokens(long remainingTokens) {
+        this.remainingTokens = remainingTokens;
+    }
+
+    @Override
+    public void close() throws IOException {
+        resume();
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                BlockingQueue<byte[]> replies = new LinkedBlockingQueue<>();
+                daemon(() -> read(socket, replies), "fake-redis-read");
+                daemon(() -> write(socket, replies), "fake-redis-write");
+            } catch (IOException e) {
+                return; // Closed
+            }
+        }
+    }
+
+    private void read(Socket socket, BlockingQueue<byte[]> replies) {
+        try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            List<String> command;
+            while ((command = readCommand(in)) != null) {
+                replies.add(reply(command).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            // Connection closed
+        } finally {
+            replies.add(POISON);
+        }
+    }
+
+    private void write(Socket socket, BlockingQueue<byte[]> replies) {
+        try (OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                byte[] reply = replies.take();
+                if (reply == POISON) {
+                    return;
+                }
+                CountDownLatch latch = paused;
+                if (latch != null) {
+                    latch.await();
+                }
+                long delay = delayNanos;
+                if (delay > 0) {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                }
+                out.write(reply);
+                if (replies.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Connection closed
+        }
+    }
+
+    private String reply(List<String> command) {
+        return switch (command.get(0).toUpperCase()) {
+            // Refusing HELLO makes Lettuce fall back to RESP2
+            case "HELLO" -> "-ERR unknown command 'HELLO'\r\n";
+            case "PING" -> "+PONG\r\n";
+            case "SCRIPT" -> bulk(sha1(command.get(2)));
+            case "EVALSHA", "EVAL" -> {
+                scriptCalls.incrementAndGet();
+                yield ":" + remainingTokens + "\r\n";
+            }
+            default -> "+OK\r\n"; // CLIENT SETINFO, SELECT and the like
+        };
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        if (header.charAt(0) != '*') {
+            throw new IOException("Unsupported request: " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] argument = in.readNBytes(length + 2); // Including CRLF
+            command.add(new String(argument, 0, length, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String bulk(String value) {
+        return "$" + value.length() + "\r\n" + value + "\r\n";
+    }
+
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for FixedWindowRateLimiter
+ */
+class FixedWindowRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final FixedWindowRateLimiter limiter =
+        new FixedWindowRateLimiter(new RateLimitConfig.EndpointConfig(3, 3, Duration.ofSeconds(10)));
+
+    @Test
+    void testAllowsLimitPerWindow() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+
+        for (int i = 2; i >= 0; i--) {
+            RateLimitService.RateLimitResult result = limiter.tryAcquire(state, now).block();
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemainingTokens());
+        }
+
+        RateLimitService.RateLimitResult denied = limiter.tryAcquire(state, now + 4 * SECOND).block();
+        assertFalse(denied.isAllowed());
+        assertEquals(Duration.ofSeconds(6), denied.getRetryAfter());
+    }
+
+    @Test
+    void testCounterResetsInNextWindow() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(state, now).block();
+        }
+
+        RateLimitService.RateLimitResult result = limiter.tryAcquire(state, now + 10 * SECOND).block();
+        assertTrue(result.isAllowed());
+        assertEquals(2, result.getRemainingTokens());
+    }
+
+    @Test
+    void testRejectsCapacityThatDoesNotFitState() {
+        assertThrows(IllegalArgumentException.class, () -> new FixedWindowRateLimiter(
+            new RateLimitConfig.EndpointConfig(1 << 24, 1, Duration.ofSeconds(1))));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GcraRateLimiter
+ */
+class GcraRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final GcraRateLimiter limiter =
+        new GcraRateLimiter(new RateLimitConfig.EndpointConfig(5, 5, Duration.ofSeconds(5)));
+
+    @Test
+    void testAllowsBurstUpToCapacity() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+
+        for (int i = 4; i >= 0; i--) {
+            RateLimitService.RateLimitResult result = limiter.tryAcquire(state, now).block();
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemainingTokens());
+        }
+
+        RateLimitService.RateLimitResult denied = limiter.tryAcquire(state, now).block();
+        assertFalse(denied.isAllowed());
+        assertEquals(0, denied.getRemainingTokens());
+        assertEquals(Duration.ofSeconds(1), denied.getRetryAfter());
+    }
+
+    @Test
+    void testDeniedRequestDoesNotConsume() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(state, now).block();
+        }
+        long tat = state.get();
+
+        assertFalse(limiter.tryAcquire(state, now).block().isAllowed());
+        assertEquals(tat, state.get());
+    }
+
+    @Test
+    void testRefillsOneTokenPerEmissionInterval() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            limiter.tryAcquire(state, now).block();
+        }
+
+        assertTrue(limiter.tryAcquire(state, now + SECOND).block().isAllowed());
+        assertFalse(limiter.tryAcquire(state, now + SECOND).block().isAllowed());
+    }
+
+    @Test
+    void testAllowedResultsAreReused() {
+        AtomicLong first = new AtomicLong();
+        AtomicLong second = new AtomicLong();
+
+        assertSame(limiter.tryAcquire(first, SECOND), limiter.tryAcquire(second, SECOND));
+    }
+
+    @Test
+    void testConcurrentCallersNeverOverAdmit() throws Exception {
+        GcraRateLimiter hotLimiter =
+            new GcraRateLimiter(new RateLimitConfig.EndpointConfig(1000, 1000, Duration.ofHours(1)));
+        AtomicLong state = new AtomicLong();
+        long now = AtomicRateLimiter.monotonicNanos();
+        int threads = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < 100; i++) {
+                        if (hotLimiter.tryAcquire(state, now).block().isAllowed()) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> future : futures) {
+                total += future.get();
+            }
+            assertEquals(1000, total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
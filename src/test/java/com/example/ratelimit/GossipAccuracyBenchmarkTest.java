@@ -0,0 +1,151 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how far a gossiping cluster overshoots a shared limit as the gossip
+ * interval grows: three nodes on localhost each offer one key its full limit,
+ * so the cluster sees three times the limit. Peers hear of a request up to one
+ * interval late, so in every second the cluster may admit the limit plus
+ * (nodes - 1) x per-node rate x interval, and no more.
+ *
+ * Runs only when GOSSIP_BENCHMARK=true, for about a minute and a half, and
+ * prints the table in RATE_LIMITING.md.
+ */
+@EnabledIfEnvironmentVariable(named = "GOSSIP_BENCHMARK", matches = "true")
+class GossipAccuracyBenchmarkTest {
+
+    private static final int NODES = 3;
+    private static final int LIMIT = 100;
+    private static final RateLimitConfig.EndpointConfig LIMITS =
+        new RateLimitConfig.EndpointConfig(LIMIT, LIMIT, Duration.ofSeconds(1));
+    private static final int SECONDS = 12;
+    private static final long[] INTERVALS_MILLIS = { 20, 50, 100, 200, 500, 1000 };
+
+    /**
+     * Requests a node may admit per second above its share, for the window edge: a
+     * node's request at the very start of a second may land in either second
+     */
+    private static final int SLACK_PER_NODE = 1;
+
+    @Test
+    void compareGossipIntervals() throws Exception {
+        System.out.println("interval   mean/s   max/s   overshoot");
+        long[] isolated = run(Duration.ofHours(1), false);
+        print("isolated", isolated);
+        // Without gossip every node admits its own full limit, so the load really is over the limit
+        assertTrue(mean(isolated) > (NODES - 1) * LIMIT, "isolated nodes admitted " + mean(isolated) + "/s");
+
+        for (long interval : INTERVALS_MILLIS) {
+            long[] perSecond = run(Duration.ofMillis(interval), true);
+            print(interval + "ms", perSecond);
+            long bound = Math.min(NODES * LIMIT, LIMIT + (NODES - 1) * LIMIT * interval / 1000)
+                + NODES * SLACK_PER_NODE;
+            for (int second = 0; second < perSecond.length; second++) {
+                assertTrue(perSecond[second] <= bound, interval + "ms gossip admitted " + perSecond[second]
+                    + " in second " + second + ", bound " + bound);
+            }
+        }
+    }
+
+    private static double mean(long[] perSecond) {
+        long sum = 0;
+        for (long admitted : perSecond) {
+            sum += admitted;
+        }
+        return (double) sum / perSecond.length;
+    }
+
+    private static void print(String label, long[] perSecond) {
+        long max = 0;
+        for (long admitted : perSecond) {
+            max = Math.max(max, admitted);
+        }
+        double mean = mean(perSecond);
+        System.out.printf("%-10s %-8.1f %-7d %.0f%%%n", label, mean, max, 100 * (mean - LIMIT) / LIMIT);
+    }
+
+    /**
+     * @return requests the cluster admitted in each full second after the first
+     */
+    private static long[] run(Duration interval, boolean connected) throws IOException, InterruptedException {
+        List<GossipRateLimiter> nodes = new ArrayList<>();
+        try {
+            List<String> addresses = new ArrayList<>();
+            for (int i = 0; i < NODES; i++) {
+                RateLimitConfig.GossipConfig gossipConfig = new RateLimitConfig.GossipConfig();
+                gossipConfig.setBindAddress("127.0.0.1");
+                gossipConfig.setSharedSecret("benchmark-secret-of-16+-bytes");
+                gossipConfig.setPort(0);
+                gossipConfig.setNodeId("node-" + i);
+                gossipConfig.setInterval(interval);
+                GossipRateLimiter node = new GossipRateLimiter(gossipConfig,
+                    new LocalBucketStore<>(1000, Duration.ofSeconds(1).toNanos(), 64), id -> LIMITS);
+                nodes.add(node);
+                addresses.add("127.0.0.1:" + node.localAddress().getPort());
+            }
+            if (connected) {
+                nodes.forEach(node -> node.setPeers(addresses));
+            }
+
+            // Seconds are counted on the limiter's clock, so they line up with its windows
+            long windowNanos = LIMITS.getRefillPeriod().toNanos();
+            long firstSecond = AtomicRateLimiter.monotonicNanos() / windowNanos + 2;
+            AtomicLongArray admitted = new AtomicLongArray(SECONDS + 2);
+            ClientKey key = ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.1");
+            List<Thread> clients = new ArrayList<>();
+            for (GossipRateLimiter node : nodes) {
+                Thread client = new Thread(() -> offer(node, key, firstSecond, admitted));
+                client.start();
+                clients.add(client);
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+
+            long[] perSecond = new long[SECONDS];
+            for (int i = 0; i < SECONDS; i++) {
+                perSecond[i] = admitted.get(i + 1);
+            }
+            return perSecond;
+        } finally {
+            for (GossipRateLimiter node : nodes) {
+                node.close();
+            }
+        }
+    }
+
+    /**
+     * Offer the key LIMIT requests per second, evenly spaced, from one second before
+     * {@code firstSecond} until SECONDS after it
+     */
+    private static void offer(GossipRateLimiter node, ClientKey key, long firstSecond, AtomicLongArray admitted) {
+        long windowNanos = LIMITS.getRefillPeriod().toNanos();
+        long spacing = windowNanos / LIMIT;
+        long next = (firstSecond - 1) * windowNanos;
+        long end = (firstSecond + SECONDS) * windowNanos;
+        for (; next < end; next += spacing) {
+            long wait;
+            while ((wait = next - AtomicRateLimiter.monotonicNanos()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long now = AtomicRateLimiter.monotonicNanos();
+            if (node.tryAcquire(key, LIMITS, now).block().isAllowed()) {
+                int second = (int) (now / windowNanos - firstSecond + 1);
+                if (second >= 0 && second < admitted.length()) {
+                    admitted.incrementAndGet(second);
+                }
+            }
+        }
+    }
+}
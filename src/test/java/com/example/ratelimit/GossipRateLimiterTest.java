@@ -0,0 +1,204 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for GossipRateLimiter, with nodes gossiping over UDP on localhost
+ */
+class GossipRateLimiterTest {
+
+    // Windows far longer than a test, so no window boundary is crossed while it runs
+    private static final RateLimitConfig.EndpointConfig LIMITS =
+        new RateLimitConfig.EndpointConfig(5, 5, Duration.ofHours(1));
+    private static final ClientKey KEY = ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.1");
+
+    private final List<GossipRateLimiter> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (GossipRateLimiter node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    void testLimitsAloneLikeASlidingWindow() throws IOException {
+        GossipRateLimiter node = node(1);
+
+        for (int i = 4; i >= 0; i--) {
+            RateLimitService.RateLimitResult result = acquire(node, KEY);
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemainingTokens());
+        }
+        RateLimitService.RateLimitResult denied = acquire(node, KEY);
+
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfter().compareTo(Duration.ZERO) > 0);
+    }
+
+    @Test
+    void testPeersCountEachOthersRequests() throws Exception {
+        GossipRateLimiter a = node(1);
+        GossipRateLimiter b = node(1);
+        connect();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(acquire(a, KEY).isAllowed());
+        }
+        a.gossip();
+        awaitReceived(b, 1);
+
+        assertTrue(acquire(b, KEY).isAllowed());
+        assertTrue(acquire(b, KEY).isAllowed());
+        assertFalse(acquire(b, KEY).isAllowed());
+        assertTrue(acquire(b, ClientKey.of(RouteTable.GET_USER_BY_ID, "10.0.0.2")).isAllowed());
+    }
+
+    @Test
+    void testRepeatedPacketsAreCountedOnce() throws Exception {
+        GossipRateLimiter a = node(2);
+        GossipRateLimiter b = node(2);
+        connect();
+        ClientKey user = ClientKey.ofName(RouteTable.CREATE_USER, "user-42");
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(acquire(a, user).isAllowed());
+        }
+        for (int round = 0; round < 3; round++) {
+            a.gossip();
+        }
+        awaitReceived(b, 3);
+
+        assertTrue(acquire(b, user).isAllowed());
+        assertTrue(acquire(b, user).isAllowed());
+        assertFalse(acquire(b, user).isAllowed());
+    }
+
+    @Test
+    void testCountsOfAllPeersAddUp() throws Exception {
+        GossipRateLimiter a = node(1);
+        GossipRateLimiter b = node(1);
+        GossipRateLimiter c = node(1);
+        connect();
+
+        assertTrue(acquire(a, KEY).isAllowed());
+        assertTrue(acquire(b, KEY).isAllowed());
+        a.gossip();
+        b.gossip();
+        awaitReceived(c, 2);
+
+        assertEquals(2, acquire(c, KEY).getRemainingTokens());
+        assertEquals(2, c.activePeers());
+    }
+
+    @Test
+    void testOnlyChangedKeysAreSent() throws Exception {
+        GossipRateLimiter a = node(1);
+        GossipRateLimiter b = node(1);
+        a.setPeers(List.of("127.0.0.1:" + b.localAddress().getPort()));
+
+        a.gossip();
+        assertEquals(0, a.packetsSent());
+
+        acquire(a, KEY);
+        a.gossip(); // Changed in this round
+        a.gossip(); // Resent once
+        a.gossip(); // Nothing left to send
+
+        assertEquals(2, a.packetsSent());
+    }
+
+    @Test
+    void testPacketsFromUnlistedSendersAreDropped() throws Exception {
+        GossipRateLimiter a = node(1);
+        GossipRateLimiter b = node(1);
+        a.setPeers(List.of("127.0.0.1:" + b.localAddress().getPort())); // b does not list a
+
+        for (int i = 0; i < 5; i++) {
+            acquire(a, KEY);
+        }
+        a.gossip();
+        awaitRejected(b, 1);
+
+        assertEquals(0, b.packetsReceived());
+        assertTrue(acquire(b, KEY).isAllowed());
+    }
+
+    @Test
+    void testPacketsSignedWithAnotherSecretAreRejected() throws Exception {
+        GossipRateLimiter a = node(1, "another-secret-of-16+-bytes");
+        GossipRateLimiter b = node(1);
+        connect();
+
+        for (int i = 0; i < 5; i++) {
+            acquire(a, KEY);
+        }
+        a.gossip();
+        awaitRejected(b, 1);
+
+        assertEquals(0, b.packetsReceived());
+        assertTrue(acquire(b, KEY).isAllowed());
+    }
+
+    @Test
+    void testRequiresSharedSecret() {
+        assertThrows(IllegalArgumentException.class, () -> node(1, null));
+        assertThrows(IllegalArgumentException.class, () -> node(1, "too-short"));
+    }
+
+    private GossipRateLimiter node(int resendRounds) throws IOException {
+        return node(resendRounds, "test-secret-of-16+-bytes");
+    }
+
+    private GossipRateLimiter node(int resendRounds, String sharedSecret) throws IOException {
+        RateLimitConfig.GossipConfig gossipConfig = new RateLimitConfig.GossipConfig();
+        gossipConfig.setBindAddress("127.0.0.1");
+        gossipConfig.setPort(0);
+        gossipConfig.setSharedSecret(sharedSecret);
+        gossipConfig.setNodeId("node-" + nodes.size());
+        gossipConfig.setInterval(Duration.ofHours(1)); // Rounds only run when a test calls gossip()
+        gossipConfig.setResendRounds(resendRounds);
+        GossipRateLimiter node = new GossipRateLimiter(gossipConfig,
+            new LocalBucketStore<>(1000, Duration.ofSeconds(1).toNanos(), 64), id -> LIMITS);
+        nodes.add(node);
+        return node;
+    }
+
+    private void connect() throws IOException {
+        List<String> addresses = new ArrayList<>();
+        for (GossipRateLimiter node : nodes) {
+            addresses.add("127.0.0.1:" + node.localAddress().getPort());
+        }
+        for (GossipRateLimiter node : nodes) {
+            node.setPeers(addresses); // Each node skips its own packets
+        }
+    }
+
+    private static RateLimitService.RateLimitResult acquire(GossipRateLimiter node, ClientKey key) {
+        return node.tryAcquire(key, LIMITS, AtomicRateLimiter.monotonicNanos()).block();
+    }
+
+    private static void awaitReceived(GossipRateLimiter node, long packets) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (node.packetsReceived() < packets && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(packets, node.packetsReceived());
+    }
+
+    private static void awaitRejected(GossipRateLimiter node, long packets) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (node.packetsRejected() < packets && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(packets, node.packetsRejected());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HeavyHitterTracker
+ */
+class HeavyHitterTrackerTest {
+
+    private final AtomicLong clock = new AtomicLong(1);
+
+    private static RateLimitConfig.HotKeysConfig hotKeysConfig() {
+        RateLimitConfig.HotKeysConfig config = new RateLimitConfig.HotKeysConfig();
+        config.setTopK(5);
+        config.setStripes(4);
+        config.setSketchWidth(256);
+        config.setSketchDepth(4);
+        config.setDecayInterval(Duration.ofMinutes(1));
+        return config;
+    }
+
+    @Test
+    void testHotKeysRankAboveBackgroundTraffic() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(hotKeysConfig(), clock::get);
+
+        for (int i = 0; i < 2000; i++) {
+            tracker.record(ClientKey.ofIpv4(RouteTable.LIST_USERS, 0x0A000000 + i), true);
+        }
+        record(tracker, ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, 0xC0A80001), 500, 0);
+        record(tracker, ClientKey.ofIpv4(RouteTable.CREATE_USER, 0xC0A80002), 300, 0);
+        record(tracker, ClientKey.ofName(RouteTable.GET_USER_BY_ID, "user_42"), 200, 0);
+
+        List<HeavyHitterTracker.HotKey> top = tracker.topKeys(3);
+
+        assertEquals(3, top.size());
+        assertEquals("192.168.0.1", top.get(0).client());
+        assertEquals("getUserById", top.get(0).endpoint());
+        assertEquals("192.168.0.2", top.get(1).client());
+        assertEquals("createUser", top.get(1).endpoint());
+        assertEquals("user_42", top.get(2).client());
+        // Count-Min estimates never undercount, and collisions add little here
+        assertTrue(top.get(0).requests() >= 500 && top.get(0).requests() < 550);
+        assertTrue(top.get(2).requests() >= 200 && top.get(2).requests() < 250);
+    }
+
+    @Test
+    void testDenialRatio() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(hotKeysConfig(), clock::get);
+        ClientKey key = ClientKey.ofIpv4(RouteTable.DELETE_USER, 0x0A000001);
+
+        record(tracker, key, 20, 80);
+
+        HeavyHitterTracker.HotKey hotKey = tracker.topKeys(1).get(0);
+        assertEquals(100, hotKey.requests());
+        assertEquals(0.8, hotKey.denialRatio(), 1e-9);
+    }
+
+    @Test
+    void testCountsDecayOverTime() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(hotKeysConfig(), clock::get);
+        ClientKey oldKey = ClientKey.ofIpv4(RouteTable.LIST_USERS, 0x0A000001);
+        ClientKey newKey = ClientKey.ofIpv4(RouteTable.LIST_USERS, 0x0A000002);
+        record(tracker, oldKey, 400, 0);
+
+        // Two decay intervals later the old key counts a quarter
+        clock.addAndGet(Duration.ofMinutes(2).toNanos() + 1);
+        assertEquals(100, tracker.topKeys(1).get(0).requests());
+
+        record(tracker, newKey, 150, 0);
+        List<HeavyHitterTracker.HotKey> top = tracker.topKeys(2);
+        assertEquals("10.0.0.2", top.get(0).client());
+        assertEquals("10.0.0.1", top.get(1).client());
+    }
+
+    @Test
+    void testMemoryIsBoundedByStripesAndTopK() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(hotKeysConfig(), clock::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            tracker.record(ClientKey.ofIpv4(RouteTable.DEFAULT_ENDPOINT, i), i % 2 == 0);
+        }
+
+        assertTrue(tracker.topKeys(Integer.MAX_VALUE).size() <= 4 * 5);
+    }
+
+    @Test
+    void testDisabledTrackerRecordsNothing() {
+        RateLimitConfig.HotKeysConfig config = hotKeysConfig();
+        config.setEnabled(false);
+        HeavyHitterTracker tracker = new HeavyHitterTracker(config, clock::get);
+
+        tracker.record(ClientKey.ofIpv4(RouteTable.DEFAULT_ENDPOINT, 1), true);
+
+        assertTrue(tracker.topKeys(10).isEmpty());
+    }
+
+    private static void record(HeavyHitterTracker tracker, ClientKey key, int allowed, int denied) {
+        for (int i = 0; i < allowed; i++) {
+            tracker.record(key, true);
+        }
+        for (int i = 0; i < denied; i++) {
+            tracker.record(key, false);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the local side of LeasedRateLimiter
+ */
+class LeasedRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testTakeSpendsGrantedTokens() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+        assertEquals(-1, lease.take());
+
+        lease.grant(3, 50, SECOND, SECOND);
+
+        assertEquals(2, lease.take());
+        assertEquals(1, lease.take());
+        assertEquals(0, lease.take());
+        assertEquals(-1, lease.take());
+    }
+
+    @Test
+    void testFirstLeaseIsSingleToken() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+
+        assertEquals(1, lease.targetSize(SECOND, 0, SECOND, 100));
+    }
+
+    @Test
+    void testLeaseGrowsWithObservedRate() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+        lease.grant(20, 500, SECOND, SECOND);
+
+        // 20 tokens spent in 100ms is 200/s, so a one second lease wants 200
+        assertEquals(200, lease.targetSize(SECOND + SECOND / 10, 0, SECOND, 1000));
+    }
+
+    @Test
+    void testLeaseIsCappedAtMaximum() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+        lease.grant(20, 500, SECOND, SECOND);
+
+        assertEquals(100, lease.targetSize(SECOND + SECOND / 10, 0, SECOND, 100));
+    }
+
+    @Test
+    void testUnusedLeaseShrinksNextRequest() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+        lease.grant(20, 500, SECOND, SECOND);
+        assertEquals(200, lease.targetSize(SECOND + SECOND / 10, 0, SECOND, 1000));
+
+        // Nothing spent from the next lease halves the smoothed rate
+        lease.grant(200, 300, 2 * SECOND, SECOND);
+        assertEquals(100, lease.targetSize(3 * SECOND, 200, SECOND, 1000));
+    }
+
+    @Test
+    void testDeniedLeaseKeepsRetryHint() {
+        LeasedRateLimiter.Lease lease = new LeasedRateLimiter.Lease();
+
+        lease.grant(0, 250_000, SECOND, SECOND);
+
+        assertEquals(-1, lease.take());
+        assertEquals(1, lease.targetSize(2 * SECOND, 0, SECOND, 100));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LocalBucketStore
+ */
+class LocalBucketStoreTest {
+
+    private static final long TICK = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE = TimeUnit.SECONDS.toNanos(10);
+
+    private AtomicLong clock;
+    private LocalBucketStore<String, Object> store;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        store = new LocalBucketStore<>(3, TICK, 8, clock::get);
+    }
+
+    @Test
+    void testReturnsSameStateForKey() {
+        Object first = store.get("a", IDLE, k -> new Object());
+        Object second = store.get("a", IDLE, k -> new Object());
+
+        assertSame(first, second);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testForEachReportsRemainingIdleTime() {
+        Object a = store.get("a", IDLE, k -> new Object());
+        advance(3 * TICK);
+        store.get("b", IDLE, k -> new Object());
+        Map<String, Long> remaining = new HashMap<>();
+
+        store.forEach((key, value, idleNanos) -> {
+            remaining.put(key, idleNanos);
+            if (key.equals("a")) {
+                assertSame(a, value);
+            }
+        });
+
+        assertEquals(2, remaining.size());
+        assertEquals(IDLE - 2 * TICK, remaining.get("a"));
+        assertEquals(IDLE + TICK, remaining.get("b"));
+    }
+
+    @Test
+    void testIdleEntryExpires() {
+        Object first = store.get("a", IDLE, k -> new Object());
+
+        advance(IDLE + 2 * TICK);
+        store.expire();
+
+        assertEquals(0, store.size());
+        assertEquals(1, store.idleEvictions());
+        assertNotSame(first, store.get("a", IDLE, k -> new Object()));
+    }
+
+    @Test
+    void testTouchedEntrySurvivesExpiry() {
+        Object first = store.get("a", IDLE, k -> new Object());
+
+        // Keep touching the key across more than one wheel revolution
+        for (int i = 0; i < 30; i++) {
+            advance(TICK);
+            store.get("a", IDLE, k -> new Object());
+        }
+
+        assertSame(first, store.peek("a"));
+        assertEquals(0, store.idleEvictions());
+    }
+
+    @Test
+    void testTimeoutLongerThanWheelRevolution() {
+        long idle = TimeUnit.SECONDS.toNanos(20);
+        store.get("a", idle, k -> new Object());
+
+        advance(TimeUnit.SECONDS.toNanos(12));
+        store.expire();
+        assertEquals(1, store.size());
+
+        advance(TimeUnit.SECONDS.toNanos(10));
+        store.expire();
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testCapacityIsEnforced() {
+        for (int i = 0; i < 10; i++) {
+            store.get("key-" + i, IDLE, k -> new Object());
+        }
+
+        assertEquals(3, store.size());
+        assertEquals(7, store.capacityEvictions());
+        assertNotNull(store.peek("key-9"));
+    }
+
+    @Test
+    void testRemovalListenerSeesIdleAndCapacityEvictions() {
+        List<String> removed = new ArrayList<>();
+        LocalBucketStore<String, Object> listened =
+            new LocalBucketStore<>(1, TICK, 8, (key, value) -> removed.add(key), clock::get);
+
+        listened.get("a", IDLE, k -> new Object());
+        listened.get("b", IDLE, k -> new Object());
+        advance(IDLE + 2 * TICK);
+        listened.expire();
+
+        assertEquals(List.of("a", "b"), removed);
+    }
+
+    @Test
+    void testInsertAtCapacityDoesNotWaitForEviction() throws InterruptedException {
+        AtomicBoolean insertReturned = new AtomicBoolean();
+        AtomicReference<LocalBucketStore<String, Object>> listened = new AtomicReference<>();
+        listened.set(new LocalBucketStore<>(1, TICK, 8, (key, value) -> {
+            if (key.equals("a")) {
+                // Runs while the evicting caller holds the wheel
+                Thread insert = new Thread(() -> listened.get().get("c", IDLE, k -> new Object()));
+                insert.start();
+                try {
+                    insert.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                insertReturned.set(!insert.isAlive());
+            }
+        }, clock::get));
+
+        listened.get().get("a", IDLE, k -> new Object());
+        listened.get().get("b", IDLE, k -> new Object());
+
+        assertTrue(insertReturned.get());
+        assertEquals(1, listened.get().size());
+    }
+
+    private void advance(long nanos) {
+        clock.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Unit tests for RateLimitConfigWatcher
+ */
+@ExtendWith(MockitoExtension.class)
+class RateLimitConfigWatcherTest {
+
+    @Mock
+    private RateLimitService rateLimitService;
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private RateLimitConfig config;
+    private RateLimitConfigWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("rate-limits.yml");
+        config = new RateLimitConfig();
+        config.getReload().setFile(file.toString());
+        config.getReload().setPollInterval(Duration.ofHours(1)); // Only the first poll runs by itself
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAppliesListedEndpointsOnce() throws IOException {
+        Files.writeString(file, """
+            endpoints:
+              getUserById:
+                capacity: 200
+                refill-tokens: 100
+                refill-period: 1m
+              listUsers:
+                capacity: 20
+                refill-tokens: 20
+                refill-period: PT10S
+            """);
+        watcher = new RateLimitConfigWatcher(config, rateLimitService);
+
+        watcher.poll();
+        watcher.poll();
+
+        ArgumentCaptor<Map<String, RateLimitConfig.EndpointConfig>> applied = ArgumentCaptor.forClass(Map.class);
+        verify(rateLimitService, times(1)).updateLimits(applied.capture());
+        Map<String, RateLimitConfig.EndpointConfig> limits = applied.getValue();
+        assertEquals(List.of(200, 100, Duration.ofMinutes(1)), List.of(limits.get("getUserById").getCapacity(),
+            limits.get("getUserById").getRefillTokens(), limits.get("getUserById").getRefillPeriod()));
+        assertEquals(List.of(20, 20, Duration.ofSeconds(10)), List.of(limits.get("listUsers").getCapacity(),
+            limits.get("listUsers").getRefillTokens(), limits.get("listUsers").getRefillPeriod()));
+    }
+
+    @Test
+    void testRejectedFileIsSkippedUntilItChanges() throws IOException {
+        Files.writeString(file, """
+            endpoints:
+              unknownEndpoint:
+                capacity: 20
+                refill-tokens: 20
+                refill-period: PT10S
+            """);
+        doThrow(new IllegalArgumentException("Unknown rate limited endpoint: unknownEndpoint"))
+            .when(rateLimitService).updateLimits(anyMap());
+        watcher = new RateLimitConfigWatcher(config, rateLimitService);
+
+        watcher.poll();
+        watcher.poll();
+
+        verify(rateLimitService, times(1)).updateLimits(anyMap());
+    }
+
+    @Test
+    void testMissingFileChangesNothing() {
+        watcher = new RateLimitConfigWatcher(config, rateLimitService);
+
+        watcher.poll();
+
+        verifyNoInteractions(rateLimitService);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RateLimitKeyResolver
+ */
+class RateLimitKeyResolverTest {
+
+    @Test
+    void testForwardedHeadersTakenAsSentWithoutTrustedProxies() {
+        RateLimitKeyResolver resolver = new RateLimitKeyResolver(new RateLimitConfig());
+
+        ClientKey key = resolver.resolve(exchange("198.51.100.1", "203.0.113.7, 10.0.0.1", null), 1);
+
+        assertEquals(ClientKey.of(1, "203.0.113.7"), key);
+    }
+
+    @Test
+    void testFallsBackToRealIpThenRemoteAddress() {
+        RateLimitKeyResolver resolver = new RateLimitKeyResolver(new RateLimitConfig());
+
+        assertEquals(ClientKey.of(1, "203.0.113.9"), resolver.resolve(exchange("198.51.100.1", null, "203.0.113.9"), 1));
+        assertEquals(ClientKey.of(1, "198.51.100.1"), resolver.resolve(exchange("198.51.100.1", null, null), 1));
+    }
+
+    @Test
+    void testSkipsTrustedProxyHops() {
+        RateLimitKeyResolver resolver = resolver("10.0.0.0/8", "2001:db8::/32");
+
+        ClientKey key = resolver.resolve(exchange("10.0.0.2", "198.51.100.66, 203.0.113.7, 2001:db8::5, 10.1.2.3", null), 1);
+
+        assertEquals(ClientKey.of(1, "203.0.113.7"), key);
+    }
+
+    @Test
+    void testIgnoresForwardedHeadersFromUntrustedPeer() {
+        RateLimitKeyResolver resolver = resolver("10.0.0.0/8");
+
+        ClientKey key = resolver.resolve(exchange("198.51.100.1", "203.0.113.7", "203.0.113.8"), 1);
+
+        assertEquals(ClientKey.of(1, "198.51.100.1"), key);
+    }
+
+    @Test
+    void testAllTrustedHopsUsesLeftMost() {
+        RateLimitKeyResolver resolver = resolver("10.0.0.0/8");
+
+        ClientKey key = resolver.resolve(exchange("10.0.0.2", "10.9.9.9, 10.1.2.3", null), 1);
+
+        assertEquals(ClientKey.of(1, "10.9.9.9"), key);
+    }
+
+    @Test
+    void testRejectsInvalidTrustedProxy() {
+        assertThrows(IllegalArgumentException.class, () -> resolver("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> resolver("not-an-address"));
+    }
+
+    private static RateLimitKeyResolver resolver(String... trustedProxies) {
+        RateLimitConfig config = new RateLimitConfig();
+        config.setTrustedProxies(List.of(trustedProxies));
+        return new RateLimitKeyResolver(config);
+    }
+
+    private static MockServerWebExchange exchange(String remoteAddress, String forwardedFor, String realIp) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/users/1")
+            .remoteAddress(new InetSocketAddress(remoteAddress, 443));
+        if (forwardedFor != null) {
+            request.header("X-Forwarded-For", forwardedFor);
+        }
+        if (realIp != null) {
+            request.header("X-Real-IP", realIp);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
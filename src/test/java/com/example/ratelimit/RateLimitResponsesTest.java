@@ -0,0 +1,64 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RateLimitResponses
+ */
+class RateLimitResponsesTest {
+
+    private final AtomicLong epochSeconds = new AtomicLong(1_700_000_000L);
+    private final RateLimitResponses responses = new RateLimitResponses(epochSeconds::get);
+
+    private final RateLimitService.RateLimitResult denied =
+        new RateLimitService.RateLimitResult(false, 0, 3, Duration.ofSeconds(12));
+
+    @Test
+    void testWritesRejection() {
+        MockServerHttpResponse response = new MockServerHttpResponse();
+
+        responses.writeRateLimitExceeded(response, denied).block();
+
+        HttpHeaders headers = response.getHeaders();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, headers.getContentType());
+        assertEquals("12", headers.getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals("12", headers.getFirst(RateLimitResponses.RETRY_AFTER));
+        assertEquals("0", headers.getFirst(RateLimitResponses.REMAINING));
+        assertEquals("3", headers.getFirst(RateLimitResponses.AVAILABLE));
+
+        String body = response.getBodyAsString().block();
+        assertTrue(body.contains("\"error\": \"Rate limit exceeded\""));
+        assertTrue(body.contains("\"status\": 429"));
+        assertTrue(body.contains("\"timestamp\": \"2023-11-14T22:13:20Z\""));
+        assertEquals(body.length(), headers.getContentLength());
+    }
+
+    @Test
+    void testTimestampFollowsCoarseClock() {
+        MockServerHttpResponse first = new MockServerHttpResponse();
+        responses.writeRateLimitExceeded(first, denied).block();
+
+        epochSeconds.incrementAndGet();
+        MockServerHttpResponse second = new MockServerHttpResponse();
+        responses.writeRateLimitExceeded(second, denied).block();
+
+        assertTrue(first.getBodyAsString().block().contains("2023-11-14T22:13:20Z"));
+        assertTrue(second.getBodyAsString().block().contains("2023-11-14T22:13:21Z"));
+    }
+
+    @Test
+    void testHeaderValuesAreCached() {
+        assertSame(RateLimitResponses.number(59), RateLimitResponses.number(59));
+        assertEquals("100000", RateLimitResponses.number(100_000));
+    }
+}
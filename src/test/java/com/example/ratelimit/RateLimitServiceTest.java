@@ -1,13 +1,18 @@
 package com.example.ratelimit;
 
+import com.example.metrics.CustomMetrics;
 import io.lettuce.core.RedisClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.test.StepVerifier;
 
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
@@ -21,6 +26,7 @@ class RateLimitServiceTest {
     private RedisClient redisClient;
     
     private RateLimitConfig config;
+    private CustomMetrics customMetrics;
     private RateLimitService rateLimitService;
     
     @BeforeEach
@@ -37,14 +43,15 @@ class RateLimitServiceTest {
         getUserByIdConfig.setRefillPeriod(java.time.Duration.ofMinutes(1));
         config.setGetUserById(getUserByIdConfig);
         
-        rateLimitService = new RateLimitService(config, redisClient);
+        customMetrics = new CustomMetrics(new SimpleMeterRegistry());
+        rateLimitService = new RateLimitService(config, redisClient, customMetrics);
     }
     
     @Test
     void testRateLimitDisabled() {
         // Given
         config.setEnabled(false);
-        rateLimitService = new RateLimitService(config, redisClient);
+        rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
         
         // When & Then
         StepVerifier.create(rateLimitService.isAllowed("test-key", "getUserById"))
@@ -136,4 +143,209 @@ class RateLimitServiceTest {
                 .assertNext(result -> assertTrue(result.isAllowed()))
                 .verifyComplete();
     }
+    
+    @Test
+    void testGcraRateLimitExceeded() {
+        // Given
+        config.setStrategy(RateLimitConfig.Strategy.GCRA);
+        rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+        String key = "test-key-gcra";
+        
+        // When - make requests up to the limit
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+        }
+        
+        // Then - next request should be rate limited
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> {
+                    assertFalse(result.isAllowed());
+                    assertEquals(0, result.getRemainingTokens());
+                    assertTrue(result.getRetryAfter().toMillis() > 0);
+                })
+                .verifyComplete();
+    }
+    
+    @Test
+    void testSlidingWindowRateLimitExceeded() {
+        // Given
+        config.setStrategy(RateLimitConfig.Strategy.SLIDING_WINDOW);
+        rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+        String key = "test-key-sliding";
+        
+        // When - make requests up to the limit
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+        }
+        
+        // Then - next request should be rate limited
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertFalse(result.isAllowed()))
+                .verifyComplete();
+    }
+    
+    @Test
+    void testEndpointStrategyOverride() {
+        // Given - fixed window only for getUserById
+        config.getGetUserById().setStrategy(RateLimitConfig.Strategy.FIXED_WINDOW);
+        rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+        String key = "test-key-override";
+        
+        // When - make requests up to the limit
+        for (int i = 4; i >= 0; i--) {
+            long expectedRemaining = i;
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertEquals(expectedRemaining, result.getRemainingTokens()))
+                    .verifyComplete();
+        }
+        
+        // Then - next request should be rate limited until the window ends
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> {
+                    assertFalse(result.isAllowed());
+                    assertTrue(result.getRetryAfter().compareTo(java.time.Duration.ofMinutes(1)) <= 0);
+                })
+                .verifyComplete();
+    }
+    
+    @Test
+    void testInMemoryStateSurvivesRestart(@TempDir Path dir) {
+        for (RateLimitConfig.Strategy strategy : RateLimitConfig.Strategy.values()) {
+            // Given - a client that used up its limit before a restart
+            config.setStrategy(strategy);
+            config.getSnapshot().setEnabled(true);
+            config.getSnapshot().setPath(dir.resolve(strategy + ".snapshot").toString());
+            rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+            String key = "test-key-restart";
+            for (int i = 0; i < 5; i++) {
+                StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                        .assertNext(result -> assertTrue(result.isAllowed()))
+                        .verifyComplete();
+            }
+            
+            // When
+            rateLimitService.close();
+            RateLimitService restarted = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+            
+            // Then - the client is still limited, other clients are not
+            StepVerifier.create(restarted.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertFalse(result.isAllowed(), strategy + " state was not restored"))
+                    .verifyComplete();
+            StepVerifier.create(restarted.isAllowed("test-key-other", "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+            restarted.close();
+        }
+    }
+    
+    @Test
+    void testSnapshotNeedsExplicitPath() {
+        config.getSnapshot().setEnabled(true);
+        
+        assertThrows(IllegalArgumentException.class,
+                () -> new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry())));
+    }
+    
+    @Test
+    void testReloadedLimitsApplyToExistingBuckets() {
+        // Given - a client that used up its limit
+        String key = "test-key-reload";
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+        }
+        
+        // When
+        long generation = rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 10, 10, java.time.Duration.ofMinutes(1));
+        
+        // Then - the bucket takes the new limits but keeps its tokens, so it is not refilled
+        assertTrue(generation > 0);
+        assertEquals(10, rateLimitService.endpointConfig(RouteTable.GET_USER_BY_ID).getCapacity());
+        assertEquals(generation, rateLimitService.limitsGeneration(RouteTable.GET_USER_BY_ID));
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertFalse(result.isAllowed()))
+                .verifyComplete();
+        
+        // And unchanged limits keep their generation
+        assertEquals(generation,
+            rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 10, 10, java.time.Duration.ofMinutes(1)));
+    }
+    
+    @Test
+    void testLoweredLimitsCapExistingBuckets() {
+        // Given - a client with 4 of 5 tokens left
+        String key = "test-key-lowered";
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertEquals(4, result.getRemainingTokens()))
+                .verifyComplete();
+        
+        // When
+        rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 2, 2, java.time.Duration.ofMinutes(1));
+        
+        // Then - only the new capacity is left
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertEquals(1, result.getRemainingTokens()))
+                .verifyComplete();
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertTrue(result.isAllowed()))
+                .verifyComplete();
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertFalse(result.isAllowed()))
+                .verifyComplete();
+    }
+    
+    @Test
+    void testReloadedLimitsApplyToAtomicStates() {
+        // Given - a GCRA client that used up its limit
+        config.setStrategy(RateLimitConfig.Strategy.GCRA);
+        rateLimitService = new RateLimitService(config, redisClient, new CustomMetrics(new SimpleMeterRegistry()));
+        String key = "test-key-reload-gcra";
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+        }
+        
+        // When - the burst is doubled
+        rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 10, 5, java.time.Duration.ofMinutes(1));
+        
+        // Then - the same state allows the extra burst, and no more
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                    .assertNext(result -> assertTrue(result.isAllowed()))
+                    .verifyComplete();
+        }
+        StepVerifier.create(rateLimitService.isAllowed(key, "getUserById"))
+                .assertNext(result -> assertFalse(result.isAllowed()))
+                .verifyComplete();
+    }
+    
+    @Test
+    void testInvalidLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+            () -> rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 0, 5, java.time.Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> rateLimitService.updateLimits(RouteTable.GET_USER_BY_ID, 5, 5, java.time.Duration.ZERO));
+        assertEquals(5, rateLimitService.endpointConfig(RouteTable.GET_USER_BY_ID).getCapacity());
+    }
+    
+    @Test
+    void testInvalidEntryChangesNoEndpoint() {
+        java.util.Map<String, RateLimitConfig.EndpointConfig> limits = new java.util.LinkedHashMap<>();
+        limits.put("getUserById", new RateLimitConfig.EndpointConfig(200, 100, java.time.Duration.ofMinutes(1)));
+        limits.put("unknownEndpoint", new RateLimitConfig.EndpointConfig(20, 20, java.time.Duration.ofSeconds(10)));
+        
+        assertThrows(IllegalArgumentException.class, () -> rateLimitService.updateLimits(limits));
+        limits.remove("unknownEndpoint");
+        limits.put("listUsers", new RateLimitConfig.EndpointConfig(20, 0, java.time.Duration.ofSeconds(10)));
+        assertThrows(IllegalArgumentException.class, () -> rateLimitService.updateLimits(limits));
+        
+        assertEquals(5, rateLimitService.endpointConfig(RouteTable.GET_USER_BY_ID).getCapacity());
+        assertEquals(0, rateLimitService.limitsGeneration(RouteTable.GET_USER_BY_ID));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for RedisBatchDispatcher
+ */
+@ExtendWith(MockitoExtension.class)
+class RedisBatchDispatcherTest {
+
+    private static final String[] ARGS_A = { "10", "10", "60000000" };
+    private static final String[] ARGS_B = { "5", "1", "1000000" };
+
+    @Mock
+    private RedisAsyncCommands<String, String> commands;
+
+    @Mock
+    private CustomMetrics customMetrics;
+
+    private final List<String[]> sentKeys = new CopyOnWriteArrayList<>();
+    private final List<String[]> sentArgs = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Lenient: a rejected configuration never gets to the script
+        lenient().when(commands.digest(anyString())).thenReturn("batch-sha");
+        lenient().when(commands.scriptLoad(anyString())).thenReturn(completed("batch-sha"));
+    }
+
+    private RedisBatchDispatcher dispatcher(int maxSize, Duration window) {
+        RateLimitConfig.BatchConfig batchConfig = new RateLimitConfig.BatchConfig();
+        batchConfig.setEnabled(true);
+        batchConfig.setMaxSize(maxSize);
+        batchConfig.setWindow(window);
+        return new RedisBatchDispatcher(commands, "return 1", batchConfig, customMetrics);
+    }
+
+    /**
+     * Answer each call with the reply {@code 100 * call + position} for every key in it
+     */
+    private void answerPerKey() {
+        when(commands.<List<Long>>evalsha(eq("batch-sha"), eq(ScriptOutputType.MULTI), any(String[].class),
+                any(String[].class)))
+            .thenAnswer(record(keys -> {
+                List<Long> replies = new ArrayList<>();
+                for (int i = 0; i < keys.length; i++) {
+                    replies.add(100L * (sentKeys.size() - 1) + i);
+                }
+                return completed(replies);
+            }));
+    }
+
+    private Answer<RedisFuture<List<Long>>> record(Function<String[], RedisFuture<List<Long>>> reply) {
+        return invocation -> {
+            Object[] raw = invocation.getRawArguments();
+            sentKeys.add((String[]) raw[2]);
+            sentArgs.add((String[]) raw[3]);
+            return reply.apply((String[]) raw[2]);
+        };
+    }
+
+    private static <T> RedisFuture<T> completed(T value) {
+        CompletedRedisFuture<T> future = new CompletedRedisFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    private static <T> RedisFuture<T> failed(Throwable error) {
+        CompletedRedisFuture<T> future = new CompletedRedisFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    @Test
+    void testChecksWithinWindowShareOneCall() {
+        answerPerKey();
+        RedisBatchDispatcher dispatcher = dispatcher(10, Duration.ofMillis(20));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("a", ARGS_A), dispatcher.submit("b", ARGS_B),
+                dispatcher.submit("c", ARGS_A)))
+            .assertNext(replies -> {
+                assertEquals(0L, replies.getT1());
+                assertEquals(1L, replies.getT2());
+                assertEquals(2L, replies.getT3());
+            })
+            .verifyComplete();
+
+        assertEquals(1, sentKeys.size());
+        assertArrayEquals(new String[] { "a", "b", "c" }, sentKeys.get(0));
+        assertArrayEquals(new String[] { "10", "10", "60000000", "5", "1", "1000000", "10", "10", "60000000" },
+            sentArgs.get(0));
+        verify(customMetrics).recordRateLimitBatch(3);
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaitingForWindow() {
+        answerPerKey();
+        RedisBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("a", ARGS_A), dispatcher.submit("b", ARGS_A)))
+            .expectNextCount(1)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, sentKeys.size());
+    }
+
+    @Test
+    void testPartialBatchIsSentWhenWindowCloses() {
+        answerPerKey();
+        RedisBatchDispatcher dispatcher = dispatcher(10, Duration.ofMillis(20));
+
+        StepVerifier.create(dispatcher.submit("a", ARGS_A))
+            .expectNext(0L)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertArrayEquals(new String[] { "a" }, sentKeys.get(0));
+    }
+
+    @Test
+    void testChecksBeyondFullBatchGetTheirOwnCall() {
+        answerPerKey();
+        RedisBatchDispatcher dispatcher = dispatcher(2, Duration.ofMillis(20));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("a", ARGS_A), dispatcher.submit("b", ARGS_A),
+                dispatcher.submit("c", ARGS_A)))
+            .assertNext(replies -> {
+                assertEquals(0L, replies.getT1());
+                assertEquals(1L, replies.getT2());
+                assertEquals(100L, replies.getT3());
+            })
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, sentKeys.size());
+        assertArrayEquals(new String[] { "c" }, sentKeys.get(1));
+    }
+
+    @Test
+    void testShortAnswerFailsEveryCheck() {
+        when(commands.<List<Long>>evalsha(eq("batch-sha"), eq(ScriptOutputType.MULTI), any(String[].class),
+                any(String[].class)))
+            .thenAnswer(record(keys -> completed(List.of(1L))));
+        RedisBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("a", ARGS_A), dispatcher.submit("b", ARGS_A)))
+            .expectErrorMatches(error -> error instanceof IllegalStateException
+                && error.getMessage().contains("1 replies for 2"))
+            .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testFlushedScriptCacheFallsBackToEval() {
+        when(commands.<List<Long>>evalsha(eq("batch-sha"), eq(ScriptOutputType.MULTI), any(String[].class),
+                any(String[].class)))
+            .thenReturn(failed(new RedisNoScriptException("NOSCRIPT No matching script")));
+        when(commands.<List<Long>>eval(anyString(), eq(ScriptOutputType.MULTI), any(String[].class),
+                any(String[].class)))
+            .thenAnswer(record(keys -> completed(List.of(7L))));
+        RedisBatchDispatcher dispatcher = dispatcher(1, Duration.ofMinutes(1));
+
+        StepVerifier.create(dispatcher.submit("a", ARGS_A))
+            .expectNext(7L)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertArrayEquals(new String[] { "a" }, sentKeys.get(0));
+    }
+
+    @Test
+    void testCancelledCheckIsLeftOutOfBatch() {
+        answerPerKey();
+        RedisBatchDispatcher dispatcher = dispatcher(10, Duration.ofMillis(20));
+
+        dispatcher.submit("a", ARGS_A).subscribe().dispose();
+        StepVerifier.create(dispatcher.submit("b", ARGS_A))
+            .expectNext(0L)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, sentKeys.size());
+        assertArrayEquals(new String[] { "b" }, sentKeys.get(0));
+    }
+
+    @Test
+    void testRejectsEmptyBatches() {
+        assertThrows(IllegalArgumentException.class, () -> dispatcher(0, Duration.ofMillis(1)));
+    }
+
+    @Test
+    void testWrapRunsScriptOncePerKeyWithItsOwnArguments() {
+        String wrapped = RedisBatchDispatcher.wrap("return tonumber(ARGV[1])");
+
+        assertTrue(wrapped.startsWith("local function check(KEYS, ARGV)\nreturn tonumber(ARGV[1])\nend\n"));
+        assertTrue(wrapped.contains("for i = 1, #KEYS do"));
+        assertTrue(wrapped.contains("local offset = (i - 1) * 3"));
+        assertTrue(wrapped.contains("check({ KEYS[i] }, { ARGV[offset + 1], ARGV[offset + 2], ARGV[offset + 3] })"));
+        assertTrue(wrapped.endsWith("return results\n"));
+    }
+
+    /**
+     * Already completed future, as Lettuce hands back once a reply is in
+     */
+    private static final class CompletedRedisFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+        @Override
+        public String getError() {
+            return isCompletedExceptionally() ? "failed" : null;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            return isDone();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RedisCircuitBreaker
+ */
+class RedisCircuitBreakerTest {
+
+    private static RateLimitConfig.CircuitBreakerConfig breakerConfig() {
+        RateLimitConfig.CircuitBreakerConfig config = new RateLimitConfig.CircuitBreakerConfig();
+        config.setCallTimeout(Duration.ofMillis(100));
+        config.setSlowCallThreshold(Duration.ofMillis(40));
+        config.setFailureRateThreshold(0.5);
+        config.setMinimumCalls(4);
+        config.setProbeInterval(Duration.ofMillis(20));
+        return config;
+    }
+
+    @Test
+    void testFastCallsKeepBreakerClosed() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(breakerConfig(),
+            () -> CompletableFuture.completedFuture("PONG"));
+
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(breaker.protect(Mono.just(i)))
+                .expectNext(i)
+                .verifyComplete();
+        }
+
+        assertFalse(breaker.isOpen());
+        assertEquals(0, breaker.failedCalls());
+    }
+
+    @Test
+    void testFailuresBelowMinimumCallsDoNotTrip() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(breakerConfig(),
+            () -> CompletableFuture.completedFuture("PONG"));
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(breaker.protect(Mono.error(new IllegalStateException("down"))))
+                .verifyError(IllegalStateException.class);
+        }
+
+        assertFalse(breaker.isOpen());
+        assertEquals(3, breaker.failedCalls());
+    }
+
+    @Test
+    void testHungCallsTimeOutAndOpenBreaker() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(breakerConfig(),
+            () -> new CompletableFuture<>()); // Probes never answer either
+
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(breaker.protect(Mono.never()))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(1));
+        }
+
+        assertTrue(breaker.isOpen());
+        assertEquals(1, breaker.trips());
+    }
+
+    @Test
+    void testSlowCallsOpenBreaker() {
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(breakerConfig(),
+            () -> new CompletableFuture<>());
+
+        for (int i = 0; i < 4; i++) {
+            // Slower than the slow call threshold but within the call timeout, so the value still arrives
+            StepVerifier.create(breaker.protect(Mono.just(i).delayElement(Duration.ofMillis(60))))
+                .expectNext(i)
+                .verifyComplete();
+        }
+
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void testSuccessfulProbeClosesBreaker() {
+        AtomicBoolean redisUp = new AtomicBoolean(false);
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(breakerConfig(), () -> redisUp.get()
+            ? CompletableFuture.completedFuture("PONG")
+            : CompletableFuture.failedFuture(new IllegalStateException("down")));
+
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(breaker.protect(Mono.error(new IllegalStateException("down"))))
+                .verifyError(IllegalStateException.class);
+        }
+        assertTrue(breaker.isOpen());
+
+        // Failed probes keep it open
+        sleep(100);
+        assertTrue(breaker.isOpen());
+
+        redisUp.set(true);
+        assertTrue(await(() -> !breaker.isOpen()), "Breaker should close after a successful probe");
+        assertEquals(1, breaker.trips());
+    }
+
+    private static boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            sleep(10);
+        }
+        return true;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.ratelimit;
+
+import com.example.metrics.CustomMetrics;
+import io.lettuce.core.RedisClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests falling back to local buckets when Redis hangs or slows down, against a
+ * fake Redis whose replies can be paused and delayed
+ */
+class RedisFallbackTest {
+
+    private static final Duration FAST = Duration.ofSeconds(1);
+
+    private FakeRedisServer redis;
+    private RedisClient redisClient;
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitConfig config;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        redis = new FakeRedisServer();
+        redisClient = RedisClient.create(redis.uri());
+        meterRegistry = new SimpleMeterRegistry();
+
+        config = new RateLimitConfig();
+        config.setEnabled(true);
+        config.setUseRedis(true);
+        config.setRedisMode(RateLimitConfig.RedisMode.SCRIPT);
+        config.setDenialCacheEnabled(false);
+        config.setGetUserById(new RateLimitConfig.EndpointConfig(10, 10, Duration.ofMinutes(1)));
+
+        RateLimitConfig.CircuitBreakerConfig breakerConfig = config.getCircuitBreaker();
+        breakerConfig.setCallTimeout(Duration.ofMillis(200));
+        breakerConfig.setSlowCallThreshold(Duration.ofMillis(100));
+        breakerConfig.setFailureRateThreshold(0.5);
+        breakerConfig.setMinimumCalls(4);
+        breakerConfig.setProbeInterval(Duration.ofMillis(50));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        redis.resume();
+        redisClient.shutdown(Duration.ZERO, Duration.ofSeconds(1));
+        redis.close();
+    }
+
+    @Test
+    void testHealthyRedisServesChecks() {
+        RateLimitService service = createService();
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+                .assertNext(result -> assertEquals(100, result.getRemainingTokens()))
+                .expectComplete()
+                .verify(FAST);
+        }
+
+        assertEquals(3, redis.scriptCalls());
+        assertFalse(breakerOpen());
+    }
+
+    @Test
+    void testHungRedisFallsBackAndRecovers() {
+        RateLimitService service = createService();
+        redis.pause();
+
+        // Each check gives up after the call timeout instead of the client's command timeout
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+                .assertNext(result -> {
+                    assertTrue(result.isAllowed());
+                    assertNotEquals(100, result.getRemainingTokens());
+                })
+                .expectComplete()
+                .verify(FAST);
+        }
+        assertTrue(breakerOpen());
+
+        // While open, checks are local and Redis sees no more script calls
+        assertTrue(await(() -> redis.scriptCalls() == 4));
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofMillis(100));
+        }
+        assertEquals(4, redis.scriptCalls());
+
+        redis.resume();
+        assertTrue(await(() -> !breakerOpen()), "A fast probe should close the breaker");
+
+        StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+            .assertNext(result -> assertEquals(100, result.getRemainingTokens()))
+            .expectComplete()
+            .verify(FAST);
+        assertEquals(5, redis.scriptCalls());
+    }
+
+    @Test
+    void testSlowRedisOpensBreaker() {
+        RateLimitService service = createService();
+        redis.setDelay(Duration.ofMillis(150));
+
+        // Slow replies still arrive within the call timeout, but count against Redis
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+                .assertNext(result -> assertEquals(100, result.getRemainingTokens()))
+                .expectComplete()
+                .verify(FAST);
+        }
+
+        assertTrue(breakerOpen());
+        StepVerifier.create(service.isAllowed("10.0.0.1", "getUserById"))
+            .assertNext(result -> assertNotEquals(100, result.getRemainingTokens()))
+            .expectComplete()
+            .verify(Duration.ofMillis(100));
+        assertEquals(4, redis.scriptCalls());
+    }
+
+    @Test
+    void testFallbackEnforcesNodeShareOfLimit() {
+        config.getCircuitBreaker().setClusterSize(2);
+        config.getCircuitBreaker().setMinimumCalls(1);
+        RateLimitService service = createService();
+        redis.pause();
+
+        // Capacity 10 split over two nodes leaves 5 per node
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            RateLimitService.RateLimitResult result = service.isAllowed("10.0.0.1", "getUserById").block(FAST);
+            if (result.isAllowed()) {
+                allowed++;
+            }
+        }
+
+        assertTrue(breakerOpen());
+        assertEquals(5, allowed);
+    }
+
+    private RateLimitService createService() {
+        return new RateLimitService(config, redisClient, new CustomMetrics(meterRegistry));
+    }
+
+    private boolean breakerOpen() {
+        return meterRegistry.get("rate.limit.redis.circuit.open").gauge().value() == 1;
+    }
+
+    private static boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.ratelimit;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the Lua rate limit scripts against a real Redis and checks their allow and deny
+ * sequences, retry-after hints and key TTLs; the fake Redis of the other tests only
+ * answers canned replies.
+ *
+ * Needs a local Redis, e.g. {@code docker compose -f docker-compose.redis.yml up -d redis},
+ * and runs only when REDIS_TEST_URL is set (e.g. redis://localhost:6379).
+ */
+@EnabledIfEnvironmentVariable(named = "REDIS_TEST_URL", matches = ".+")
+class RedisScriptsTest {
+
+    private static final long SECOND_MICROS = TimeUnit.SECONDS.toMicros(1);
+    private static final long MINUTE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final long HOUR_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static RedisClient redisClient;
+    private static StatefulRedisConnection<String, String> connection;
+    private static RedisCommands<String, String> redis;
+
+    private String prefix;
+
+    @BeforeAll
+    static void connect() {
+        redisClient = RedisClient.create(System.getenv("REDIS_TEST_URL"));
+        connection = redisClient.connect();
+        redis = connection.sync();
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        prefix = "script-test:" + UUID.randomUUID() + ":";
+    }
+
+    @AfterEach
+    void tearDown() {
+        List<String> keys = redis.keys(prefix + "*");
+        if (!keys.isEmpty()) {
+            redis.del(keys.toArray(String[]::new));
+        }
+    }
+
+    private long check(String script, String key, long capacity, long refillTokens, long periodMicros) {
+        return redis.eval(load(script), ScriptOutputType.INTEGER, new String[] { prefix + key },
+            String.valueOf(capacity), String.valueOf(refillTokens), String.valueOf(periodMicros));
+    }
+
+    private static String load(String script) {
+        return RedisScriptRateLimiter.loadScript("ratelimit/" + script + ".lua");
+    }
+
+    private long pttl(String key) {
+        return redis.pttl(prefix + key);
+    }
+
+    /**
+     * Retry-after of a denial, which counts down from {@code fullMicros} while the test runs
+     */
+    private static void assertRetryAfter(long fullMicros, long reply) {
+        assertTrue(reply < 0, "expected a denial, got " + reply);
+        assertTrue(-reply <= fullMicros && -reply > fullMicros - SECOND_MICROS, "retry-after " + -reply);
+    }
+
+    @Test
+    void testTokenBucketDeniesWhenEmptyAndRefillsPerPeriod() throws InterruptedException {
+        assertEquals(1, check("token_bucket", "a", 2, 1, MINUTE_MICROS));
+        assertEquals(0, check("token_bucket", "a", 2, 1, MINUTE_MICROS));
+        assertRetryAfter(MINUTE_MICROS, check("token_bucket", "a", 2, 1, MINUTE_MICROS));
+        // Empty: two whole periods to full again
+        assertTrue(pttl("a") > 2 * 60_000 - 1000 && pttl("a") <= 2 * 60_000 + 1, "ttl " + pttl("a"));
+
+        long period = TimeUnit.MILLISECONDS.toMicros(200);
+        assertEquals(0, check("token_bucket", "b", 1, 1, period));
+        assertTrue(check("token_bucket", "b", 1, 1, period) < 0);
+        Thread.sleep(250);
+        assertEquals(0, check("token_bucket", "b", 1, 1, period));
+    }
+
+    @Test
+    void testTokenBucketCapsTokensSavedUnderLargerCapacity() {
+        assertEquals(9, check("token_bucket", "a", 10, 10, MINUTE_MICROS));
+
+        assertEquals(1, check("token_bucket", "a", 2, 2, MINUTE_MICROS));
+    }
+
+    @Test
+    void testGcraAllowsBurstThenOnePerEmissionInterval() {
+        assertEquals(2, check("gcra", "a", 3, 1, MINUTE_MICROS));
+        assertEquals(1, check("gcra", "a", 3, 1, MINUTE_MICROS));
+        assertEquals(0, check("gcra", "a", 3, 1, MINUTE_MICROS));
+        assertRetryAfter(MINUTE_MICROS, check("gcra", "a", 3, 1, MINUTE_MICROS));
+        // Backlog of three emission intervals, plus one millisecond
+        assertTrue(pttl("a") > 3 * 60_000 - 1000 && pttl("a") <= 3 * 60_000 + 1, "ttl " + pttl("a"));
+    }
+
+    @Test
+    void testFixedWindowDeniesUntilWindowEnds() {
+        // An hour long window, so the test does not straddle a window boundary in practice
+        assertEquals(1, check("fixed_window", "a", 2, 0, HOUR_MICROS));
+        assertEquals(0, check("fixed_window", "a", 2, 0, HOUR_MICROS));
+        long denied = check("fixed_window", "a", 2, 0, HOUR_MICROS);
+
+        assertTrue(denied < 0 && -denied <= HOUR_MICROS, "reply " + denied);
+        // The key lives until the window ends, which is what the retry-after says
+        assertTrue(Math.abs(pttl("a") - -denied / 1000) <= 1000, "ttl " + pttl("a") + ", retry " + -denied);
+    }
+
+    @Test
+    void testSlidingWindowWeighsPreviousWindow() {
+        assertEquals(1, check("sliding_window", "a", 2, 0, HOUR_MICROS));
+        assertEquals(0, check("sliding_window", "a", 2, 0, HOUR_MICROS));
+        assertTrue(check("sliding_window", "a", 2, 0, HOUR_MICROS) < 0);
+
+        // A full previous window still weighs in; one two windows back does not
+        seedSlidingWindow("previous", 1, 10, HOUR_MICROS);
+        seedSlidingWindow("stale", 2, 10, HOUR_MICROS);
+        assertTrue(check("sliding_window", "previous", 10, 0, HOUR_MICROS) < 9);
+        assertEquals(9, check("sliding_window", "stale", 10, 0, HOUR_MICROS));
+    }
+
+    /**
+     * Store a sliding window state whose last counted window is {@code windowsAgo} before
+     * the current one, with {@code count} requests in it
+     */
+    private void seedSlidingWindow(String key, int windowsAgo, int count, long windowMicros) {
+        redis.eval("""
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+            local index = math.floor(now / tonumber(ARGV[3])) - tonumber(ARGV[1])
+            redis.call('SET', KEYS[1], struct.pack('>ddd', index, 0, tonumber(ARGV[2])), 'PX', 60000)
+            """, ScriptOutputType.STATUS, new String[] { prefix + key },
+            String.valueOf(windowsAgo), String.valueOf(count), String.valueOf(windowMicros));
+    }
+
+    @Test
+    void testTieredConsumesNothingWhenOneTierDenies() {
+        String[] keys = { prefix + "client", prefix + "endpoint" };
+        String[] bothTiers = { "token_bucket", "1", "1", String.valueOf(MINUTE_MICROS),
+            "gcra", "5", "1", String.valueOf(MINUTE_MICROS) };
+
+        assertEquals(0L, (Long) redis.eval(load("tiered"), ScriptOutputType.INTEGER, keys, bothTiers));
+        long denied = redis.eval(load("tiered"), ScriptOutputType.INTEGER, keys, bothTiers);
+        assertRetryAfter(MINUTE_MICROS, denied);
+
+        // The denied check took nothing from the endpoint tier: 5 - 1 - 1 left
+        assertEquals(3, check("gcra", "endpoint", 5, 1, MINUTE_MICROS));
+    }
+
+    @Test
+    void testTokenLeaseGrantsUpToAvailableAndTakesReturns() {
+        assertEquals(List.of(4L, 6L), lease("a", 4, 0));
+        assertEquals(List.of(6L, 0L), lease("a", 8, 0));
+        List<Long> denied = lease("a", 1, 0);
+        assertEquals(0L, denied.get(0));
+        assertTrue(denied.get(1) <= MINUTE_MICROS && denied.get(1) > MINUTE_MICROS - SECOND_MICROS,
+            "retry-after " + denied.get(1));
+
+        // Returned tokens are available again, up to the capacity
+        lease("a", 0, 3);
+        assertEquals(List.of(2L, 1L), lease("a", 2, 0));
+        assertEquals(List.of(10L, 0L), lease("b", 10, 50));
+    }
+
+    private List<Long> lease(String key, long requested, long returned) {
+        return redis.eval(load("token_lease"), ScriptOutputType.MULTI, new String[] { prefix + key },
+            "10", "10", String.valueOf(MINUTE_MICROS), String.valueOf(requested), String.valueOf(returned));
+    }
+}
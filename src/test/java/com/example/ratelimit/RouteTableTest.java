@@ -0,0 +1,44 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for RouteTable
+ */
+class RouteTableTest {
+
+    private final RouteTable routeTable = new RouteTable();
+
+    @Test
+    void testResolvesUserRoutesByMethod() {
+        assertEquals(RouteTable.LIST_USERS, routeTable.resolve("/api/users", "GET"));
+        assertEquals(RouteTable.CREATE_USER, routeTable.resolve("/api/users", "POST"));
+        assertEquals(RouteTable.GET_USER_BY_ID, routeTable.resolve("/api/users/42", "GET"));
+        assertEquals(RouteTable.UPDATE_USER, routeTable.resolve("/api/users/42", "PUT"));
+        assertEquals(RouteTable.DELETE_USER, routeTable.resolve("/api/users/42", "DELETE"));
+    }
+
+    @Test
+    void testUnmatchedRequestsShareDefaultEndpoint() {
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/users", "DELETE"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/users/42", "PATCH"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/users/42/extra", "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/users/", "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api//users", "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/user", "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/random-" + System.nanoTime(), "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/", "GET"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, routeTable.resolve("/api/users", "CUSTOM"));
+    }
+
+    @Test
+    void testEndpointNamesRoundTrip() {
+        for (int id = 0; id < RouteTable.ENDPOINT_COUNT; id++) {
+            assertEquals(id, RouteTable.endpointId(RouteTable.endpointName(id)));
+        }
+        assertEquals(RouteTable.GET_USER_BY_ID, RouteTable.endpointId("GETUSERBYID"));
+        assertEquals(RouteTable.DEFAULT_ENDPOINT, RouteTable.endpointId("_api_orders_get"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ShardedBucket
+ */
+class ShardedBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long NOW = 100 * SECOND;
+
+    // Refill is negligible over the few seconds a test spans
+    private static ShardedBucket bucket(int capacity, double minRate, int stripes) {
+        RateLimitConfig.ShardingConfig shardingConfig = new RateLimitConfig.ShardingConfig();
+        shardingConfig.setMinRate(minRate);
+        shardingConfig.setStripes(stripes);
+        return new ShardedBucket(new GcraRateLimiter(
+            new RateLimitConfig.EndpointConfig(capacity, capacity, Duration.ofDays(1000))), shardingConfig);
+    }
+
+    @Test
+    void testQuietBucketIsOneSharedState() {
+        ShardedBucket bucket = bucket(5, 1000, 4);
+
+        for (int i = 4; i >= 0; i--) {
+            assertEquals(i, bucket.acquire(NOW));
+        }
+
+        assertTrue(bucket.acquire(NOW) < 0);
+        assertFalse(bucket.isSharded());
+    }
+
+    @Test
+    void testShardedBucketAdmitsExactlyItsCapacity() throws Exception {
+        int capacity = 10_000;
+        ShardedBucket bucket = bucket(capacity, 0, 4);
+        assertTrue(bucket.isSharded());
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int admitted = 0;
+                    while (bucket.acquire(NOW) >= 0) {
+                        admitted++;
+                    }
+                    return admitted;
+                }));
+            }
+            start.countDown();
+            int admitted = 0;
+            for (Future<Integer> result : results) {
+                admitted += result.get(10, TimeUnit.SECONDS);
+            }
+            // Permits a thread saw no sign of when it stopped are stolen here
+            while (bucket.acquire(NOW) >= 0) {
+                admitted++;
+            }
+
+            assertEquals(capacity, admitted);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testStealsFromOtherStripes() throws Exception {
+        ShardedBucket bucket = bucket(64, 0, 2); // Leases batches of 8
+        Thread other = new Thread(() -> bucket.acquire(NOW));
+        other.start();
+        other.join();
+        for (int i = 0; i < 56; i++) {
+            assertTrue(bucket.acquire(NOW) >= 0);
+        }
+
+        // The shared state is empty; the other thread's 7 leftover permits are still usable.
+        // The first steal takes half of them and reports what it keeps.
+        assertEquals(3, bucket.acquire(NOW));
+        for (int i = 1; i < 7; i++) {
+            assertTrue(bucket.acquire(NOW) >= 0, "permit " + i);
+        }
+        assertTrue(bucket.acquire(NOW) < 0);
+    }
+
+    @Test
+    void testShardsAboveMinRateAndMergesBelowHalf() {
+        ShardedBucket bucket = bucket(1_000_000, 100, 4);
+
+        bucket.acquire(NOW);
+        for (int i = 0; i < 200; i++) {
+            bucket.acquire(NOW + SECOND / 2);
+        }
+        bucket.acquire(NOW + SECOND);
+        assertTrue(bucket.isSharded());
+
+        bucket.acquire(NOW + 2 * SECOND + 1);
+        assertFalse(bucket.isSharded());
+        // Leftover leased permits went back, so only the requests were consumed
+        assertEquals(1_000_000 - 204, bucket.acquire(NOW + 2 * SECOND + 1));
+    }
+
+    @Test
+    void testRefundGivesPermitBack() {
+        for (double minRate : new double[] { 1000, 0 }) {
+            ShardedBucket bucket = bucket(2, minRate, 4);
+
+            assertTrue(bucket.acquire(NOW) >= 0);
+            assertTrue(bucket.acquire(NOW) >= 0);
+            assertTrue(bucket.acquire(NOW) < 0);
+            bucket.refund();
+
+            assertTrue(bucket.acquire(NOW) >= 0);
+            assertTrue(bucket.acquire(NOW) < 0);
+        }
+    }
+
+    @Test
+    void testStripesMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> bucket(10, 0, 3));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SlidingWindowRateLimiter
+ */
+class SlidingWindowRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SlidingWindowRateLimiter limiter =
+        new SlidingWindowRateLimiter(new RateLimitConfig.EndpointConfig(10, 10, Duration.ofSeconds(10)));
+
+    @Test
+    void testAllowsLimitWithinWindow() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+
+        for (int i = 9; i >= 0; i--) {
+            RateLimitService.RateLimitResult result = limiter.tryAcquire(state, now).block();
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemainingTokens());
+        }
+        assertFalse(limiter.tryAcquire(state, now).block().isAllowed());
+    }
+
+    @Test
+    void testPreviousWindowIsWeightedByOverlap() {
+        AtomicLong state = new AtomicLong();
+        long windowStart = 100 * SECOND;
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(state, windowStart).block();
+        }
+
+        // 3s into the next window the previous one still weighs 70%: 7 of 10 used
+        long now = windowStart + 13 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(state, now).block().isAllowed());
+        }
+        RateLimitService.RateLimitResult denied = limiter.tryAcquire(state, now).block();
+        assertFalse(denied.isAllowed());
+        assertTrue(denied.getRetryAfter().toMillis() > 0);
+    }
+
+    @Test
+    void testStateResetsAfterTwoIdleWindows() {
+        AtomicLong state = new AtomicLong();
+        long now = 100 * SECOND;
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(state, now).block();
+        }
+
+        RateLimitService.RateLimitResult result = limiter.tryAcquire(state, now + 20 * SECOND).block();
+        assertTrue(result.isAllowed());
+        assertEquals(9, result.getRemainingTokens());
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TieredRateLimits
+ */
+class TieredRateLimitsTest {
+
+    private static final long NOW = AtomicRateLimiter.monotonicNanos();
+    private static final Supplier<Mono<RateLimitService.RateLimitResult>> ALLOW =
+        () -> Mono.just(new RateLimitService.RateLimitResult(true, 100, 100, Duration.ZERO));
+    private static final Supplier<Mono<RateLimitService.RateLimitResult>> DENY =
+        () -> Mono.just(new RateLimitService.RateLimitResult(false, 0, 0, Duration.ofSeconds(1)));
+
+    private static final ClientKey ALICE_GET = ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, 0x0A000001);
+    private static final ClientKey ALICE_CREATE = ClientKey.ofIpv4(RouteTable.CREATE_USER, 0x0A000001);
+    private static final ClientKey BOB_GET = ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, 0x0A000002);
+
+    private static TieredRateLimits tiers(RateLimitConfig.TiersConfig tiersConfig) {
+        return new TieredRateLimits(tiersConfig, 1, new LocalBucketStore<>(1000, Duration.ofSeconds(1).toNanos(), 64));
+    }
+
+    private static RateLimitConfig.EndpointConfig perMinute(int limit) {
+        return new RateLimitConfig.EndpointConfig(limit, limit, Duration.ofMinutes(1));
+    }
+
+    private static boolean allowed(TieredRateLimits tiers, ClientKey key, Supplier<Mono<RateLimitService.RateLimitResult>> primary) {
+        return tiers.tryAcquire(key, NOW, primary).block().isAllowed();
+    }
+
+    @Test
+    void testClientTierSpansEndpoints() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.setClient(perMinute(3));
+        TieredRateLimits tiers = tiers(config);
+
+        assertTrue(allowed(tiers, ALICE_GET, ALLOW));
+        assertTrue(allowed(tiers, ALICE_CREATE, ALLOW));
+        assertTrue(allowed(tiers, ALICE_GET, ALLOW));
+        assertFalse(allowed(tiers, ALICE_CREATE, ALLOW));
+
+        // Other clients have their own allowance
+        assertTrue(allowed(tiers, BOB_GET, ALLOW));
+    }
+
+    @Test
+    void testEndpointCeilingSpansClients() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.getEndpoints().put("getUserById", perMinute(2));
+        TieredRateLimits tiers = tiers(config);
+
+        assertTrue(allowed(tiers, ALICE_GET, ALLOW));
+        assertTrue(allowed(tiers, BOB_GET, ALLOW));
+        assertFalse(allowed(tiers, ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, 0x0A000003), ALLOW));
+
+        // Endpoints without a ceiling are not limited by it
+        assertTrue(allowed(tiers, ALICE_CREATE, ALLOW));
+    }
+
+    @Test
+    void testShardedCeilingStillSpansClients() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.getEndpoints().put("getUserById", perMinute(2));
+        config.getSharding().setMinRate(0);
+        TieredRateLimits tiers = tiers(config);
+
+        assertTrue(allowed(tiers, ALICE_GET, ALLOW));
+        assertTrue(allowed(tiers, BOB_GET, ALLOW));
+        assertFalse(allowed(tiers, ClientKey.ofIpv4(RouteTable.GET_USER_BY_ID, 0x0A000003), ALLOW));
+    }
+
+    @Test
+    void testPrimaryDenialConsumesNoTierPermits() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.setClient(perMinute(2));
+        config.setGateway(perMinute(2));
+        TieredRateLimits tiers = tiers(config);
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(allowed(tiers, ALICE_GET, DENY));
+        }
+
+        assertTrue(allowed(tiers, ALICE_CREATE, ALLOW));
+        assertTrue(allowed(tiers, ALICE_CREATE, ALLOW));
+        assertFalse(allowed(tiers, ALICE_CREATE, ALLOW));
+    }
+
+    @Test
+    void testCancelledOrUnsubscribedCheckConsumesNoTierPermits() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.setClient(perMinute(1));
+        config.setGateway(perMinute(1));
+        TieredRateLimits tiers = tiers(config);
+
+        tiers.tryAcquire(ALICE_GET, NOW, Mono::never).subscribe().dispose();
+        tiers.tryAcquire(ALICE_GET, NOW, ALLOW);
+
+        assertTrue(allowed(tiers, ALICE_GET, ALLOW));
+        assertFalse(allowed(tiers, ALICE_GET, ALLOW));
+    }
+
+    @Test
+    void testTierDenialRefundsLowerTiersAndSkipsPrimary() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.setClient(perMinute(1));
+        config.getEndpoints().put("getUserById", perMinute(1));
+        TieredRateLimits tiers = tiers(config);
+        AtomicInteger primaryChecks = new AtomicInteger();
+        Supplier<Mono<RateLimitService.RateLimitResult>> counted = () -> {
+            primaryChecks.incrementAndGet();
+            return ALLOW.get();
+        };
+
+        assertTrue(allowed(tiers, BOB_GET, counted));
+        RateLimitService.RateLimitResult denied = tiers.tryAcquire(ALICE_GET, NOW, counted).block();
+
+        assertFalse(denied.isAllowed());
+        assertFalse(denied.getRetryAfter().isZero());
+        assertEquals(1, primaryChecks.get());
+
+        // Alice's only client permit was handed back when the endpoint ceiling denied her
+        assertTrue(allowed(tiers, ALICE_CREATE, ALLOW));
+        assertFalse(allowed(tiers, ALICE_CREATE, ALLOW));
+    }
+
+    @Test
+    void testResultCarriesLowestRemaining() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.setClient(perMinute(10));
+        config.setGateway(perMinute(5));
+        TieredRateLimits tiers = tiers(config);
+
+        RateLimitService.RateLimitResult result = tiers.tryAcquire(ALICE_GET, NOW, ALLOW).block();
+
+        assertTrue(result.isAllowed());
+        assertEquals(4, result.getRemainingTokens());
+    }
+
+    @Test
+    void testUnknownEndpointIsRejected() {
+        RateLimitConfig.TiersConfig config = new RateLimitConfig.TiersConfig();
+        config.getEndpoints().put("getUser", perMinute(2));
+
+        assertThrows(IllegalArgumentException.class, () -> tiers(config));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.service;
+
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.concurrency.ConcurrencyLimitConfig;
+import com.example.grpc.BatchGetUsersRequest;
+import com.example.grpc.BatchGetUsersResponse;
+import com.example.grpc.GetUserResponse;
+import com.example.grpc.ReactorUserServiceGrpc;
+import com.example.grpc.User;
+import com.example.metrics.CustomMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for UserBatchDispatcher
+ */
+@ExtendWith(MockitoExtension.class)
+class UserBatchDispatcherTest {
+
+    @Mock
+    private ReactorUserServiceGrpc.ReactorUserServiceStub userServiceStub;
+
+    @Mock
+    private CustomMetrics customMetrics;
+
+    private UserBatchDispatcher dispatcher(int maxSize, Duration window) {
+        UserBatchConfig batchConfig = new UserBatchConfig();
+        batchConfig.setEnabled(true);
+        batchConfig.setMaxSize(maxSize);
+        batchConfig.setWindow(window);
+        return new UserBatchDispatcher(userServiceStub,
+            new AdaptiveConcurrencyLimiter(new ConcurrencyLimitConfig(), customMetrics), batchConfig, customMetrics);
+    }
+
+    private static GetUserResponse found(String userId) {
+        return GetUserResponse.newBuilder().setUser(User.newBuilder().setId(userId)).setFound(true).build();
+    }
+
+    private static GetUserResponse notFound() {
+        return GetUserResponse.newBuilder().setFound(false).build();
+    }
+
+    @Test
+    void testLookupsWithinWindowShareOneCall() {
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.just(BatchGetUsersResponse.newBuilder()
+                .addResults(found("1"))
+                .addResults(notFound())
+                .addResults(found("2"))
+                .build()));
+        UserBatchDispatcher dispatcher = dispatcher(10, Duration.ofMillis(20));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("1"), dispatcher.submit("999"), dispatcher.submit("2")))
+            .assertNext(results -> {
+                assertEquals("1", results.getT1().getUser().getId());
+                assertFalse(results.getT2().getFound());
+                assertEquals("2", results.getT3().getUser().getId());
+            })
+            .verifyComplete();
+
+        verify(userServiceStub).batchGetUsers(BatchGetUsersRequest.newBuilder()
+            .addUserIds("1").addUserIds("999").addUserIds("2").build());
+        verify(customMetrics).recordUserBatch(3);
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaitingForWindow() {
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.just(BatchGetUsersResponse.newBuilder()
+                .addResults(found("1"))
+                .addResults(found("2"))
+                .build()));
+        UserBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("1"), dispatcher.submit("2")))
+            .expectNextCount(1)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        verify(userServiceStub, times(1)).batchGetUsers(any(BatchGetUsersRequest.class));
+    }
+
+    @Test
+    void testFailedCallFailsEveryLookup() {
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.error(new IllegalStateException("unavailable")));
+        UserBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        Mono<GetUserResponse> first = dispatcher.submit("1").cache();
+        first.subscribe(response -> {}, error -> {});
+        StepVerifier.create(dispatcher.submit("2"))
+            .expectError(IllegalStateException.class)
+            .verify();
+        StepVerifier.create(first)
+            .expectError(IllegalStateException.class)
+            .verify();
+    }
+
+    @Test
+    void testShortAnswerFailsEveryLookup() {
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.just(BatchGetUsersResponse.newBuilder().addResults(found("1")).build()));
+        UserBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        StepVerifier.create(Mono.zip(dispatcher.submit("1"), dispatcher.submit("2")))
+            .expectErrorMatches(error -> error instanceof IllegalStateException
+                && error.getMessage().contains("1 results for 2"))
+            .verify();
+    }
+
+    @Test
+    void testCancelledLookupIsLeftOutOfBatch() {
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.just(BatchGetUsersResponse.newBuilder().addResults(found("2")).build()));
+        UserBatchDispatcher dispatcher = dispatcher(10, Duration.ofMillis(20));
+
+        dispatcher.submit("1").subscribe().dispose();
+        StepVerifier.create(dispatcher.submit("2"))
+            .assertNext(response -> assertEquals("2", response.getUser().getId()))
+            .verifyComplete();
+
+        verify(userServiceStub).batchGetUsers(BatchGetUsersRequest.newBuilder().addUserIds("2").build());
+    }
+
+    @Test
+    void testCallIsCancelledOnceEveryLookupIsCancelled() {
+        AtomicBoolean callCancelled = new AtomicBoolean();
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+            .thenReturn(Mono.<BatchGetUsersResponse>never().doOnCancel(() -> callCancelled.set(true)));
+        UserBatchDispatcher dispatcher = dispatcher(2, Duration.ofMinutes(1));
+
+        Disposable first = dispatcher.submit("1").subscribe();
+        Disposable second = dispatcher.submit("2").subscribe(); // Fills the batch, which is sent
+        first.dispose();
+        assertFalse(callCancelled.get());
+        second.dispose();
+
+        assertTrue(callCancelled.get());
+    }
+
+    @Test
+    void testRejectsEmptyBatches() {
+        assertThrows(IllegalArgumentException.class, () -> dispatcher(0, Duration.ofMillis(1)));
+    }
+}
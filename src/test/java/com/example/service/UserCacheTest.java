@@ -0,0 +1,203 @@
+package com.example.service;
+
+import com.example.dto.UserDto;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for UserCache
+ */
+class UserCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicReference<Mono<UserDto>> nextLoad = new AtomicReference<>(Mono.just(user("v1")));
+
+    private UserCache cache(Duration ttl, Duration refreshAfter) {
+        UserCacheConfig config = new UserCacheConfig();
+        config.setEnabled(true);
+        config.setTtl(ttl);
+        config.setRefreshAfter(refreshAfter);
+        return new UserCache(config, userId -> Mono.defer(() -> {
+            loads.incrementAndGet();
+            return nextLoad.get();
+        }), nanos::get, Runnable::run);
+    }
+
+    private static UserDto user(String name) {
+        return new UserDto("1", name, "john@example.com", 30, Instant.EPOCH, Instant.EPOCH);
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testHitDoesNotLoad() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+
+        assertEquals("v1", cache.get("1").block().name());
+        assertEquals("v1", cache.get("1").block().name());
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testNotFoundIsNotCached() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        nextLoad.set(Mono.empty());
+
+        StepVerifier.create(cache.get("1")).verifyComplete();
+        StepVerifier.create(cache.get("1")).verifyComplete();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEntryExpiresAfterTtl() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        cache.get("1").block();
+
+        advance(Duration.ofSeconds(61));
+        nextLoad.set(Mono.just(user("v2")));
+
+        assertEquals("v2", cache.get("1").block().name());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testReadPastRefreshAfterReloadsInBackground() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ofSeconds(30));
+        cache.get("1").block();
+
+        advance(Duration.ofSeconds(31));
+        nextLoad.set(Mono.just(user("v2")));
+        cache.get("1").block(); // Answered from the cache, and starts the reload
+
+        assertEquals(2, loads.get());
+        assertEquals("v2", cache.get("1").block().name());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testConcurrentMissesShareOneLoad() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        Sinks.One<UserDto> pending = Sinks.one();
+        nextLoad.set(pending.asMono());
+
+        Mono<UserDto> first = cache.get("1");
+        Mono<UserDto> second = cache.get("1");
+        StepVerifier.create(first)
+            .then(() -> StepVerifier.create(second)
+                .then(() -> pending.tryEmitValue(user("v1")))
+                .expectNextCount(1)
+                .verifyComplete())
+            .expectNextCount(1)
+            .verifyComplete();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testLoadInFlightDuringInvalidateIsNotStored() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        Sinks.One<UserDto> pending = Sinks.one();
+        nextLoad.set(pending.asMono());
+
+        StepVerifier.create(cache.get("1"))
+            .then(() -> {
+                cache.invalidate("1");
+                pending.tryEmitValue(user("before write"));
+            })
+            .expectNextMatches(user -> user.name().equals("before write"))
+            .verifyComplete();
+
+        nextLoad.set(Mono.just(user("after write")));
+        assertEquals("after write", cache.get("1").block().name());
+    }
+
+    @Test
+    void testPutReplacesLoadInFlight() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        Sinks.One<UserDto> pending = Sinks.one();
+        nextLoad.set(pending.asMono());
+
+        StepVerifier.create(cache.get("1"))
+            .then(() -> {
+                cache.put("1", user("written"));
+                pending.tryEmitValue(user("before write"));
+            })
+            .expectNextCount(1)
+            .verifyComplete();
+
+        assertEquals("written", cache.get("1").block().name());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testCancelledReaderLeavesLoadForOthers() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        Sinks.One<UserDto> pending = Sinks.one();
+        nextLoad.set(pending.asMono());
+
+        Disposable first = cache.get("1").subscribe();
+        StepVerifier.create(cache.get("1"))
+            .then(() -> {
+                first.dispose();
+                pending.tryEmitValue(user("v1"));
+            })
+            .expectNextMatches(user -> user.name().equals("v1"))
+            .verifyComplete();
+
+        assertEquals("v1", cache.get("1").block().name());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testLastReaderCancellingCancelsLoad() {
+        UserCache cache = cache(Duration.ofSeconds(60), Duration.ZERO);
+        AtomicBoolean loadCancelled = new AtomicBoolean();
+        nextLoad.set(Sinks.<UserDto>one().asMono().doOnCancel(() -> loadCancelled.set(true)));
+
+        cache.get("1").subscribe().dispose();
+
+        assertTrue(loadCancelled.get());
+        nextLoad.set(Mono.just(user("v2")));
+        assertEquals("v2", cache.get("1").block().name());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testDisabledCacheAlwaysLoads() {
+        UserCacheConfig config = new UserCacheConfig();
+        config.setEnabled(false);
+        UserCache cache = new UserCache(config, userId -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return user("v1");
+        }));
+
+        cache.get("1").block();
+        cache.put("1", user("written"));
+        cache.get("1").block();
+
+        assertEquals(2, loads.get());
+        assertNull(cache.cache());
+    }
+
+    @Test
+    void testRefreshMustComeBeforeExpiry() {
+        assertThrows(IllegalArgumentException.class, () -> cache(Duration.ofSeconds(30), Duration.ofSeconds(30)));
+    }
+}
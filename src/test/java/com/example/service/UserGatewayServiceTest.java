@@ -1,8 +1,11 @@
 package com.example.service;
 
+import com.example.concurrency.AdaptiveConcurrencyLimiter;
+import com.example.concurrency.ConcurrencyLimitConfig;
 import com.example.dto.CreateUserRequest;
 import com.example.dto.UpdateUserRequest;
 import com.example.dto.UserDto;
+import com.example.exception.ConcurrencyLimitExceededException;
 import com.example.grpc.*;
 import com.example.mapper.UserMapper;
 import com.example.metrics.CustomMetrics;
@@ -12,11 +15,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.Instant;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -34,11 +43,19 @@ class UserGatewayServiceTest {
     @Mock
     private CustomMetrics customMetrics;
     
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
     private UserGatewayService userGatewayService;
     
     @BeforeEach
     void setUp() {
-        userGatewayService = new UserGatewayService(userServiceStub, userMapper, customMetrics);
+        ConcurrencyLimitConfig limitConfig = new ConcurrencyLimitConfig();
+        limitConfig.setEnabled(true);
+        limitConfig.setInitialLimit(1);
+        limitConfig.setMinLimit(1);
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(limitConfig, customMetrics);
+        userGatewayService = new UserGatewayService(userServiceStub, userMapper, customMetrics, concurrencyLimiter,
+                new UserBatchConfig(), new UserCacheConfig());
     }
     
     @Test
@@ -163,4 +180,204 @@ class UserGatewayServiceTest {
                 .expectNext(true)
                 .verifyComplete();
     }
+    
+    @Test
+    void testGetUserById_ShedAboveConcurrencyLimit() {
+        // Given - the only permit is held by a call that has not answered yet
+        Sinks.One<DeleteUserResponse> pending = Sinks.one();
+        when(userServiceStub.deleteUser(any(DeleteUserRequest.class)))
+                .thenReturn(pending.asMono());
+        when(userServiceStub.getUser(any(GetUserRequest.class)))
+                .thenReturn(Mono.just(GetUserResponse.newBuilder().setFound(false).build()));
+        
+        StepVerifier.create(userGatewayService.deleteUser("1"))
+                .then(() -> {
+                    assertEquals(1, concurrencyLimiter.inFlight());
+                    
+                    // When & Then
+                    StepVerifier.create(userGatewayService.getUserById("2"))
+                            .expectError(ConcurrencyLimitExceededException.class)
+                            .verify();
+                    
+                    pending.tryEmitValue(DeleteUserResponse.newBuilder().setSuccess(true).build());
+                })
+                .expectNext(true)
+                .verifyComplete();
+        
+        verify(customMetrics, never()).incrementGrpcError();
+        assertEquals(0, concurrencyLimiter.inFlight());
+        assertEquals(1, concurrencyLimiter.rejectedCalls());
+        
+        // The permit is back
+        StepVerifier.create(userGatewayService.getUserById("2"))
+                .verifyComplete();
+    }
+    
+    @Test
+    void testGetUserById_ConcurrentLookupsShareOneCall() {
+        // Given
+        Sinks.One<GetUserResponse> pending = Sinks.one();
+        when(userServiceStub.getUser(any(GetUserRequest.class)))
+                .thenReturn(pending.asMono());
+        
+        // When & Then - the second lookup joins the first instead of being shed
+        StepVerifier.create(userGatewayService.getUserById("1"))
+                .then(() -> {
+                    StepVerifier.create(userGatewayService.getUserById("1"))
+                            .then(() -> pending.tryEmitValue(GetUserResponse.newBuilder().setFound(false).build()))
+                            .verifyComplete();
+                })
+                .verifyComplete();
+        
+        verify(userServiceStub, times(1)).getUser(any(GetUserRequest.class));
+        assertEquals(0, concurrencyLimiter.rejectedCalls());
+        assertEquals(0, concurrencyLimiter.inFlight());
+    }
+    
+    @Test
+    void testGetUserById_LookupAfterWriteDoesNotJoinEarlierOne() {
+        // Given - a lookup is in flight when the user is deleted
+        Sinks.One<GetUserResponse> before = Sinks.one();
+        when(userServiceStub.getUser(any(GetUserRequest.class)))
+                .thenReturn(before.asMono())
+                .thenReturn(Mono.just(GetUserResponse.newBuilder().setFound(false).build()));
+        when(userServiceStub.deleteUser(any(DeleteUserRequest.class)))
+                .thenReturn(Mono.just(DeleteUserResponse.newBuilder().setSuccess(true).build()));
+        limitConcurrencyTo(2);
+        
+        StepVerifier.create(userGatewayService.getUserById("1"))
+                .then(() -> {
+                    StepVerifier.create(userGatewayService.deleteUser("1"))
+                            .expectNext(true)
+                            .verifyComplete();
+                    
+                    // When & Then - a new lookup goes to the service
+                    StepVerifier.create(userGatewayService.getUserById("1"))
+                            .verifyComplete();
+                    
+                    before.tryEmitValue(GetUserResponse.newBuilder().setFound(false).build());
+                })
+                .verifyComplete();
+        
+        verify(userServiceStub, times(2)).getUser(any(GetUserRequest.class));
+    }
+    
+    @Test
+    void testGetUserById_BatchesLookupsOfDifferentUsers() {
+        // Given
+        UserBatchConfig batchConfig = new UserBatchConfig();
+        batchConfig.setEnabled(true);
+        batchConfig.setMaxSize(2);
+        batchConfig.setWindow(Duration.ofMinutes(1)); // Only a full batch is sent
+        userGatewayService = new UserGatewayService(userServiceStub, userMapper, customMetrics, concurrencyLimiter,
+                batchConfig, new UserCacheConfig());
+        
+        User grpcUser = User.newBuilder()
+                .setId("1")
+                .setName("John Doe")
+                .setEmail("john@example.com")
+                .setAge(30)
+                .build();
+        
+        UserDto expectedDto = new UserDto("1", "John Doe", "john@example.com", 30, 
+                Instant.now(), Instant.now());
+        
+        when(userServiceStub.batchGetUsers(any(BatchGetUsersRequest.class)))
+                .thenReturn(Mono.just(BatchGetUsersResponse.newBuilder()
+                        .addResults(GetUserResponse.newBuilder().setUser(grpcUser).setFound(true))
+                        .addResults(GetUserResponse.newBuilder().setFound(false))
+                        .build()));
+        when(userMapper.toDto(grpcUser)).thenReturn(expectedDto);
+        
+        // When & Then - one call answers both, the unknown user as not found
+        StepVerifier.create(userGatewayService.getUserById("1"))
+                .then(() -> StepVerifier.create(userGatewayService.getUserById("999"))
+                        .verifyComplete())
+                .expectNext(expectedDto)
+                .verifyComplete();
+        
+        verify(userServiceStub).batchGetUsers(BatchGetUsersRequest.newBuilder()
+                .addUserIds("1")
+                .addUserIds("999")
+                .build());
+        verify(userServiceStub, never()).getUser(any(GetUserRequest.class));
+        assertEquals(0, concurrencyLimiter.inFlight());
+    }
+    
+    @Test
+    void testGetUserById_RepeatedLookupIsCached() {
+        // Given
+        enableCache();
+        User grpcUser = User.newBuilder().setId("1").setName("John Doe").build();
+        UserDto expectedDto = new UserDto("1", "John Doe", "john@example.com", 30, 
+                Instant.now(), Instant.now());
+        
+        when(userServiceStub.getUser(any(GetUserRequest.class)))
+                .thenReturn(Mono.just(GetUserResponse.newBuilder().setUser(grpcUser).setFound(true).build()));
+        when(userMapper.toDto(grpcUser)).thenReturn(expectedDto);
+        
+        // When & Then
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(userGatewayService.getUserById("1"))
+                    .expectNext(expectedDto)
+                    .verifyComplete();
+        }
+        
+        verify(userServiceStub, times(1)).getUser(any(GetUserRequest.class));
+    }
+    
+    @Test
+    void testUpdateUser_LookupAfterUpdateSeesWrittenUser() {
+        // Given - the old user is cached
+        enableCache();
+        User oldUser = User.newBuilder().setId("1").setName("John Doe").build();
+        User newUser = User.newBuilder().setId("1").setName("John Updated").build();
+        UserDto oldDto = new UserDto("1", "John Doe", "john@example.com", 30, 
+                Instant.now(), Instant.now());
+        UserDto newDto = new UserDto("1", "John Updated", "john@example.com", 30, 
+                Instant.now(), Instant.now());
+        
+        when(userServiceStub.getUser(any(GetUserRequest.class)))
+                .thenReturn(Mono.just(GetUserResponse.newBuilder().setUser(oldUser).setFound(true).build()));
+        when(userServiceStub.updateUser(any(com.example.grpc.UpdateUserRequest.class)))
+                .thenReturn(Mono.just(com.example.grpc.UpdateUserResponse.newBuilder()
+                        .setUser(newUser)
+                        .setSuccess(true)
+                        .build()));
+        when(userMapper.toDto(oldUser)).thenReturn(oldDto);
+        when(userMapper.toDto(newUser)).thenReturn(newDto);
+        
+        StepVerifier.create(userGatewayService.getUserById("1"))
+                .expectNext(oldDto)
+                .verifyComplete();
+        
+        // When
+        StepVerifier.create(userGatewayService.updateUser("1", new UpdateUserRequest("John Updated", null, null)))
+                .expectNext(newDto)
+                .verifyComplete();
+        
+        // Then - served from the cache, with the written user
+        StepVerifier.create(userGatewayService.getUserById("1"))
+                .expectNext(newDto)
+                .verifyComplete();
+        
+        verify(userServiceStub, times(1)).getUser(any(GetUserRequest.class));
+    }
+    
+    private void enableCache() {
+        UserCacheConfig cacheConfig = new UserCacheConfig();
+        cacheConfig.setEnabled(true);
+        userGatewayService = new UserGatewayService(userServiceStub, userMapper, customMetrics, concurrencyLimiter,
+                new UserBatchConfig(), cacheConfig);
+    }
+    
+    private void limitConcurrencyTo(int limit) {
+        ConcurrencyLimitConfig limitConfig = new ConcurrencyLimitConfig();
+        limitConfig.setEnabled(true);
+        limitConfig.setInitialLimit(limit);
+        limitConfig.setMinLimit(limit);
+        concurrencyLimiter = new AdaptiveConcurrencyLimiter(limitConfig, customMetrics);
+        userGatewayService = new UserGatewayService(userServiceStub, userMapper, customMetrics, concurrencyLimiter,
+                new UserBatchConfig(), new UserCacheConfig());
+    }
 }
\ No newline at end of file